@@ -8,6 +8,9 @@
 import jray.*;
 import jray.evol.DetectorCurvature;
 import jray.evol.DetectorPosition;
+import jray.evol.Distortion;
+import jray.evol.FieldGrid;
+import jray.evol.FocusSolver;
 import jray.telescopes.*;
 
 //import javax.vecmath.*;
@@ -41,6 +44,10 @@ public class Ray {
 	static boolean CUSTOM    = true;
 	static boolean BENCH   = false;
 	static boolean DISTORT = false;
+	static boolean FASTDIST = false;
+	static int     fieldGrid = 0;
+	static boolean BESTFOCUS = false;
+	static boolean SYMMETRY = false;
 	static int     nRays   = 100;
 	static double  detAt   = -100.0;
 	static double  detShift = 0.0;
@@ -124,6 +131,20 @@ public static void main (String[] args) {
 				bool = true;
 				DISTORT = true;
 			}
+			if (args[i].equals ("-id")) {
+				bool = true;
+				FASTDIST = true;
+			}
+			if (args[i].equals ("-fg"))
+				fieldGrid = Integer.parseInt (args[i+1]);
+			if (args[i].equals ("-bf")) {
+				bool = true;
+				BESTFOCUS = true;
+			}
+			if (args[i].equals ("-sym")) {
+				bool = true;
+				SYMMETRY = true;
+			}
 			if (args[i].equals ("-ds"))
 				detShift = new Double(args[i+1]).doubleValue ();
 			
@@ -152,6 +173,10 @@ public static void main (String[] args) {
 			System.out.println ("       -t detector position      [-100.0]");
 			System.out.println ("       -u detector curvature     [   0.0]");
 			System.out.println ("       -i distortion pattern    {set4true}");
+			System.out.println ("       -id fast (ray fan) distortion {set4true}");
+			System.out.println ("       -bf solve best focus (-t, -u) {set4true}");
+			System.out.println ("       -fg N x N spot diagrams over +-x [0]");
+			System.out.println ("       -sym trace 1/2 or 1/4, mirror the rest {set4true}");
 			System.out.println ("DetectorDisplay Output Options            ");
 			System.out.println ("       -z ZOOM save as JPG       [   0.0]");
 			System.out.println ("       -cx X Center              [   0.0]");
@@ -166,25 +191,20 @@ public static void main (String[] args) {
 	/** Creates a telescope given the TelePar object */
 	public Ray (TelePar par) {
 		this.diameter = par.diameter;
+		if (BESTFOCUS) solveFocus (par);
 		// Create Telescope with a Detector, grab the Detector for display
-		Telescope scope = new DetectorPosition (par, detAt, par.holesize * 2.);
-		Detector d = (Detector) scope.getConicSection (2);
 		System.out.println ("Detector position: " + detAt);
-		if (radius != 0.0) {
-			scope = new DetectorCurvature (par, detAt, radius,par.holesize*1.2);
-			d = (Detector) scope.getConicSection (2);
+		Telescope scope = makeScope (par);
+		Detector d = (Detector) scope.getConicSection (scope.numElements () - 1);
+		System.out.println ("Optimum Hole Size: " + scope.getOptimumHoleSize());
+		if (FASTDIST) {
+			fastDistortion (par, d.getDisplay ());
+			return;
 		}
-		if (GREG) {
-			scope = new Gregorian (par);
-			scope.addConicSection (((ConicSection) d));
+		if (fieldGrid > 0) {
+			fieldGrid (par);
+			return;
 		}
-		else if (CUSTOM) {
-			// Detector is facing the primary
-			scope = new Reflex (par);
-			scope.addConicSection (((ConicSection) d));
-			this.obstruction = par.fratio/par.fdesired;
-		}
-		System.out.println ("Optimum Hole Size: " + scope.getOptimumHoleSize());
 
 		// Create an OpticBench where the Telescope will live
 		bench = new OpticBench (scope.getName (), BENCH, scope);
@@ -211,20 +231,121 @@ public static void main (String[] args) {
 		if (zoom > 0.0)  JPEG (par, d.getDisplay ());
 	} // end of Ray constructor ************************************************
 
+	/** Returns a new Telescope, with its Detector last */
+	public Telescope makeScope (TelePar par) {
+		Telescope scope = new DetectorPosition (par, detAt, par.holesize * 2.);
+		Detector d = (Detector) scope.getConicSection (2);
+		if (radius != 0.0) {
+			scope = new DetectorCurvature (par, detAt, radius,par.holesize*1.2);
+			d = (Detector) scope.getConicSection (2);
+		}
+		if (GREG) {
+			scope = new Gregorian (par);
+			scope.addConicSection (((ConicSection) d));
+		}
+		else if (CUSTOM) {
+			// Detector is facing the primary
+			scope = new Reflex (par);
+			scope.addConicSection (((ConicSection) d));
+			this.obstruction = par.fratio/par.fdesired;
+		}
+		return scope;
+	} // end of makeScope ******************************************************
+
+	/** Distortion from a small fan of LightRays per field point, traced
+	 * in parallel; plots the images (black) and their ideal positions
+	 * (red) on dd */
+	public void fastDistortion (final TelePar par, DetectorDisplay dd) {
+		Distortion dist = new Distortion (new TelescopeFactory () {
+				public Telescope create () { return makeScope (par); }
+			}, par.FOV, 50, 10, 8);
+		dist.setObstruction (obstruction);
+		System.out.print ("Propagating: ");
+		double t1 = System.currentTimeMillis();
+		try {
+			dist.run (Runtime.getRuntime ().availableProcessors ());
+		} catch (InterruptedException e) {
+			throw new RuntimeException ("Ray: " + e);
+		}
+		double t2 = System.currentTimeMillis();
+		System.out.println ((t2 - t1) + " milliseconds");
+		System.out.println (dist);
+
+		dd.setPixel (3);
+		for (int i = 0; i < dist.numMapPoints (); i++) {
+			dd.add (dist.getIdeal (i), Color.RED);
+			if (dist.getImage (i) != null)
+				dd.add (dist.getImage (i), Color.BLACK);
+		}
+		if (zoom == 0.0) dd.display ();
+		if (zoom > 0.0)  JPEG (par, dd);
+	} // end of fastDistortion *************************************************
+
+	/** Spot diagrams on a fieldGrid x fieldGrid grid of field angles,
+	 * traced in parallel; prints their sizes and saves them to
+	 * fieldgrid.png */
+	public void fieldGrid (final TelePar par) {
+		FieldGrid grid = new FieldGrid (new TelescopeFactory () {
+				public Telescope create () { return makeScope (par); }
+			}, par.FOV, par.FOV, fieldGrid, fieldGrid, nRays);
+		grid.setObstruction (obstruction);
+		grid.setCircular (CIRRAY);
+		System.out.print ("Propagating: ");
+		double t1 = System.currentTimeMillis();
+		try {
+			grid.run (Runtime.getRuntime ().availableProcessors ());
+		} catch (InterruptedException e) {
+			throw new RuntimeException ("Ray: " + e);
+		}
+		double t2 = System.currentTimeMillis();
+		System.out.println ((t2 - t1) + " milliseconds");
+		grid.writeTable (System.out);
+		try {
+			grid.writeImage (new File ("fieldgrid.png"), 200);
+		} catch (IOException e) {
+			System.out.println ("Output Error: " + e);
+		}
+	} // end of fieldGrid ******************************************************
+
+	/** Replaces the detector position (and curvature, if one was asked
+	 * for) with the best fit to the exit rays of the telescope */
+	public void solveFocus (TelePar par) {
+		FocusSolver solver;
+		if (GREG)
+			solver = new FocusSolver (new Gregorian (par), nRays);
+		else if (CUSTOM) {
+			solver = new FocusSolver (new Reflex (par), nRays);
+			solver.setObstruction (par.fratio/par.fdesired);
+		} else
+			solver = new FocusSolver (new Cassegrain (par), nRays);
+		solver.addField (par.FOV, 0);
+		solver.solve ();
+		System.out.println (solver);
+		if (radius != 0.0) {
+			detAt  = solver.getPosition ();
+			radius = solver.getRadius ();
+		} else
+			detAt  = solver.getPlanePosition ();
+	} // end of solveFocus *****************************************************
+
 	/** Adds LightRays to the OpticBench of this object.
 	 * The light comes in with angle (angx, angy) to the zenith
-	 * and attemps to fill the aperature with light. */
+	 * and attemps to fill the aperature with light.
+	 * With -sym, on a square grid, only the LightRays in one half (one
+	 * quadrant on axis) of the aperture are traced: the others are
+	 * added as their mirror images (see Symmetry). */
 	public void addLight (double angx, double angy, double wavelength) {
 		double Z0 = bench.iscaley (0);
+		double xvel = Math.tan (Math.toRadians (angx/3600.));
+		double yvel = Math.tan (Math.toRadians (angy/3600.));
+		int sym = (SYMMETRY && !CIRRAY) ?
+			bench.getSymmetry (angx, angy) : Symmetry.NONE;
+		int [][] index = new int [nRays + 1][nRays + 1];
 		for (int i = 1; i <= nRays; i++) {
 			for (int j = 1; j <= nRays; j++) {
-				double xvel = Math.tan (Math.toRadians (angx/3600.));
-				double yvel = Math.tan (Math.toRadians (angy/3600.));
-
-				double x = diameter/2.0 *
-					(-1.0 + 2.0 * (i - 1.0) / (nRays - 1.0)) - xvel * Z0;
-				double y = diameter/2.0 * 
-					(-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0)) - yvel * Z0;
+				index[i][j] = -1;
+				double x = diameter/2.0 * Symmetry.grid (i, nRays) - xvel * Z0;
+				double y = diameter/2.0 * Symmetry.grid (j, nRays) - yvel * Z0;
 				// Normally a square grid is used, here we switch to concentric circles 
 				if (CIRRAY) {
 					double r = diameter/2.0 * (i - 1.0) / nRays ;
@@ -234,7 +355,21 @@ public static void main (String[] args) {
 				}
 				double radial = Math.sqrt(x*x + y*y);
 				if ( radial <= diameter/2. && radial >= diameter * obstruction / 2. ){
-					bench.addLight (new LightRay (x, y, Z0, xvel, yvel, -1., wavelength));
+					// The LightRay this one is the mirror image of
+					int si = i, sj = j, flags = Symmetry.NONE;
+					if ((sym & Symmetry.MIRROR_X) != 0 && i > nRays + 1 - i) {
+						si = nRays + 1 - i;
+						flags |= Symmetry.MIRROR_X;
+					}
+					if ((sym & Symmetry.MIRROR_Y) != 0 && j > nRays + 1 - j) {
+						sj = nRays + 1 - j;
+						flags |= Symmetry.MIRROR_Y;
+					}
+					index[i][j] = bench.numLightRays ();
+					if (flags != Symmetry.NONE)
+						bench.addImage (index[si][sj], flags);
+					else
+						bench.addLight (new LightRay (x, y, Z0, xvel, yvel, -1., wavelength));
 				}
 			}
 		}
@@ -287,7 +422,7 @@ public static void main (String[] args) {
 			dd.paint (g);
 			// Annotate
 			g.setColor (Color.BLACK);
-			if (!DISTORT) {
+			if (!DISTORT && !FASTDIST) {
 				int	nPoints = dd.getPoints().size();
 				g.setFont ( new Font ( "Times", Font.BOLD, 32 ));
 				g.drawString (new String (nPoints + "/" + nRays * nRays + " rays"),
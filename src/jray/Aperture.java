@@ -0,0 +1,90 @@
+package jray;
+
+import javax.vecmath.Vector3d;
+
+/**
+ * Aperture is a cheap, conservative test of whether a LightRay can be
+ * reflected by a surface, done before its intersection is solved.
+ * The part of the surface which reflects -- between the hole and the
+ * edge, hole/2 <= r <= size/2 about (cx, cy) -- lies in one or more
+ * slabs of z.  A LightRay which stays outside that annulus, or inside
+ * the hole, wherever it crosses the slabs cannot be reflected and goes
+ * straight on: the LightRay itself is moved on and handed back, so
+ * nothing is allocated for it.  The distance of a line from the axis is a quadratic in
+ * the time, so the test is a few multiplies and no allocation.
+ * <p>
+ * The bounds are widened by a part in 1e9, so a LightRay grazing the
+ * edge or the hole is left to the full intersection.
+ */
+final class Aperture {
+
+	private static final double MARGIN = 1e-9;
+
+	private final double cx, cy;
+	private final double rmin2, rmax2;	// squared radii of the annulus
+	private final double [] slabs;		// z0, z1 of each slab
+	private final double zpass;			// where a rejected LightRay is left
+
+	/**
+	 * Aperture between the radii hole/2 and size/2 about (cx, cy),
+	 * within the slabs z in [slabs[2k], slabs[2k+1]].  A rejected
+	 * LightRay is moved to where it crosses z = zpass.
+	 */
+	Aperture (double cx, double cy, double hole, double size,
+			  double zpass, double... slabs) {
+		this.cx = cx;
+		this.cy = cy;
+		double rmin = hole / 2.0 * (1.0 - MARGIN);
+		double rmax = size / 2.0 * (1.0 + MARGIN);
+		this.rmin2 = rmin * rmin;
+		this.rmax2 = rmax * rmax;
+		this.zpass = zpass;
+		this.slabs = new double [slabs.length];
+		for (int k = 0; k < slabs.length; k += 2) {
+			double z0 = Math.min (slabs[k], slabs[k + 1]);
+			double z1 = Math.max (slabs[k], slabs[k + 1]);
+			double e = MARGIN * (1.0 + Math.abs (z0) + Math.abs (z1));
+			this.slabs[k] = z0 - e;
+			this.slabs[k + 1] = z1 + e;
+		}
+	}
+
+	/** true if the LightRay l cannot be reflected */
+	boolean misses (LightRay l) {
+		Vector3d p = l.peekPosition ();
+		Vector3d v = l.peekVelocity ();
+		// Along z, or NaN (absorbed): leave it to the intersection
+		if (!(v.z != 0.0))
+			return false;
+		double dx = p.x - cx, dy = p.y - cy;
+		double ww = v.x * v.x + v.y * v.y;
+		double dw = dx * v.x + dy * v.y;
+		double dd = dx * dx + dy * dy;
+		for (int k = 0; k < slabs.length; k += 2) {
+			double ta = (slabs[k] - p.z) / v.z;
+			double tb = (slabs[k + 1] - p.z) / v.z;
+			if (ta > tb) { double t = ta; ta = tb; tb = t; }
+			double fa = (ww * ta + 2.0 * dw) * ta + dd;
+			double fb = (ww * tb + 2.0 * dw) * tb + dd;
+			if (Math.max (fa, fb) < rmin2)
+				continue;				// in the hole
+			double tm = (ww > 0) ? Math.min (tb, Math.max (ta, -dw / ww)) : ta;
+			double fm = Math.min (Math.min (fa, fb),
+								  (ww * tm + 2.0 * dw) * tm + dd);
+			if (fm > rmax2)
+				continue;				// outside the edge
+			return false;
+		}
+		return true;
+	}
+
+	/** The LightRay l going straight on: l itself, moved to where it
+	 * crosses zpass (left where it is, if that is behind it) */
+	LightRay pass (LightRay l) {
+		Vector3d p = l.peekPosition ();
+		double t = (zpass - p.z) / l.peekVelocity ().z;
+		if (t >= ConicSection.TIME_LIMIT)
+			l.propagate (t);
+		return l.miss ();
+	}
+} // end of Class Aperture *****************************************************
@@ -46,7 +46,8 @@ public class CurvedDetector extends Cylinder implements Detector {
 		if ( Math.abs(iPoint.x - xcenter ) > this.size/2.0 ||
 			 Math.abs(iPoint.y - vertex.y) > this.size/2.0 ||
 			 getTime (input) == 0 )
-			return new LightRay (new Vector3d (iPoint), iVel, input.getLambda ());
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 
 		double xb = iPoint.x - vertex.x;
 		double yb = iPoint.y - vertex.y;
@@ -54,7 +55,7 @@ public class CurvedDetector extends Cylinder implements Detector {
 		double dx = xb * cosa - zb * sina;
 		double dy = yb;
 
-		display.add (new Point2d (dx, dy), input.getColor () );
+		display.add (new Point2d (dx, dy), input);
 		return new LightRay ( new Vector3d (iPoint), 
 							  new Vector3d (0, 0, 0), input.getLambda ());
 	} // end of reflect ********************************************************
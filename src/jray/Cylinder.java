@@ -117,7 +117,8 @@ public class Cylinder implements ConicSection {
 		if ( radius > this.size/2.0 ||
 			 radius < this.hole/2.0 ||
 			 this.time == 0)
-			oVel = new Vector3d (iVel);
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 		else {
 			// The Gradient of the equation of our ConicSection:
 			Vector3d normal = 
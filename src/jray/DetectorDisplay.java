@@ -25,6 +25,8 @@ public class DetectorDisplay extends JFrame {
 	 */
 	/** Maximum spot size (returned for spot sizes less than 0) */
 	public final static double SPOTMAX = 1000.;
+	/** Axes of getExtent: x, y, or the larger of both */
+	public final static int XAXIS = 0, YAXIS = 1, XYAXES = 2;
 	/** Number of tick marks on the display */
 	private final static int TICK = 5;
 
@@ -41,6 +43,9 @@ public class DetectorDisplay extends JFrame {
 	private double ycenter = 0;
 	private Vector<Point2d> points;
 	private Vector<Color> colors;
+	private Vector<Integer> orders;
+	private Vector<Double> weights;
+	private double xmin, xmax, ymin, ymax;
 
 	/** Create display with title and linear size of detector */
 	public DetectorDisplay (String title, double s) {
@@ -54,8 +59,7 @@ public class DetectorDisplay extends JFrame {
 		this.SCALE   = this.SIZE / this.LINEAR;
 		this.ySCALE   = this.SIZE / this.yLINEAR;
 		setSize (SIZE + 2 * BORDER, SIZE + 2 * BORDER);
-		this.points = new Vector<Point2d> ();
-		this.colors = new Vector<Color> ();
+		clean ();
 
 		// Add a TextBox for dynamic zooming
 		TextField zxbox = new TextField ("ZX", 7);
@@ -79,12 +83,60 @@ public class DetectorDisplay extends JFrame {
 	public void display () {this.setVisible (true);}
 
 	/** add a 2D point with color c to the display */
-	public void add (Point2d p, Color c) {
+	public void add (Point2d p, Color c) { add (p, c, 0, 1.0); }
+	/** add the 2D point where LightRay l was absorbed, with its color,
+	 * diffraction order and weight */
+	public void add (Point2d p, LightRay l) {
+		add (p, l.getColor (), l.getOrder (), l.getWeight ());
+	}
+	/** add a 2D point with color c, of diffraction order m and weight w */
+	public void add (Point2d p, Color c, int m, double w) {
 		points.add (p);
 		colors.add (c);
+		orders.add (m);
+		weights.add (w);
+		if (p.x < xmin) xmin = p.x;
+		if (p.x > xmax) xmax = p.x;
+		if (p.y < ymin) ymin = p.y;
+		if (p.y > ymax) ymax = p.y;
+	}
+	/** add the mirror image (see Symmetry) of point i, with its
+	 * color, diffraction order and weight */
+	public void addImage (int i, int flags) {
+		Point2d p = new Point2d (points.get (i));
+		if ((flags & Symmetry.MIRROR_X) != 0) p.x = -p.x;
+		if ((flags & Symmetry.MIRROR_Y) != 0) p.y = -p.y;
+		add (p, colors.get (i), orders.get (i), weights.get (i));
 	}
 	public Vector<Point2d> getPoints () { return points; }
 	public Vector<Color> getColors () { return colors; }
+	/** diffraction order of each point */
+	public Vector<Integer> getOrders () { return orders; }
+	/** weight (intensity) of each point */
+	public Vector<Double> getWeights () { return weights; }
+	/** sum of the weights of all points: the light on the detector */
+	public double getTotalWeight () {
+		double w = 0;
+		for (int i = 0; i < weights.size (); i++)
+			w += weights.get (i);
+		return w;
+	}
+	/** sum of the weights of the points of diffraction order m */
+	public double getTotalWeight (int m) {
+		double w = 0;
+		for (int i = 0; i < weights.size (); i++)
+			if (orders.get (i) == m)
+				w += weights.get (i);
+		return w;
+	}
+	/** the points of diffraction order m */
+	public Vector<Point2d> getPoints (int m) {
+		Vector<Point2d> p = new Vector<Point2d> ();
+		for (int i = 0; i < points.size (); i++)
+			if (orders.get (i) == m)
+				p.add (points.get (i));
+		return p;
+	}
 
 	/** paint the display */
 	public void paint (Graphics g) {
@@ -145,6 +197,21 @@ public class DetectorDisplay extends JFrame {
 	public void clean () {
 		this.points = new Vector<Point2d> ();
 		this.colors = new Vector<Color> ();
+		this.orders = new Vector<Integer> ();
+		this.weights = new Vector<Double> ();
+		xmin = ymin = Double.POSITIVE_INFINITY;
+		xmax = ymax = Double.NEGATIVE_INFINITY;
+	}
+	/** Running extent of the points added so far along axis
+	 * (0 for less than two points).  Kept up to date by add, so it
+	 * can be checked after every LightRay. */
+	public double getExtent (int axis) {
+		if (points.size () < 2) return 0;
+		double x = xmax - xmin;
+		double y = ymax - ymin;
+		if (axis == XAXIS) return x;
+		if (axis == YAXIS) return y;
+		return Math.max (x, y);
 	}
 	/** Set the size of the circular pixels */
 	public void setPixel (int i) {this.DOT = Math.abs (i);}
@@ -228,55 +295,92 @@ public class DetectorDisplay extends JFrame {
 	/** computes the spot size on the detector by finding
 	 * the maximal distance between points.
 	 */
-	public double getSpotSize () {
-		/** Compute the spot size in mm
-		 * This will simply be the maximum
-		 * distance between any two points.
-		 */
+	public double getSpotSize () { return spotSize (points, true, true); }
+	/** computes the spot size in the x-direction */
+	public double getXSpotSize () { return spotSize (points, true, false); }
+	/** computes the spot size in the y-direction */
+	public double getYSpotSize () { return spotSize (points, false, true); }
+	/** computes the spot size of diffraction order m */
+	public double getSpotSize (int m) {
+		return spotSize (getPoints (m), true, true);
+	}
+	/** computes the spot size of diffraction order m in the x-direction */
+	public double getXSpotSize (int m) {
+		return spotSize (getPoints (m), true, false);
+	}
+	/** computes the spot size of diffraction order m in the y-direction */
+	public double getYSpotSize (int m) {
+		return spotSize (getPoints (m), false, true);
+	}
+
+	/** Compute the spot size in mm
+	 * This will simply be the maximum
+	 * distance between any two points (in x and/or y).
+	 */
+	private static double spotSize (Vector<Point2d> points,
+									boolean x, boolean y) {
 		double spot = 0;
 		for (int i = 0; i < points.size (); i++) {
 			Point2d n = (Point2d) points.get (i);
 			for (int j = 0; j < points.size (); j++) {
 				Point2d m = (Point2d) points.get (j);
-				double r = Math.sqrt ( Math.pow ((n.x - m.x), 2.0) +
-									   Math.pow ((n.y - m.y), 2.0) );
+				double r;
+				if (x && y)
+					r = Math.sqrt ( Math.pow ((n.x - m.x), 2.0) +
+									Math.pow ((n.y - m.y), 2.0) );
+				else if (x)
+					r = Math.abs (n.x - m.x);
+				else
+					r = Math.abs (n.y - m.y);
 				spot = (r > spot) ? r : spot;
 			}
 		}
 		if (spot <= 0)
 			spot = SPOTMAX;
 		return spot;
-	} // end of getSpotSize ****************************************************
+	} // end of spotSize *******************************************************
 
-	/** computes the spot size in the x-direction */
-	public double getXSpotSize () {
-		double spot = 0;
-		for (int i = 0; i < points.size (); i++) {
-			double x1 = ((Point2d) points.get (i)).x;
-			for (int j = 0; j < points.size (); j++) {
-				double x2 = ((Point2d) points.get (j)).x;
-				double r = Math.abs (x1 - x2);
-				spot = (r > spot) ? r : spot;
-			}
+	/** computes the RMS radius of the spot about its centroid */
+	public double getRMSSpotSize () {
+		int n = points.size ();
+		if (n == 0)
+			return SPOTMAX;
+		double sx = 0, sy = 0;
+		for (int i = 0; i < n; i++) {
+			Point2d p = (Point2d) points.get (i);
+			sx += p.x;
+			sy += p.y;
 		}
-		if (spot <= 0)
-			spot = SPOTMAX;
-		return spot;
-	} // end of getXSpotSize ***************************************************
+		sx /= n;
+		sy /= n;
+		double rms = 0;
+		for (int i = 0; i < n; i++) {
+			Point2d p = (Point2d) points.get (i);
+			rms += (p.x - sx) * (p.x - sx) + (p.y - sy) * (p.y - sy);
+		}
+		return Math.sqrt (rms / n);
+	} // end of getRMSSpotSize *************************************************
 
-	/** computes the spot size in the y-direction */
-	public double getYSpotSize () {
-		double spot = 0;
+	/** computes the RMS radius of the spot about its centroid,
+	 * with every point counted by its weight */
+	public double getWeightedRMSSpotSize () {
+		double w = getTotalWeight ();
+		if (!(w > 0))
+			return SPOTMAX;
+		double sx = 0, sy = 0;
 		for (int i = 0; i < points.size (); i++) {
-			double y1 = ((Point2d) points.get (i)).y;
-			for (int j = 0; j < points.size (); j++) {
-				double y2 = ((Point2d) points.get (j)).y;
-				double r = Math.abs (y1 - y2);
-				spot = (r > spot) ? r : spot;
-			}
+			Point2d p = (Point2d) points.get (i);
+			sx += weights.get (i) * p.x;
+			sy += weights.get (i) * p.y;
 		}
-		if (spot <= 0)
-			spot = SPOTMAX;
-		return spot;
-	} // end of getYSpotSize ***************************************************
+		sx /= w;
+		sy /= w;
+		double rms = 0;
+		for (int i = 0; i < points.size (); i++) {
+			Point2d p = (Point2d) points.get (i);
+			rms += weights.get (i) *
+				((p.x - sx) * (p.x - sx) + (p.y - sy) * (p.y - sy));
+		}
+		return Math.sqrt (rms / w);
+	} // end of getWeightedRMSSpotSize *****************************************
 }// end of Class DetectorDisplay ***********************************************
@@ -0,0 +1,151 @@
+package jray;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Efficiency of an optic against wavelength: the reflectivity of a
+ * mirror, the efficiency of each order of a Grating, or the quantum
+ * efficiency of a Detector.  The LightRays on an OpticBench carry a
+ * weight which is multiplied by the efficiency of every optic they
+ * meet (see OpticBench.setEfficiency).
+ * <p>
+ * Each table is resampled once onto a uniform wavelength grid, so a
+ * lookup is an index computation plus a linear interpolation.
+ * Outside of a table the efficiency at its nearest end is used.
+ */
+public class Efficiency {
+
+	/** Maximum number of samples of a resampled table */
+	public static final int MAX_SAMPLES = 4096;
+
+	/** Efficiency for any order (null for none) */
+	private Table all;
+	/** Efficiency of single orders */
+	private HashMap<Integer, Table> orders = new HashMap<Integer, Table> ();
+
+	/** Construct an Efficiency with the same value everywhere */
+	public Efficiency (double e) {
+		this(new double [] {0.0}, new double [] {e});
+	}
+	/** Construct an Efficiency with the table (lambda in nm, e) for any
+	 * order; lambda must be increasing */
+	public Efficiency (double [] lambda, double [] e) {
+		this.all = new Table (lambda, e);
+	}
+	/** Construct an Efficiency with no table: add them with setOrder */
+	public Efficiency () {}
+
+	/** Sets the table (lambda in nm, e) of diffraction order m */
+	public void setOrder (int m, double [] lambda, double [] e) {
+		orders.put (m, new Table (lambda, e));
+	}
+
+	/** Efficiency at wavelength lambda (nm) of order m; 0 for an order
+	 * without a table if there is no table for any order */
+	public double getEfficiency (double lambda, int m) {
+		Table t = orders.get (m);
+		if (t == null) t = all;
+		if (t == null) return 0.0;
+		return t.lookup (lambda);
+	}
+	/** Efficiency at wavelength lambda (nm), for any order */
+	public double getEfficiency (double lambda) {
+		return (all == null) ? 0.0 : all.lookup (lambda);
+	}
+
+	/**
+	 * Reads an Efficiency from a text file with one
+	 *   lambda efficiency [order]
+	 * per line ('#' comments).  Lines without an order make the table
+	 * for any order.
+	 */
+	public static Efficiency read (File f) throws IOException {
+		HashMap<Integer, Vector<double []>> rows =
+			new HashMap<Integer, Vector<double []>> ();
+		Vector<double []> any = new Vector<double []> ();
+		BufferedReader in = new BufferedReader (new FileReader (f));
+		String line;
+		while ((line = in.readLine ()) != null) {
+			int c = line.indexOf ('#');
+			if (c >= 0) line = line.substring (0, c);
+			line = line.trim ();
+			if (line.length () == 0) continue;
+			String [] w = line.split ("\\s+");
+			double [] r = {Double.parseDouble (w[0]), Double.parseDouble (w[1])};
+			if (w.length > 2) {
+				Integer m = Integer.valueOf (w[2]);
+				if (!rows.containsKey (m))
+					rows.put (m, new Vector<double []> ());
+				rows.get (m).add (r);
+			} else
+				any.add (r);
+		}
+		in.close ();
+
+		Efficiency e = new Efficiency ();
+		if (any.size () > 0)
+			e.all = new Table (column (any, 0), column (any, 1));
+		for (Integer m : rows.keySet ())
+			e.orders.put (m, new Table (column (rows.get (m), 0),
+										column (rows.get (m), 1)));
+		return e;
+	}
+	private static double [] column (Vector<double []> rows, int j) {
+		double [] c = new double [rows.size ()];
+		for (int i = 0; i < c.length; i++)
+			c[i] = rows.get (i)[j];
+		return c;
+	}
+
+	/** A table resampled on a uniform grid */
+	private static class Table {
+		double start, step;
+		double [] e;
+
+		Table (double [] lambda, double [] eff) {
+			int n = lambda.length;
+			if (n == 0 || n != eff.length)
+				throw new RuntimeException ("Efficiency: table needs as " +
+											"many efficiencies as " +
+											"wavelengths");
+			this.start = lambda[0];
+			if (n == 1) {
+				this.step = 1.0;
+				this.e = new double [] {eff[0]};
+				return;
+			}
+			// the grid resolves the closest pair of wavelengths
+			double min = Double.POSITIVE_INFINITY;
+			for (int i = 1; i < n; i++) {
+				if (lambda[i] <= lambda[i-1])
+					throw new RuntimeException ("Efficiency: wavelengths " +
+												"must be increasing");
+				min = Math.min (min, lambda[i] - lambda[i-1]);
+			}
+			double range = lambda[n-1] - start;
+			int samples = (int) Math.min (MAX_SAMPLES,
+										  Math.ceil (range / min) + 1);
+			this.step = range / (samples - 1);
+			this.e = new double [samples];
+			int j = 0;
+			for (int i = 0; i < samples; i++) {
+				double l = start + i * step;
+				while (j < n - 2 && lambda[j+1] < l) j++;
+				double f = (l - lambda[j]) / (lambda[j+1] - lambda[j]);
+				f = Math.max (0.0, Math.min (1.0, f));
+				e[i] = eff[j] + f * (eff[j+1] - eff[j]);
+			}
+		}
+
+		double lookup (double lambda) {
+			double x = (lambda - start) / step;
+			if (!(x > 0)) return e[0];
+			int i = (int) x;
+			if (i >= e.length - 1) return e[e.length - 1];
+			double f = x - i;
+			return e[i] + f * (e[i+1] - e[i]);
+		}
+	}
+} // end of Class Efficiency ***************************************************
@@ -7,7 +7,7 @@ import javax.media.j3d.Transform3D;
 /**
  * Ellipsoid: Ellipse of revolution
  */
-public class Ellipsoid implements ConicSection {
+public class Ellipsoid implements RotationalSurface {
 
 	/** location of the vertex of this ConicSection */
 	protected Point3d vertex;
@@ -25,6 +25,7 @@ public class Ellipsoid implements ConicSection {
 	protected boolean downup = false;
 	/** angle of rotation about the y-axis */
 	protected double angle;
+	private Aperture aperture;	// pre-rejection, of an untilted mirror
 
 	/**
 	 * The equation of a ellipsoid is
@@ -60,6 +61,27 @@ public class Ellipsoid implements ConicSection {
 		this.angle = angle;
 		if (c > a) this.angle = -this.angle;
 		this.time = -1;
+		/*
+		 * |z - z0| = c sqrt (1 - (x/a)^2 - (y/b)^2) on both halves, at
+		 * a distance from the vertex of the hole less the offset of
+		 * the aperture to its edge plus the offset.  Only for the
+		 * mirrors themselves, as in Quadric.of: the detectors and
+		 * gratings on a Spheroid or Ellipsoid accept a square and
+		 * decide a miss with getTime
+		 */
+		if (this.angle == 0.0 && (getClass () == Ellipsoid.class ||
+								  getClass () == Spheroid.class)) {
+			double off = Math.abs (xcenter - vertex.x);
+			double rmin = Math.max (0.0, hole / 2.0 - off);
+			double rmax = size / 2.0 + off;
+			double a2 = Math.min (a * a, b * b), b2 = Math.max (a * a, b * b);
+			double z0 = c * Math.sqrt (Math.max (0.0, 1.0 - rmax * rmax / a2));
+			double z1 = c * Math.sqrt (Math.max (0.0, 1.0 - rmin * rmin / b2));
+			double zv = (downup) ? vertex.z - c : vertex.z + c;
+			aperture = new Aperture (xcenter, vertex.y, hole, size, zv,
+									 vertex.z + z0, vertex.z + z1,
+									 vertex.z - z0, vertex.z - z1);
+		}
 	}
 
 	/** Evaluate at point x the value z for 2D Rendering */
@@ -102,8 +124,11 @@ public class Ellipsoid implements ConicSection {
 	/** 
 	 * Returns a LightRay at the surface of the
 	 * ConicSection in the outgoing reflected direction.
+	 * A LightRay the Aperture rejects is moved on and returned itself.
 	 */
 	public LightRay reflect (LightRay input) {
+		if (aperture != null && aperture.misses (input))
+			return aperture.pass (input);
 		// Find intersection of LightRay and ConicSection
 		Point3d iPoint = intersect (input);
 		Vector3d iVel = input.getVelocity ();
@@ -119,7 +144,8 @@ public class Ellipsoid implements ConicSection {
 		if ( radius > this.size/2.0 ||
 			 radius < this.hole/2.0 ||
 			 this.time == 0)
-			oVel = new Vector3d (iVel);
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 		else {
 			// The Gradient of the equation of our ConicSection:
 			Vector3d normal = 
@@ -136,8 +162,20 @@ public class Ellipsoid implements ConicSection {
 		return new LightRay (new Vector3d (iPoint), oVel, input.getLambda ());
 	} // end of reflect ********************************************************
 
-	/** returns the time to intersection */
+	/** The Quadric of this Ellipsoid, if it is not tilted (else null) */
+	Quadric toQuadric () {
+		if (angle != 0.0) return null;
+		return new Quadric (vertex, Quadric.matrix (1.0 / (a * a), 1.0 / (b * b),
+													1.0 / (c * c), -1.0, 0, 0, 0),
+							(downup) ? Quadric.DOWN : Quadric.UP,
+							xcenter, vertex.y, hole, size, aperture);
+	}
+
+	/** returns the time to intersection (0 if the Aperture shows the
+	 * LightRay cannot be reflected) */
 	public double getTime (LightRay input) {
+		if (aperture != null && aperture.misses (input))
+			return 0;
 		intersect (input);
 		return this.time;
 	}
@@ -220,4 +258,22 @@ public class Ellipsoid implements ConicSection {
 		throw new RuntimeException ("Ellipsoid getFocus Error:" +
 									" Ellipsoids only have two focii.");
 	}
+
+	/** true if this Ellipsoid is circular, on the z-axis and not tilted */
+	public boolean isCoaxial () {
+		return angle == 0.0 && a == b && vertex.x == 0 && vertex.y == 0;
+	}
+	/** z of the vertex: the top of the ellipsoid if it is concave down,
+	 * the bottom otherwise */
+	public double getVertexZ () {
+		return (downup) ? vertex.z - c : vertex.z + c;
+	}
+	/** curvature at the vertex */
+	public double getVertexCurvature () {
+		return (downup) ? c / (a * a) : -c / (a * a);
+	}
+	/** conic constant: 0 for a sphere, between -1 and 0 if prolate */
+	public double getConicConstant () { return (a * a) / (c * c) - 1.0; }
+	/** returns the diameter of the hole */
+	public double getHoleSize () { return hole; }
 } // end of Class Ellipsoid ****************************************************
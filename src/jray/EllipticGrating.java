@@ -1,7 +1,6 @@
 package jray;
 
 import javax.vecmath.*;
-import javax.media.j3d.Transform3D;
 
 /** Elliptical Grating disperses light
  */
@@ -10,8 +9,13 @@ public class EllipticGrating extends Ellipsoid implements Grating {
 	private double cd; // in nm
 	private Vector3d cg;
 	private int order;
+	private int [] orders;
 	private double xcenter;
 	private Vector3d crossg;
+	/** rotY (-angle), as cosine and sine */
+	private double cr, sr;
+	/** scratch space for the diffracted direction */
+	private double [] out = new double [3];
 
 	/** A Elliptical Grating requires the following inputs:
 	 * position vector of the vertex of the grating,
@@ -45,53 +49,69 @@ public class EllipticGrating extends Ellipsoid implements Grating {
 		crossg = new Vector3d ();
 		crossg.cross (ncenter, this.cg);
 		crossg.normalize ();
+		this.cr = Math.cos (-this.angle);
+		this.sr = Math.sin (-this.angle);
 	}
 
 	/** returns light reflected into order m */
 	public LightRay reflect (LightRay input) {
 		return reflect (input, this.order);
 	}
+	/** orders an OpticBench sends the light into (default: order) */
+	public void setOrders (int [] m) {
+		if (m.length == 0)
+			throw new RuntimeException ("EllipticGrating: needs at least one " +
+										"order");
+		this.orders = m.clone ();
+	}
+	public int [] getOrders () {
+		return (orders != null) ? orders.clone () : new int [] {order};
+	}
 	public LightRay reflect (LightRay input, int m) {
 		Point3d iPoint = intersect (input);
 		Vector3d iVel = input.getVelocity ();
 		double lambda = input.getLambda ();
-		Point3d  rPoint = new Point3d ();
-		Transform3D rot = new Transform3D ();
-		rot.rotY (-this.angle);
-		rot.transform (iPoint, rPoint);
+		// rotate by -angle about y
+		double px =  cr * iPoint.x + sr * iPoint.z;
+		double py =  iPoint.y;
+		double pz = -sr * iPoint.x + cr * iPoint.z;
 		double cx = iPoint.x - xcenter;
 		double cy = iPoint.y - vertex.y;
 		double radius = Math.sqrt ( cx * cx + cy * cy);
 		if ( radius > this.size/2.0 ||
 			 radius < this.hole/2.0 ||
 			 getTime (input) == 0)
-			return new LightRay (new Vector3d (iPoint), iVel, lambda);
+			return new LightRay (new Vector3d (iPoint), iVel, lambda).miss ();
 
-		Vector3d normal = 
-			new Vector3d (-2.0*(rPoint.x - vertex.x) / Math.pow (this.a, 2.0),
-						  -2.0*(rPoint.y - vertex.y) / Math.pow (this.b, 2.0),
-						  -2.0*(rPoint.z - vertex.z) / Math.pow (this.c, 2.0));
-		normal.normalize ();
-		if (downup && normal.z < 0) normal.negate ();
-		rot.transpose ();
-		rot.transform (normal);
-		if (downup && normal.z < 0) normal.z = -normal.z;
+		double tx = -2.0*(px - vertex.x) / (this.a * this.a);
+		double ty = -2.0*(py - vertex.y) / (this.b * this.b);
+		double tz = -2.0*(pz - vertex.z) / (this.c * this.c);
+		double s = 1.0 / Math.sqrt (tx*tx + ty*ty + tz*tz);
+		if (downup && tz < 0) s = -s;
+		tx *= s; ty *= s; tz *= s;
+		// and back by +angle
+		double nx = cr * tx - sr * tz;
+		double ny = ty;
+		double nz = sr * tx + cr * tz;
+		if (downup && nz < 0) nz = -nz;
 	
 		// local linespacing on sphere
 		// assuming cg = (0, 1, 0), then
-		double dx = rPoint.x - xcenter;
-		double dz = rPoint.z - Evaluate (xcenter);
+		double dx = px - xcenter;
+		double dz = pz - Evaluate (xcenter);
 		double dd = Math.sqrt ( dx*dx + dz*dz );
 		double ld = a * ( Math.asin ( (dd + 0.5 * this.cd * 1e-6) / a )
 						 -Math.asin ( (dd - 0.5 * this.cd * 1e-6) / a )
 						  ) * 1e6; // in nm
 
-		// local direction of grooves
-		Vector3d lg = new Vector3d ();
-		lg.cross (normal, crossg);
-		lg.normalize ();
+		// local direction of grooves: normal x crossg
+		double gx = ny*crossg.z - nz*crossg.y;
+		double gy = nz*crossg.x - nx*crossg.z;
+		double gz = nx*crossg.y - ny*crossg.x;
 
-		Vector3d oVel = GratingEqn.grating (m, lambda, ld, lg, normal, iVel);
-		return new LightRay (new Vector3d (iPoint), oVel, lambda);
+		GratingEqn.grating (m, lambda, ld, gx, gy, gz, nx, ny, nz,
+							iVel.x, iVel.y, iVel.z, out, 0);
+		return new LightRay (new Vector3d (iPoint),
+							 new Vector3d (out[0], out[1], out[2]), lambda);
 	} // end of reflect ********************************************************
 } // end of Class EllipticGrating
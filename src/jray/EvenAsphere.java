@@ -0,0 +1,67 @@
+package jray;
+
+import javax.vecmath.Point3d;
+
+/**
+ * EvenAsphere: a conic plus a polynomial in even powers of the radius
+ *   z - z0 = c r^2 / (1 + sqrt (1 - (1 + K) c^2 r^2)) +
+ *            A[0] r^4 + A[1] r^6 + ...
+ * the aspheric corrector of a Schmidt camera, or a primary figured
+ * beyond its conic.
+ */
+public class EvenAsphere extends SagSurface {
+
+	/** coefficients of r^4, r^6, ... */
+	protected double [] A;
+
+	/** EvenAsphere of vertex v, vertex curvature c, conic constant K
+	 * and coefficients A of r^4, r^6, ..., of diameter s */
+	public EvenAsphere (Point3d v, double c, double K, double [] A, double s) {
+		this (v, c, K, A, s, 0);
+	}
+	/** with a hole in the center of this ConicSection */
+	public EvenAsphere (Point3d v, double c, double K, double [] A,
+						double s, double h) {
+		super (v, c, K, s, h);
+		this.A = A.clone ();
+	}
+
+	/** the polynomial, by Horner in r^2 */
+	protected double departure (double x, double y, double [] d) {
+		double r2 = x * x + y * y;
+		double p = 0, dp = 0;		// sum A[i] r^(2i) and its d/d(r^2)
+		for (int i = A.length - 1; i >= 0; i--) {
+			dp = dp * r2 + p;
+			p = p * r2 + A[i];
+		}
+		// z = r^4 p (r^2): dz/dx = 2 x (2 r^2 p + r^4 p')
+		double g = 2.0 * (2.0 * r2 * p + r2 * r2 * dp);
+		d[0] += g * x;
+		d[1] += g * y;
+		return r2 * r2 * p;
+	}
+
+	/** coefficient of r^(2i+4) */
+	public double getCoefficient (int i) { return A[i]; }
+	/** number of coefficients */
+	public int numCoefficients () { return A.length; }
+
+	/**
+	 * Conic constant of the conic with the same sag to the fourth
+	 * order, K + 8 A[0] / c^3: the one the third order aberrations
+	 * (Seidel) see.  That of the base conic if the vertex is flat.
+	 */
+	public double getConicConstant () {
+		if (c == 0 || A.length == 0) return K;
+		return K + 8.0 * A[0] / (c * c * c);
+	}
+
+	/** overrides toString() */
+	public String toString () {
+		StringBuffer s = new StringBuffer ("EvenAsphere with vertex=" + vertex +
+										   ", c=" + c + ", K=" + K + ", A=(");
+		for (int i = 0; i < A.length; i++)
+			s.append (((i > 0) ? ", " : "") + A[i]);
+		return s.append ("), D=" + size + ", hole=" + hole).toString ();
+	}
+} // end of Class EvenAsphere **************************************************
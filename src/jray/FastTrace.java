@@ -0,0 +1,286 @@
+package jray;
+
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.vecmath.Vector3d;
+
+/**
+ * FastTrace traces a batch of LightRays through the mirrors of a
+ * Telescope which all compile into a Quadric (see Quadric.of) onto a
+ * coaxial PlaneDetector, with the state of the LightRays held as
+ * arrays of x, y, z and velocity rather than as LightRays.  In float
+ * (setFloat) the mirrors are reflected by the float kernel of Quadric,
+ * twice the LightRays per cache line and per vector register; the
+ * Detector is always intersected in double, from the float state.
+ * compare gives the error of the float trace against the same trace
+ * in double, so the fast mode can be checked before it is trusted
+ * for a design.
+ * <p>
+ * As in DualTrace the optics are visited in the order of the
+ * Telescope, passing straight through holes: the obstruction by the
+ * secondary is not modelled.  A LightRay which misses the Detector
+ * has NaN coordinates.  A MappedRays too big for the heap is traced
+ * a block at a time into a MappedHits; FastTrace is the only tracer of
+ * the mapped files, an OpticBench keeps everything in the heap.
+ */
+public class FastTrace {
+
+	/** LightRays of a MappedRays traced at a time */
+	public static final int BLOCK = 4096;
+
+	Quadric [] mirrors;
+	PlaneDetector detector;
+	boolean fast = false;
+
+	/** Traces the Telescope t, in double until setFloat */
+	public FastTrace (Telescope t) {
+		int n = t.numElements ();
+		mirrors = new Quadric [n - 1];
+		for (int k = 0; k < n - 1; k++) {
+			mirrors[k] = Quadric.of (t.getConicSection (k));
+			if (mirrors[k] == null)
+				throw new RuntimeException ("FastTrace: element " + k +
+											" is not an untilted Paraboloid, " +
+											"Hyperboloid or Ellipsoid");
+		}
+		ConicSection c = t.getConicSection (n - 1);
+		if (!(c instanceof PlaneDetector) || !((PlaneDetector) c).isCoaxial ())
+			throw new RuntimeException ("FastTrace: the last element should " +
+										"be a coaxial PlaneDetector");
+		detector = (PlaneDetector) c;
+	}
+
+	/** Traces the mirrors in float (true) or double (false) */
+	public void setFloat (boolean fast) { this.fast = fast; }
+	/** true if the mirrors are traced in float */
+	public boolean isFloat () { return fast; }
+
+	/**
+	 * Detector coordinates {x[], y[]} (about its vertex) of the
+	 * LightRays l, traced from where they are
+	 */
+	public double [][] trace (Vector<LightRay> l) {
+		return (fast) ? traceFloat (l) : traceDouble (l);
+	}
+
+	/** The mirrors in double, one LightRay at a time */
+	double [][] traceDouble (Vector<LightRay> l) {
+		int n = l.size ();
+		double [][] hits = new double [2][n];
+		// a copy: a LightRay an Aperture rejects is moved in place
+		for (int i = 0; i < n; i++)
+			traceDouble (new LightRay (l.get (i)), hits, i);
+		return hits;
+	}
+	/** Puts where the LightRay r lands in hits[.][i], in double */
+	void traceDouble (LightRay r, double [][] hits, int i) {
+		for (int k = 0; k < mirrors.length; k++)
+			r = mirrors[k].reflect (r);
+		Vector3d p = r.peekPosition ();
+		Vector3d v = r.peekVelocity ();
+		detect (p.x, p.y, p.z, v.x, v.y, v.z, hits, i);
+	}
+
+	/** The mirrors in float, the whole batch a mirror at a time */
+	double [][] traceFloat (Vector<LightRay> l) {
+		int n = l.size ();
+		float [] x = new float [n], y = new float [n], z = new float [n];
+		float [] u = new float [n], v = new float [n], w = new float [n];
+		for (int i = 0; i < n; i++) {
+			LightRay r = l.get (i);
+			Vector3d p = r.peekPosition ();
+			Vector3d d = r.peekVelocity ();
+			x[i] = (float) p.x;
+			y[i] = (float) p.y;
+			z[i] = (float) p.z;
+			u[i] = (float) d.x;
+			v[i] = (float) d.y;
+			w[i] = (float) d.z;
+		}
+		double [][] hits = new double [2][n];
+		traceFloat (x, y, z, u, v, w, n, hits);
+		return hits;
+	}
+	/** Puts where the n LightRays of the float state land in hits */
+	void traceFloat (float [] x, float [] y, float [] z,
+					 float [] u, float [] v, float [] w, int n,
+					 double [][] hits) {
+		for (int k = 0; k < mirrors.length; k++)
+			mirrors[k].reflect (x, y, z, u, v, w, n);
+		for (int i = 0; i < n; i++) {
+			double vx = u[i], vy = v[i], vz = w[i];
+			double s = Math.sqrt (vx * vx + vy * vy + vz * vz);
+			detect (x[i], y[i], z[i], vx / s, vy / s, vz / s, hits, i);
+		}
+	}
+
+	/**
+	 * Traces the LightRays from ... to - 1 of rays into the same
+	 * records of hits, BLOCK LightRays at a time, in the mode set by
+	 * setFloat.  Only a block is ever in the heap; workers may trace
+	 * disjoint ranges of the same files at once.
+	 */
+	public void trace (MappedRays rays, MappedHits hits, long from, long to) {
+		if (from < 0 || to > rays.size () || to > hits.size ())
+			throw new RuntimeException ("FastTrace: LightRays " + from + " to " +
+										to + " are not in the files");
+		float [] x = new float [BLOCK], y = new float [BLOCK], z = new float [BLOCK];
+		float [] u = new float [BLOCK], v = new float [BLOCK], w = new float [BLOCK];
+		double [][] h = new double [2][BLOCK];
+		for (long i0 = from; i0 < to; i0 += BLOCK) {
+			int n = (int) Math.min (BLOCK, to - i0);
+			if (fast) {
+				for (int i = 0; i < n; i++) {
+					x[i] = (float) rays.get (i0 + i, 0);
+					y[i] = (float) rays.get (i0 + i, 1);
+					z[i] = (float) rays.get (i0 + i, 2);
+					u[i] = (float) rays.get (i0 + i, 3);
+					v[i] = (float) rays.get (i0 + i, 4);
+					w[i] = (float) rays.get (i0 + i, 5);
+				}
+				traceFloat (x, y, z, u, v, w, n, h);
+			} else
+				for (int i = 0; i < n; i++)
+					traceDouble (rays.get (i0 + i), h, i);
+			for (int i = 0; i < n; i++)
+				if (Double.isNaN (h[0][i]))
+					hits.putMiss (i0 + i);
+				else
+					hits.put (i0 + i, h[0][i], h[1][i], rays.get (i0 + i, 7));
+		}
+	} // end of trace (MappedRays) *********************************************
+
+	/** Traces all of rays into hits on nThreads threads, each on its
+	 * own range of the files */
+	public void trace (final MappedRays rays, final MappedHits hits,
+					   int nThreads) throws InterruptedException {
+		long n = rays.size ();
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		Vector<Future<?>> jobs = new Vector<Future<?>> ();
+		long chunk = (n / nThreads / BLOCK + 1) * BLOCK;
+		for (long i = 0; i < n; i += chunk) {
+			final long from = i, to = Math.min (n, i + chunk);
+			jobs.add (pool.submit (new Runnable () {
+					public void run () { trace (rays, hits, from, to); }
+				}));
+		}
+		pool.shutdown ();
+		try {
+			for (int i = 0; i < jobs.size (); i++)
+				jobs.get (i).get ();
+		} catch (ExecutionException e) {
+			pool.shutdownNow ();
+			throw new RuntimeException ("FastTrace: " + e.getCause (),
+										e.getCause ());
+		}
+	} // end of trace (threads) ************************************************
+
+	/** Puts where the LightRay at p with velocity v lands on the
+	 * Detector in hits[.][i], as PlaneDetector.reflect does */
+	void detect (double px, double py, double pz,
+				 double vx, double vy, double vz, double [][] hits, int i) {
+		Vector3d normal = detector.normal;
+		double t = (detector.zero - normal.z * pz) / (normal.z * vz);
+		double dx = px + t * vx - detector.vertex.x;
+		double dy = py + t * vy - detector.vertex.y;
+		if (t < ConicSection.TIME_LIMIT || Double.isNaN (t) ||
+			Double.isInfinite (t) || Math.abs (dx) > detector.size / 2.0 ||
+			Math.abs (dy) > detector.size / 2.0)
+			dx = dy = Double.NaN;
+		hits[0][i] = dx;
+		hits[1][i] = dy;
+	}
+
+	/**
+	 * Accuracy of the float trace of the LightRays l against the
+	 * double one.  The mode set by setFloat is kept.
+	 */
+	public Accuracy compare (Vector<LightRay> l) {
+		return new Accuracy (traceDouble (l), traceFloat (l));
+	}
+
+	/** RMS radius (mm) about their centroid of the hits which are not
+	 * NaN, NaN if there are none */
+	public static double rmsSpot (double [][] hits) {
+		double sx = 0, sy = 0, sxx = 0;
+		int m = 0;
+		for (int i = 0; i < hits[0].length; i++) {
+			double x = hits[0][i], y = hits[1][i];
+			if (Double.isNaN (x))
+				continue;
+			sx += x;
+			sy += y;
+			sxx += x * x + y * y;
+			m++;
+		}
+		if (m == 0)
+			return Double.NaN;
+		sx /= m;
+		sy /= m;
+		return Math.sqrt (Math.max (0, sxx / m - sx * sx - sy * sy));
+	}
+
+	/**
+	 * The difference between the hits of a float trace and the double
+	 * reference: LightRays which land in one and not the other, and the
+	 * largest and RMS distance (mm) between the two images of a
+	 * LightRay which lands in both.
+	 */
+	public static class Accuracy {
+		int rays, hits, mismatches;
+		double maxError, rmsError, spot, spotFloat;
+
+		/** Accuracy of the hits h (float) against the reference r */
+		public Accuracy (double [][] r, double [][] h) {
+			rays = r[0].length;
+			double sum = 0;
+			for (int i = 0; i < rays; i++) {
+				boolean a = !Double.isNaN (r[0][i]), b = !Double.isNaN (h[0][i]);
+				if (a != b)
+					mismatches++;
+				if (!a || !b)
+					continue;
+				double dx = h[0][i] - r[0][i], dy = h[1][i] - r[1][i];
+				double e = dx * dx + dy * dy;
+				sum += e;
+				maxError = Math.max (maxError, Math.sqrt (e));
+				hits++;
+			}
+			rmsError = (hits > 0) ? Math.sqrt (sum / hits) : 0.0;
+			spot = rmsSpot (r);
+			spotFloat = rmsSpot (h);
+		}
+
+		/** Number of LightRays compared */
+		public int getRays () { return rays; }
+		/** Number of LightRays which land in both traces */
+		public int getHits () { return hits; }
+		/** Number of LightRays which land in one trace only */
+		public int getMismatches () { return mismatches; }
+		/** Largest distance (mm) between the two images of a LightRay */
+		public double getMaxError () { return maxError; }
+		/** RMS distance (mm) between the two images of a LightRay */
+		public double getRMSError () { return rmsError; }
+		/** RMS spot radius (mm) of the double trace */
+		public double getSpot () { return spot; }
+		/** RMS spot radius (mm) of the float trace */
+		public double getSpotFloat () { return spotFloat; }
+
+		/** true if the same LightRays land, each within tol (mm) */
+		public boolean isAcceptable (double tol) {
+			return mismatches == 0 && maxError <= tol;
+		}
+
+		/** overrides toString() */
+		public String toString () {
+			return ("Float against double: " + hits + "/" + rays +
+					" LightRays hit, " + mismatches + " mismatched, error max " +
+					maxError + "mm rms " + rmsError + "mm, spot " + spot +
+					"mm (float " + spotFloat + "mm)");
+		}
+	} // end of Class Accuracy *************************************************
+} // end of Class FastTrace ****************************************************
@@ -9,5 +9,12 @@ public interface Grating {
 	/** returns light reflected into order m */
 	public LightRay reflect (LightRay i);
 	public LightRay reflect (LightRay i, int m);
+	/** sets the orders an OpticBench sends the light into, at least
+	 * one; the first one is the main order.  An OpticBench reads them
+	 * once per propagation, and retraces from the Grating when they
+	 * change */
+	public void setOrders (int [] m);
+	/** returns the orders an OpticBench sends the light into */
+	public int [] getOrders ();
 
 }
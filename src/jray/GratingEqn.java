@@ -1,7 +1,6 @@
 package jray;
 
 import javax.vecmath.*;
-import javax.media.j3d.*;
 
 /** The Grating Equation */
 public class GratingEqn {
@@ -26,39 +25,57 @@ public class GratingEqn {
 	 */   
 	public static Vector3d grating (double m, double l, double d, 
 									Vector3d g, Vector3d n, Vector3d i) {
-		Vector3d o = new Vector3d ();
-		n.normalize ();
-		g.normalize ();
+		double [] o = new double [3];
+		grating (m, l, d, g.x, g.y, g.z, n.x, n.y, n.z, i.x, i.y, i.z, o, 0);
+		return new Vector3d (o);
+	}
+
+	/**
+	 * The grating equation on primitives: same as above, but the
+	 * outgoing diffracted vector is written into o[off], o[off+1],
+	 * o[off+2], and nothing is allocated.  g and n need not be
+	 * normalized, and are not modified.
+	 */
+	public static void grating (double m, double l, double d,
+								double gx, double gy, double gz,
+								double nx, double ny, double nz,
+								double ix, double iy, double iz,
+								double [] o, int off) {
+		double s = 1.0 / Math.sqrt (nx*nx + ny*ny + nz*nz);
+		nx *= s; ny *= s; nz *= s;
+		s = 1.0 / Math.sqrt (gx*gx + gy*gy + gz*gz);
+		gx *= s; gy *= s; gz *= s;
 
 		/* Goldstein p146
 		 * Transform from basic to xx coordinates
 		 * in xx coordinates, g || z, n || y
+		 * rows of the rotation: (r00 r01 r02) (r10 r11 r12) (gx gy gz)
 		 */
-		double a = Math.sqrt (1.0 - g.z*g.z);
-		double xn1 = (n.x*g.y - n.y*g.x) / a;
-		double xn2 = g.z*(n.x*g.x + n.y*g.y)/a - a*n.z;
+		double a = Math.sqrt (1.0 - gz*gz);
+		double xn1 = (nx*gy - ny*gx) / a;
+		double xn2 = gz*(nx*gx + ny*gy)/a - a*nz;
+		double r00 = ( xn2*gy-xn1*gz*gx)/a;
+		double r01 = (-xn2*gx-xn1*gy*gz)/a;
+		double r02 = xn1*a;
+		double r10 = ( xn1*gy+xn2*gz*gx)/a;
+		double r11 = (-xn1*gx+xn2*gy*gz)/a;
+		double r12 = -a*xn2;
 
-		Matrix3d mR = 
-			new Matrix3d ( ( xn2*g.y-xn1*g.z*g.x)/a,
-						   (-xn2*g.x-xn1*g.y*g.z)/a, xn1*a, 
-						   ( xn1*g.y+xn2*g.z*g.x)/a, 
-						   (-xn1*g.x+xn2*g.y*g.z)/a, -a*xn2,
-						   g.x, g.y, g.z );
+		double xx = r00*ix + r01*iy + r02*iz;
+		double xy = r10*ix + r11*iy + r12*iz;
+		double xz =  gx*ix +  gy*iy +  gz*iz;
+		s = 1.0 / Math.sqrt (xx*xx + xy*xy + xz*xz);
+		xx *= s; xz *= s;
 
-		Transform3D R = new Transform3D (mR, new Vector3d (0,0,0), 1.0);
-		Vector3d xxi = new Vector3d (i);
-		R.transform (xxi);
-		xxi.normalize ();
-		if (xxi.x > 0) {
-			g.negate ();
-			return grating (m, l, d, g, n, i);
-		}
-		o.x = (m * l / d) + xxi.x;
-		o.z = xxi.z;
-		o.y = Math.sqrt (1.0 - o.x*o.x - o.z*o.z);
+		/* Grooves pointing the other way flip the x and z axes of
+		 * the xx coordinates: the same as shifting x the other way */
+		double ox = (xx > 0) ? xx - (m * l / d) : (m * l / d) + xx;
+		double oz = xz;
+		double oy = Math.sqrt (1.0 - ox*ox - oz*oz);
 
-		R.transpose ();
-		R.transform (o);
-		return o;
+		// back with the transpose
+		o[off]   = r00*ox + r10*oy + gx*oz;
+		o[off+1] = r01*ox + r11*oy + gy*oz;
+		o[off+2] = r02*ox + r12*oy + gz*oz;
 	}
 } // end of Class GratingEqn *************************************************
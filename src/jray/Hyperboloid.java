@@ -6,7 +6,7 @@ import javax.vecmath.Vector3d;
 /**
  * Hyperboloid of two sheets about the z-axis
  */
-public class Hyperboloid implements ConicSection {
+public class Hyperboloid implements RotationalSurface {
 
 	private Point3d vertex; // Location of Vertex
 	private double size;    // the diameter of the mirror
@@ -14,6 +14,7 @@ public class Hyperboloid implements ConicSection {
 	private double a, b;    // Hyperboloid parameters
 	private double hole;    // Size of hole in center of hyperbola
 	private double time;    // time elapsed from LightRay start to intersection
+	private Aperture aperture;	// pre-rejection
 
 	/**
 	 * The equation of a hyperboloid of two sheets is
@@ -32,6 +33,13 @@ public class Hyperboloid implements ConicSection {
 		this.size = s * SIZE_FACTOR;
 		this.hole = h;
 		this.time = -1;
+		// |z - z0| = c sqrt (1 + (x/a)^2 + (y/b)^2) on both sheets
+		double a2 = Math.min (a * a, b * b), b2 = Math.max (a * a, b * b);
+		double z0 = Math.abs (c) * Math.sqrt (1.0 + hole * hole / 4.0 / b2);
+		double z1 = Math.abs (c) * Math.sqrt (1.0 + size * size / 4.0 / a2);
+		aperture = new Aperture (vertex.x, vertex.y, hole, size, getVertexZ (),
+								 vertex.z + z0, vertex.z + z1,
+								 vertex.z - z0, vertex.z - z1);
 	}
 
 	/** Evaluate at point x the value z for 2D Rendering */
@@ -49,8 +57,11 @@ public class Hyperboloid implements ConicSection {
 	/** 
 	 * Returns a LightRay at the surface of the
 	 * ConicSection in the outgoing reflected direction.
+	 * A LightRay the Aperture rejects is moved on and returned itself.
 	 */
 	public LightRay reflect (LightRay input) {
+		if (aperture != null && aperture.misses (input))
+			return aperture.pass (input);
 		Point3d iPoint = intersect (input);
 		Vector3d iVel = input.getVelocity ();
 		Vector3d oVel = new Vector3d ();
@@ -61,7 +72,8 @@ public class Hyperboloid implements ConicSection {
 		if ( radius > this.size/2.0 ||
 			 radius < this.hole/2.0 ||
 			 this.time == 0)
-			oVel = new Vector3d (iVel);
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 		else {
 			// The Gradient of the equation of our ConicSection:
 			Vector3d normal = 
@@ -74,8 +86,19 @@ public class Hyperboloid implements ConicSection {
 		return new LightRay (new Vector3d (iPoint), oVel, input.getLambda ());
 	} // end of reflect ********************************************************
 
-	/** returns the time to intersection */
+	/** The Quadric of this Hyperboloid */
+	Quadric toQuadric () {
+		return new Quadric (vertex, Quadric.matrix (-1.0 / (a * a), -1.0 / (b * b),
+													1.0 / (c * c), -1.0, 0, 0, 0),
+							Quadric.UP, vertex.x, vertex.y, hole, size,
+							aperture);
+	}
+
+	/** returns the time to intersection (0 if the Aperture shows the
+	 * LightRay cannot be reflected) */
 	public double getTime (LightRay input) {
+		if (aperture != null && aperture.misses (input))
+			return 0;
 		intersect (input);
 		return this.time;
 	}
@@ -148,4 +171,17 @@ public class Hyperboloid implements ConicSection {
 						   ", abc=(" + a + ", " + b + ", " + c +
 						   "), D=" + size + ", hole=" + hole);
 	}
+
+	/** true if this Hyperboloid is circular and on the z-axis */
+	public boolean isCoaxial () {
+		return a == b && vertex.x == 0 && vertex.y == 0;
+	}
+	/** z of the vertex of the sheet drawn by Evaluate */
+	public double getVertexZ () { return vertex.z + c; }
+	/** curvature at the vertex: z = c sqrt (1 + (r/a)^2) */
+	public double getVertexCurvature () { return c / (a * a); }
+	/** conic constant, below -1 */
+	public double getConicConstant () { return -1.0 - (a * a) / (c * c); }
+	/** returns the diameter of the hole */
+	public double getHoleSize () { return hole; }
 } // end of Class Hyperboloid **************************************************
@@ -0,0 +1,13 @@
+package jray;
+
+/**
+ * Thrown by a ConicSection which finds no intersection with a
+ * LightRay where it needs one.  An OpticBench marks the LightRay
+ * FAILED and goes on; any other exception is a bug, and stops it.
+ */
+public class IntersectionException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public IntersectionException (String message) { super (message); }
+} // end of Class IntersectionException ****************************************
@@ -13,11 +13,26 @@ import jray.util.Wavelength;
  */
 public class LightRay {
 
+	/**
+	 * Status of a LightRay traced on an OpticBench: still going,
+	 * absorbed by a Detector, vignetted (it missed an optic of its
+	 * path, and was not absorbed after all) or failed (no intersection
+	 * could be found, an evanescent order, or a position which is not
+	 * finite).  Absorbed and failed
+	 * LightRays are not traced any further.
+	 */
+	public static final int ALIVE = 0, ABSORBED = 1, VIGNETTED = 2, FAILED = 3;
+
 	private Vector3d position;
 	private Vector3d velocity;
 	private Vector3d ipos, ivel;
 	private double lambda;
 	private float gamma = 1.0f;
+	private int order = 0;	// diffraction order of the last Grating
+	private double weight = 1.0;	// intensity, after the efficiencies
+	private int status = ALIVE;
+	private int surface = -1;		// optic where the status was set
+	private boolean missed = false;	// went straight past the last optic
 	private static double DEFAULT_COLOR = 450.0;
 
 	public LightRay () {
@@ -72,11 +87,19 @@ public class LightRay {
 		ipos = new Vector3d (l.getiPos ());
 		ivel = new Vector3d (l.getiVel ());
 		this.lambda = l.getLambda ();
+		this.order = l.getOrder ();
+		this.weight = l.getWeight ();
+		this.status = l.getStatus ();
+		this.surface = l.getSurface ();
 	}
 	/** Returns a new Vector3d of the position */
 	public Vector3d getPosition () { return new Vector3d (position); }
 	/** Returns a new Vector3d of the velocity */
 	public Vector3d getVelocity () { return new Vector3d (velocity); }
+	/** the position itself, not a copy: not to be changed */
+	Vector3d peekPosition () { return position; }
+	/** the velocity itself, not a copy: not to be changed */
+	Vector3d peekVelocity () { return velocity; }
 	/** returns the initial position of this LightRay */
 	public Vector3d getiPos () { return ipos; }
 	/** returns the initial velocity of this LightRay */
@@ -86,6 +109,26 @@ public class LightRay {
 	public void init () {
 		position = new Vector3d (ipos);
 		velocity = new Vector3d (ivel);
+		order = 0;
+		weight = 1.0;
+		status = ALIVE;
+		surface = -1;
+		missed = false;
+	}
+	/** copy position, velocity, order and weight into s[off .. off+7] */
+	void getState (double [] s, int off) {
+		s[off]     = position.x; s[off + 1] = position.y; s[off + 2] = position.z;
+		s[off + 3] = velocity.x; s[off + 4] = velocity.y; s[off + 5] = velocity.z;
+		s[off + 6] = order;
+		s[off + 7] = weight;
+	}
+	/** set position, velocity, order and weight from s[off .. off+7]
+	 * (not normalized) */
+	void setState (double [] s, int off) {
+		position.set (s[off],     s[off + 1], s[off + 2]);
+		velocity.set (s[off + 3], s[off + 4], s[off + 5]);
+		order = (int) s[off + 6];
+		weight = s[off + 7];
 	}
 	/** propagate this LightRay by a time t */
 	public void propagate (double t) {
@@ -111,6 +154,37 @@ public class LightRay {
 	public float getGamma () { return gamma; }
 	/** set the gamma factor for the color of this LightRay */
 	public void setGamma (float f) { this.gamma = f; }
+	/** get the diffraction order this LightRay was sent into by the
+	 * last Grating (0 before any Grating) */
+	public int getOrder () { return order; }
+	/** set the diffraction order of this LightRay */
+	public void setOrder (int m) { this.order = m; }
+	/** get the weight (intensity) of this LightRay, 1 at the start */
+	public double getWeight () { return weight; }
+	/** set the weight (intensity) of this LightRay */
+	public void setWeight (double w) { this.weight = w; }
+	/** get the status (ALIVE ... FAILED) of this LightRay */
+	public int getStatus () { return status; }
+	/** get the index, on the OpticBench, of the optic where the status
+	 * was set (-1 if ALIVE) */
+	public int getSurface () { return surface; }
+	/** set the status of this LightRay, at optic k */
+	public void setStatus (int s, int k) {
+		this.status = s;
+		this.surface = k;
+	}
+	/** true if this LightRay was absorbed or failed: it is not traced
+	 * any further */
+	public boolean isStopped () { return status == ABSORBED || status == FAILED; }
+	/** true if the optic which returned this LightRay let it go
+	 * straight on: it missed the optic, or went through its hole */
+	public boolean hasMissed () { return missed; }
+	/** marks this LightRay as let go straight on by the optic
+	 * returning it (see hasMissed); returns it */
+	public LightRay miss () {
+		this.missed = true;
+		return this;
+	}
 
 	/** overrides toString() */
 	public String toString () {
@@ -0,0 +1,159 @@
+package jray;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+import javax.imageio.ImageIO;
+
+/**
+ * MappedHits is a file of the points where LightRays land on a
+ * Detector, mapped into memory (see MappedRecords): the counterpart
+ * of the points of a DetectorDisplay for runs with more LightRays than
+ * the heap holds.  Each record is x, y about the vertex of the
+ * Detector and the weight of the LightRay; a LightRay which missed has
+ * x = y = NaN and is left out of everything below.  The spot metrics
+ * and the image stream through the mapping, chunk by chunk, without
+ * copying the points into the heap.  Only FastTrace writes them: a
+ * Detector of an OpticBench still puts its hits in its DetectorDisplay.
+ */
+public class MappedHits extends MappedRecords {
+
+	/** doubles per record: x, y, weight */
+	static final int DOUBLES = 3;
+
+	/** A new file f of n hits */
+	public MappedHits (File f, long n) throws IOException {
+		super (f, DOUBLES, n, true);
+	}
+	/** The hits of the file f, writable or not */
+	public MappedHits (File f, boolean writable) throws IOException {
+		super (f, DOUBLES, -1, writable);
+	}
+
+	/** Puts the hit (x, y) of weight w in record i */
+	public void put (long i, double x, double y, double w) {
+		MappedByteBuffer b = chunk (i);
+		int o = offset (i, 0);
+		b.putDouble (o, x);
+		b.putDouble (o + 8, y);
+		b.putDouble (o + 16, w);
+	}
+	/** Puts a LightRay which missed in record i */
+	public void putMiss (long i) { put (i, Double.NaN, Double.NaN, 0); }
+
+	/** x of hit i (NaN for a miss) */
+	public double getX (long i) { return chunk (i).getDouble (offset (i, 0)); }
+	/** y of hit i (NaN for a miss) */
+	public double getY (long i) { return chunk (i).getDouble (offset (i, 1)); }
+	/** weight of hit i */
+	public double getWeight (long i) {
+		return chunk (i).getDouble (offset (i, 2));
+	}
+
+	/**
+	 * Sums over the hits: {number, sum of weights, sum w x, sum w y},
+	 * with every weight taken as 1 unless weighted
+	 */
+	private double [] sums (boolean weighted) {
+		double [] s = new double [4];
+		for (long i = 0; i < size (); i++) {
+			double x = getX (i);
+			if (Double.isNaN (x))
+				continue;
+			double w = (weighted) ? getWeight (i) : 1.0;
+			s[0]++;
+			s[1] += w;
+			s[2] += w * x;
+			s[3] += w * getY (i);
+		}
+		return s;
+	}
+
+	/** Number of LightRays which hit the Detector */
+	public long getCount () { return (long) sums (false)[0]; }
+	/** Sum of the weights of the hits: the light on the Detector */
+	public double getTotalWeight () { return sums (true)[1]; }
+
+	/** Centroid {x, y} of the hits (NaN if there are none) */
+	public double [] getCentroid () {
+		double [] s = sums (false);
+		return new double [] {s[2] / s[0], s[3] / s[0]};
+	}
+
+	/** RMS radius of the spot about its centroid, as
+	 * DetectorDisplay.getRMSSpotSize */
+	public double getRMSSpotSize () { return rms (false); }
+	/** RMS radius of the spot about its centroid, with every hit
+	 * counted by its weight */
+	public double getWeightedRMSSpotSize () { return rms (true); }
+
+	/** Two passes: the centroid, then the spread about it */
+	private double rms (boolean weighted) {
+		double [] s = sums (weighted);
+		if (!(s[1] > 0))
+			return DetectorDisplay.SPOTMAX;
+		double sx = s[2] / s[1], sy = s[3] / s[1];
+		double rms = 0;
+		for (long i = 0; i < size (); i++) {
+			double x = getX (i);
+			if (Double.isNaN (x))
+				continue;
+			double y = getY (i);
+			double w = (weighted) ? getWeight (i) : 1.0;
+			rms += w * ((x - sx) * (x - sx) + (y - sy) * (y - sy));
+		}
+		return Math.sqrt (rms / s[1]);
+	} // end of rms ************************************************************
+
+	/** {xmin, xmax, ymin, ymax} of the hits */
+	public double [] getExtent () {
+		double [] e = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+					   Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for (long i = 0; i < size (); i++) {
+			double x = getX (i);
+			if (Double.isNaN (x))
+				continue;
+			double y = getY (i);
+			e[0] = Math.min (e[0], x);
+			e[1] = Math.max (e[1], x);
+			e[2] = Math.min (e[2], y);
+			e[3] = Math.max (e[3], y);
+		}
+		return e;
+	}
+
+	/**
+	 * Writes a PNG of pixels x pixels of the spot, width (mm) across,
+	 * centred on (xc, yc): the hits per pixel, black the most, white
+	 * none, on a square root scale so that the halo shows.
+	 */
+	public void writeImage (File f, int pixels, double width,
+							double xc, double yc) throws IOException {
+		long [] count = new long [pixels * pixels];
+		double scale = pixels / width;			// pixels per mm
+		for (long i = 0; i < size (); i++) {
+			double x = getX (i);
+			if (Double.isNaN (x))
+				continue;
+			int px = (int) Math.floor ((x - xc) * scale + pixels / 2.0);
+			int py = (int) Math.floor ((yc - getY (i)) * scale + pixels / 2.0);
+			if (px >= 0 && px < pixels && py >= 0 && py < pixels)
+				count[py * pixels + px]++;
+		}
+		long max = 0;
+		for (int k = 0; k < count.length; k++)
+			max = Math.max (max, count[k]);
+
+		BufferedImage image = new BufferedImage (pixels, pixels,
+												 BufferedImage.TYPE_INT_RGB);
+		for (int k = 0; k < count.length; k++) {
+			int g = (max > 0) ?
+				255 - (int) Math.round (255 * Math.sqrt ((double) count[k] / max)) :
+				255;
+			image.setRGB (k % pixels, k / pixels, (g << 16) | (g << 8) | g);
+		}
+		ImageIO.write (image, "png", f);
+	} // end of writeImage *****************************************************
+} // end of Class MappedHits ***************************************************
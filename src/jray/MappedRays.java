@@ -0,0 +1,70 @@
+package jray;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+import javax.vecmath.Vector3d;
+
+/**
+ * MappedRays is a file of LightRays, mapped into memory (see
+ * MappedRecords), for runs with more LightRays than the heap holds.
+ * Each record is the position, the velocity, the wavelength and the
+ * weight of a LightRay: 8 doubles.  Workers fill and read disjoint
+ * ranges of it; FastTrace traces a range straight from the mapping
+ * into a MappedHits.  An OpticBench does not read them: its LightRays
+ * are in the heap.
+ */
+public class MappedRays extends MappedRecords {
+
+	/** doubles per record: x, y, z, vx, vy, vz, lambda, weight */
+	static final int DOUBLES = 8;
+
+	/** A new file f of n LightRays */
+	public MappedRays (File f, long n) throws IOException {
+		super (f, DOUBLES, n, true);
+	}
+	/** The LightRays of the file f, writable or not */
+	public MappedRays (File f, boolean writable) throws IOException {
+		super (f, DOUBLES, -1, writable);
+	}
+
+	/** Puts the LightRay l in record i */
+	public void put (long i, LightRay l) {
+		Vector3d p = l.peekPosition ();
+		Vector3d v = l.peekVelocity ();
+		put (i, p.x, p.y, p.z, v.x, v.y, v.z, l.getLambda (), l.getWeight ());
+	}
+	/** Puts the LightRay at (x, y, z) with velocity (vx, vy, vz),
+	 * wavelength lambda and weight w in record i */
+	public void put (long i, double x, double y, double z,
+					 double vx, double vy, double vz, double lambda, double w) {
+		MappedByteBuffer b = chunk (i);
+		int o = offset (i, 0);
+		b.putDouble (o, x);
+		b.putDouble (o + 8, y);
+		b.putDouble (o + 16, z);
+		b.putDouble (o + 24, vx);
+		b.putDouble (o + 32, vy);
+		b.putDouble (o + 40, vz);
+		b.putDouble (o + 48, lambda);
+		b.putDouble (o + 56, w);
+	}
+
+	/** The LightRay of record i */
+	public LightRay get (long i) {
+		MappedByteBuffer b = chunk (i);
+		int o = offset (i, 0);
+		LightRay l = new LightRay (b.getDouble (o), b.getDouble (o + 8),
+								   b.getDouble (o + 16), b.getDouble (o + 24),
+								   b.getDouble (o + 32), b.getDouble (o + 40),
+								   b.getDouble (o + 48));
+		l.setWeight (b.getDouble (o + 56));
+		return l;
+	}
+
+	/** Double j (0 ... 7, as in DOUBLES) of record i */
+	double get (long i, int j) {
+		return chunk (i).getDouble (offset (i, j));
+	}
+} // end of Class MappedRays ***************************************************
@@ -0,0 +1,111 @@
+package jray;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedRecords is a file of fixed size records of doubles, mapped
+ * into memory (FileChannel.map) a chunk of CHUNK records at a time, so
+ * that the number of records is limited by the disk and not the heap.
+ * Record i is read and written in place with the absolute get and put
+ * of its chunk, which do not move the position of the buffer: threads
+ * may write disjoint ranges of records at the same time.
+ * <p>
+ * The doubles are in the byte order of the machine, so a file is read
+ * back on the kind of machine which wrote it.  The mapping is released
+ * by the garbage collector; close only writes it out and closes the file.
+ * <p>
+ * Only FastTrace reads and writes the mapped files.  An OpticBench
+ * still holds its LightRays and exit rays, and a DetectorDisplay its
+ * points, in the heap: a run too big for the heap is traced with
+ * FastTrace, through untilted quadric mirrors onto a coaxial
+ * PlaneDetector.
+ */
+abstract class MappedRecords {
+
+	/** Records per mapped chunk */
+	static final int CHUNK = 1 << 20;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer [] chunks;
+	private final long n;
+	private final boolean writable;
+	/** bytes per record */
+	final int record;
+
+	/**
+	 * Records of the given number of doubles in f: a new file of n
+	 * records if n >= 0, else the file as it is (read only if writable
+	 * is false)
+	 */
+	MappedRecords (File f, int doubles, long n, boolean writable)
+		throws IOException {
+		this.file = f;
+		this.record = 8 * doubles;
+		this.writable = writable;
+		this.raf = new RandomAccessFile (f, (writable) ? "rw" : "r");
+		boolean mapped = false;
+		try {
+			if (n >= 0)
+				raf.setLength (n * record);
+			else if (raf.length () % record != 0)
+				throw new RuntimeException ("MappedRecords: " + f + " is not a " +
+											"file of " + record + " byte records");
+			this.n = raf.length () / record;
+
+			FileChannel channel = raf.getChannel ();
+			chunks = new MappedByteBuffer [(int) ((this.n + CHUNK - 1) / CHUNK)];
+			for (int k = 0; k < chunks.length; k++) {
+				long first = (long) k * CHUNK;
+				long size = Math.min (CHUNK, this.n - first) * record;
+				chunks[k] = channel.map ((writable) ?
+										 FileChannel.MapMode.READ_WRITE :
+										 FileChannel.MapMode.READ_ONLY,
+										 first * record, size);
+				chunks[k].order (ByteOrder.nativeOrder ());
+			}
+			mapped = true;
+		} finally {
+			// the file is not left open when it cannot be mapped
+			if (!mapped)
+				raf.close ();
+		}
+	}
+
+	/** Number of records */
+	public long size () { return n; }
+	/** The file mapped */
+	public File getFile () { return file; }
+
+	/** The chunk of record i */
+	final MappedByteBuffer chunk (long i) {
+		if (i < 0 || i >= n)
+			throw new RuntimeException ("MappedRecords: no record " + i +
+										" of " + n);
+		return chunks[(int) (i / CHUNK)];
+	}
+	/** Offset in its chunk of double j of record i */
+	final int offset (long i, int j) {
+		return (int) (i % CHUNK) * record + 8 * j;
+	}
+
+	/** Writes the changes out to the file */
+	public void force () {
+		if (writable)
+			for (int k = 0; k < chunks.length; k++)
+				chunks[k].force ();
+	}
+
+	/** Writes the changes out and closes the file */
+	public void close () throws IOException {
+		if (raf.getChannel ().isOpen ()) {
+			force ();
+			raf.close ();
+		}
+	}
+} // end of Class MappedRecords ************************************************
@@ -4,9 +4,14 @@ import javax.swing.*;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Vector;
 
 import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
 
 
 
@@ -32,10 +37,35 @@ public class OpticBench extends JFrame {
 	private Vector<ConicSection> cs; // The ConicSections
 	private Vector<LightRay> lr; // The LightRays
 	private Vector<Point3d> focus; // The Focii
+	private Vector<LightRay> exit; // The LightRays leaving the last optic
+	private boolean cacheExit = false;
+	private boolean quadrics = true;	// trace through the Quadric kernel
+	private Quadric [] kernels;		// of each ConicSection (or null)
+	private Vector<Integer> versions; // version of each ConicSection
+	private Vector<Efficiency> effs; // efficiency of each ConicSection
+	private Vector<int []> orders;	 // orders of each Grating, as last traced
+	private int version = 0;
+
+	/** Default memory cap for the ray checkpoints (bytes) */
+	public static final long CHECKPOINT_BYTES = 64L << 20;
+	private boolean checkpoint = false;
+	private LinkedHashMap<Long, RayCheckpoint> checkpoints;
+	private long maxBytes = CHECKPOINT_BYTES;
+	private long usedBytes = 0, reserved = 0;
+	private int resumed = 0;
+	private DetectorDisplay cutDisplay = null;
+	private int cutAxis;
+	private double cutoff;
+	private boolean cutOff = false;
 	private boolean SECONDARY = false;		// true, if Gregorian or Cassegrain
 	private boolean REFLEX = false;			// true, if Folded (Loveday or Reflex)
 	private boolean display;
 
+	// The status of each LightRay, and the counts of the last propagation
+	private int [] status, surface;
+	private int [] vignetted, failed;
+	private int absorbed, escaped;
+
 	private final static Color COLOR_CONIC = Color.BLACK;
 	private final static Color COLOR_RAY   = Color.BLUE;
 	private final static Color COLOR_FOCUS = Color.RED;
@@ -61,22 +91,171 @@ public class OpticBench extends JFrame {
 		cs = new Vector<ConicSection> ();
 		lr = new Vector<LightRay> ();
 		focus = new Vector<Point3d> ();
+		versions = new Vector<Integer> ();
+		effs = new Vector<Efficiency> ();
+		orders = new Vector<int []> ();
+		checkpoints = new LinkedHashMap<Long, RayCheckpoint> (16, 0.75f, true);
 		this.addComponentListener (new ReSize (this));
 		this.display = display;
 		setVisible (display);
 	}
 	/** Add ConicSection to the Bench */
-	public void addOptic (ConicSection c) { cs.add (c); }
+	public void addOptic (ConicSection c) {
+		cs.add (c);
+		versions.add (++version);
+		effs.add (null);
+		orders.add (null);
+	}
 	/** Remove the ConicSection at position i */
-	public void removeOptic (int i) { cs.remove (i); }
+	public void removeOptic (int i) {
+		cs.remove (i);
+		versions.remove (i);
+		effs.remove (i);
+		orders.remove (i);
+		// every optic after i has moved
+		for (int j = i; j < versions.size (); j++)
+			versions.set (j, ++version);
+	}
+	/** Replace the ConicSection at position i */
+	public void replaceOptic (int i, ConicSection c) {
+		if (cs.get (i) == c) return;
+		cs.set (i, c);
+		orders.set (i, null);
+		versions.set (i, ++version);
+	}
+	/**
+	 * Sets the efficiency of the optic at position i (null for none):
+	 * the weight of every LightRay it reflects, diffracts or absorbs is
+	 * multiplied by the efficiency at its wavelength and order.  It
+	 * stays with position i when the optic is replaced.
+	 */
+	public void setEfficiency (int i, Efficiency e) {
+		effs.set (i, e);
+		versions.set (i, ++version);
+	}
+	/**
+	 * Marks the optic at position i as changed, so that no checkpoint
+	 * upstream of it is used again.  The checkpoints only know an
+	 * optic by its identity (and replaceOptic, setEfficiency): this
+	 * must be called after changing an optic on the Bench in place.
+	 */
+	public void touch (int i) {
+		versions.set (i, ++version);
+	}
+	/** Sets the orders (see Grating.setOrders) of the Grating at
+	 * position i */
+	public void setOrders (int i, int [] m) {
+		((Grating) cs.get (i)).setOrders (m);
+		touch (i);
+	}
+	/** Returns the efficiency of the optic at position i (or null) */
+	public Efficiency getEfficiency (int i) { return effs.get (i); }
 	/** Returns the ConicSection at position i */
 	public Object getOptic (int i) { return cs.get (i); }
 	/** Adds a LightRay to the Bench */
 	public void addLight (LightRay l) { lr.add (l); }
+	/** Number of LightRays on the Bench */
+	public int numLightRays () { return lr.size (); }
+
+	/** The mirror symmetries (see Symmetry) of the optics for a bundle
+	 * at field angle (angx, angy): NONE when displaying the Bench */
+	public int getSymmetry (double angx, double angy) {
+		return (display) ? Symmetry.NONE : Symmetry.of (cs, angx, angy);
+	}
+	/**
+	 * Adds the mirror image (see Symmetry) of LightRay source, which
+	 * is not traced: its points on the Detector, and its exit ray, are
+	 * the images of those of source.  The optics should have the
+	 * symmetry (getSymmetry) and source should be added before it.
+	 */
+	public void addImage (int source, int flags) {
+		if (display)
+			throw new RuntimeException ("OpticBench: images are not traced, " +
+										"so they cannot be displayed");
+		if (source < 0 || source >= lr.size () || lr.get (source) instanceof ImageRay)
+			throw new RuntimeException ("OpticBench: no traced LightRay " +
+										source + " to image");
+		lr.add (new ImageRay (lr.get (source), source, flags));
+	}
 	/** Adds a Focus to the Bench (plotted as a Red Dot) */
 	public void addFocus (Point3d p) { focus.add (p); } 
 	/** Removes all LightRays from the Bench */
 	public void clean () { lr = new Vector<LightRay> (); }
+	/** Keep a copy of every LightRay as it leaves the last optic */
+	public void setCacheExitRays (boolean b) { cacheExit = b; }
+	/** Trace the quadric surfaces through the Quadric kernel (default),
+	 * or through the reflect of each ConicSection */
+	public void setQuadrics (boolean b) { quadrics = b; }
+	/** Returns the LightRays cached by the last propagation (or null) */
+	public Vector<LightRay> getExitRays () { return exit; }
+
+	/**
+	 * Keep per-optic checkpoints of the ray state, so that propagating
+	 * the same LightRays again only retraces the optics that changed
+	 * (see replaceOptic and setTelescope).  An optic changed in place
+	 * must be marked with touch, or the stale LightRays behind it are
+	 * used.  Not used while displaying.
+	 */
+	public void setCheckpointing (boolean b) {
+		checkpoint = b;
+		if (!b) clearCheckpoints ();
+	}
+	/** Memory cap for the checkpoints; least recently used go first */
+	public void setCheckpointMemory (long bytes) {
+		maxBytes = bytes;
+		makeRoom (0, null);
+	}
+	/** Forget all checkpoints */
+	public void clearCheckpoints () {
+		checkpoints.clear ();
+		usedBytes = 0;
+	}
+	/** Number of propagations that resumed from a checkpoint */
+	public int getCheckpointResumes () { return resumed; }
+	/** Memory held by the checkpoints (bytes) */
+	public long getCheckpointBytes () { return usedBytes; }
+
+	/**
+	 * Stop propagating LightRays as soon as the extent of the spot on
+	 * dd along axis (see DetectorDisplay.getExtent) exceeds cutoff.
+	 * The extent so far is then a lower bound of the full spot size.
+	 * Add the LightRays from the edge of the pupil first, so that a
+	 * bad candidate is found early.  Not used while displaying.
+	 */
+	public void setCutoff (DetectorDisplay dd, int axis, double cutoff) {
+		this.cutDisplay = dd;
+		this.cutAxis = axis;
+		this.cutoff = cutoff;
+	}
+	/** Propagate every LightRay again */
+	public void clearCutoff () { cutDisplay = null; }
+	/** True if the last propagation stopped at the cutoff */
+	public boolean isCutOff () { return cutOff; }
+
+	/** Status (LightRay.ALIVE ... FAILED) of LightRay q after the last
+	 * propagation */
+	public int getStatus (int q) { return status [q]; }
+	/** Optic where the status of LightRay q was set (-1 if ALIVE) */
+	public int getSurface (int q) { return surface [q]; }
+	/** Number of LightRays absorbed by a Detector in the last
+	 * propagation (orders split off by a Grating included) */
+	public int getAbsorbed () { return absorbed; }
+	/** Number of LightRays which left the Bench without being stopped */
+	public int getEscaped () { return escaped; }
+	/** Number of LightRays vignetted by optic i */
+	public int getVignetted (int i) { return vignetted [i]; }
+	/** Number of LightRays which failed at optic i */
+	public int getFailed (int i) { return failed [i]; }
+
+	/** Writes where the LightRays of the last propagation were lost:
+	 * one line per optic */
+	public void writeVignetting (PrintStream out) {
+		out.println ("# optic vignetted failed");
+		for (int i = 0; i < cs.size (); i++)
+			out.println (i + " " + cs.get (i).getClass ().getSimpleName () +
+						 " " + vignetted [i] + " " + failed [i]);
+		out.println ("# absorbed " + absorbed + ", escaped " + escaped);
+	}
 
 	/** Adds a complete Telescope to this Bench */
 	public void addTelescope (Telescope t) {
@@ -92,6 +271,27 @@ public class OpticBench extends JFrame {
 			addOptic (t.getConicSection (i));
 	}
 
+	/** Replaces the Telescope on this Bench.  Optics shared with the
+	 * previous Telescope keep their checkpoints. */
+	public void setTelescope (Telescope t) {
+		REFLEX = false;
+		SECONDARY = false;
+		focus = new Vector<Point3d> ();
+		while (cs.size () > t.numElements ())
+			removeOptic (cs.size () - 1);
+		for (int i = 0; i < cs.size (); i++)
+			replaceOptic (i, t.getConicSection (i));
+		for (int i = cs.size (); i < t.numElements (); i++)
+			addOptic (t.getConicSection (i));
+		String	type = t.getName();
+		if ( type == "Reflex Telescope")
+			REFLEX = true;
+		else if ( type == "Cassegrain Telescope" || type == "Gregorian Telescope" )
+			SECONDARY = true;
+		for (int i = 0; i < t.numFocii (); i++)
+			addFocus (t.getFocus (i));
+	}
+
 	/** Propagate all LightRays through the Bench */
 	public void PropagateLightRays () {
 		/*
@@ -106,6 +306,41 @@ public class OpticBench extends JFrame {
 			lX = new int [lr.size ()][nl];
 			lY = new int [lr.size ()][nl];
 		}
+		exit = (cacheExit) ? new Vector<LightRay> (lr.size ()) : null;
+		cutOff = false;
+		status = new int [lr.size ()];
+		surface = new int [lr.size ()];
+		vignetted = new int [cs.size ()];
+		failed = new int [cs.size ()];
+		absorbed = escaped = 0;
+		kernels = new Quadric [cs.size ()];
+		if (quadrics)
+			for (int i = 0; i < cs.size (); i++)
+				kernels [i] = Quadric.of (cs.get (i));
+
+		/*
+		 * With checkpoints, resume every ray in front of the first optic
+		 * that changed since the LightRays were last traced, and record
+		 * the ray state in front of the optics downstream of it.
+		 */
+		DetectorDisplay images = imageDisplay ();
+		int [] p0 = null, p1 = null;
+		if (images != null) {
+			p0 = new int [lr.size ()];
+			p1 = new int [lr.size ()];
+		}
+
+		RayCheckpoint resume = null;
+		RayCheckpoint [] record = null;
+		readOrders ();
+		boolean splitting = !display && splitting ();
+		if (checkpoint && !display && !splitting && cs.size () > 1) {
+			int [] versions = versionArray ();
+			long [] hash = hashLightRays ();
+			resume = findCheckpoint (hash, versions);
+			record = newCheckpoints (hash, versions, resume);
+			if (resume != null) resumed++;
+		}
 		
 		/*
 		 * 'lr' is a vector of light rays
@@ -114,6 +349,22 @@ public class OpticBench extends JFrame {
 		 */
 		for (int q = 0; q < lr.size (); q++) {
 			LightRay ray = (LightRay) lr.get (q);
+			if (images != null) {
+				p0 [q] = images.getPoints ().size ();
+				if (ray instanceof ImageRay) {
+					image ((ImageRay) ray, images, p0, p1);
+					int source = ((ImageRay) ray).source;
+					count (status [source], surface [source]);
+					status [q] = status [source];
+					surface [q] = surface [source];
+					p1 [q] = images.getPoints ().size ();
+					if (cutDisplay != null && cutDisplay.getExtent (cutAxis) > cutoff) {
+						cutOff = true;
+						break;
+					}
+					continue;
+				}
+			}
 			ray.init ();
 			
 			// This is the Start position
@@ -127,13 +378,14 @@ public class OpticBench extends JFrame {
 			
 			int start = 0;
 			int css = 0;
+			int first = 0;
 			/*
 			 * Handle a simple reflector here
 			 */
 			if (cs.size () == 1) 
 			{
 				// Find the single Primary reflection point
-				ray = ((ConicSection) cs.get (0)).reflect (ray);
+				ray = reflect (0, ray);
 				if (display) {
 					lX [q][1] = scalex ((ray.getPosition ()).x);
 					lY [q][1] = scaley ((ray.getPosition ()).z);
@@ -146,17 +398,25 @@ public class OpticBench extends JFrame {
 			 */
 			else
 			{
+				/*
+				 * Pick up where the checkpoint left this ray
+				 */
+				if (resume != null) {
+					resume.restore (q, ray);
+					first = resume.element;
+					if (SECONDARY) css = 2;
+				}
 				/*
 				 * Here we handle two-stage systems (Cassegrain & Gregorian)
 				 */
-				if ( SECONDARY ) 
+				else if ( SECONDARY ) 
 				{
 					/* Reflect off of the second optic first,
 					 * since it is generally blocking our view
 					 * How do we know it is obstructed?
 					 * if (intersect != ray.ipos)
 					 */
-					ray = ((ConicSection) cs.get (1)).reflect (ray);
+					ray = reflect (1, ray, false);
 					if (display) {
 						lX [q][1] = scalex ((ray.getPosition ()).x);
 						lY [q][1] = scaley ((ray.getPosition ()).z);
@@ -166,13 +426,13 @@ public class OpticBench extends JFrame {
 					/* After that.  Reflect off first, reflect off second,
 					 * and pass through hole of the first
 					 */
-					ray = ((ConicSection) cs.get (0)).reflect (ray);
+					ray = reflect (0, ray);
 					if (display) {
 						lX [q][2] = scalex ((ray.getPosition ()).x);
 						lY [q][2] = scaley ((ray.getPosition ()).z);
 //						System.out.println("2:"+lX [q][2]+","+lY [q][2]);
 					}
-					ray = ((ConicSection) cs.get (1)).reflect (ray);
+					ray = reflect (1, ray);
 					if (display) {
 						lX [q][3] = scalex ((ray.getPosition ()).x);
 						lY [q][3] = scaley ((ray.getPosition ()).z);
@@ -190,7 +450,7 @@ public class OpticBench extends JFrame {
 						t2 = ((ConicSection) cs.get (2)).getTime (ray);
 					}
 					if (t0 < t2) {
-						ray = ((ConicSection) cs.get (0)).reflect (ray);
+						ray = reflect (0, ray, false);
 						if (display) {
 							lX [q][4] = scalex ((ray.getPosition ()).x);
 							lY [q][4] = scaley ((ray.getPosition ()).z);
@@ -207,7 +467,13 @@ public class OpticBench extends JFrame {
 				for (int l = 1; l <= cs.size () - css; l++) 
 				{
 					int	element = l + css - 1;
-					ray = ((ConicSection) cs.get (element)).reflect (ray);
+					if (element < first) continue;
+					if (record != null && record [element] != null)
+						record [element].save (q, ray);
+					if (cs.get (element) instanceof Grating)
+						ray = diffract (element, ray, splitting);
+					else
+						ray = reflect (element, ray);
 					if (display) {
 						if (Double.isNaN (ray.getPosition ().x)) {
 							lX [q][l + start] = lX [q][l + start - 1];
@@ -221,6 +487,10 @@ public class OpticBench extends JFrame {
 				}
 			}
 			
+			status [q] = ray.getStatus ();
+			surface [q] = ray.getSurface ();
+			count (ray.getStatus (), ray.getSurface ());
+			if (cacheExit) exit.add (new LightRay (ray));
 			ray.propagate (END_TIME);
 			if (display) {
 				int loc = cs.size () - css + start + 1;
@@ -242,10 +512,296 @@ public class OpticBench extends JFrame {
 //					System.out.println("#" + i + ":" + lX [q][i] + "," + lY [q][i]);
 				}
 			}
+			if (images != null) p1 [q] = images.getPoints ().size ();
 			this.time = 1;
+			if (cutDisplay != null && !display &&
+				cutDisplay.getExtent (cutAxis) > cutoff) {
+				cutOff = true;
+				break;
+			}
 		}
+		// Only complete checkpoints are kept
+		if (record != null)
+			for (int e = 0; e < record.length; e++)
+				if (record [e] != null) {
+					if (cutOff)
+						reserved -= record [e].bytes ();
+					else
+						storeCheckpoint (record [e]);
+				}
 	} // end of PropagateLightRays *********************************************
 
+	/** The DetectorDisplay of the last optic, if there are ImageRays to
+	 * add to it, else null */
+	private DetectorDisplay imageDisplay () {
+		if (cs.size () == 0 || !(cs.get (cs.size () - 1) instanceof Detector))
+			return null;
+		for (int q = 0; q < lr.size (); q++)
+			if (lr.get (q) instanceof ImageRay)
+				return ((Detector) cs.get (cs.size () - 1)).getDisplay ();
+		return null;
+	}
+
+	/** Adds the images of the points [p0, p1) of the source of ray */
+	private void image (ImageRay ray, DetectorDisplay dd, int [] p0, int [] p1) {
+		for (int i = p0 [ray.source]; i < p1 [ray.source]; i++)
+			dd.addImage (i, ray.flags);
+		if (exit != null)
+			exit.add (Symmetry.mirror (exit.get (ray.source), ray.flags));
+	}
+
+	/** Reflects ray off optic element, which is on its path */
+	private LightRay reflect (int element, LightRay ray) {
+		return reflect (element, ray, true);
+	}
+	/**
+	 * Reflects ray off optic element, keeping its order and applying
+	 * the efficiency of the optic to its weight.  A stopped ray is
+	 * returned as it is.  If the optic is on the path of the ray
+	 * (not an obstruction or a hole it should go through), a miss
+	 * vignettes it.
+	 */
+	private LightRay reflect (int element, LightRay ray, boolean path) {
+		if (ray.isStopped ()) return ray;
+		ConicSection c = (ConicSection) cs.get (element);
+		Efficiency eff = effs.get (element);
+		int m = ray.getOrder ();
+		double w = ray.getWeight ();
+		double e = (eff != null) ? eff.getEfficiency (ray.getLambda (), m) : 1;
+		// A Detector records the weight of the LightRay it absorbs
+		if (eff != null && c instanceof Detector)
+			ray.setWeight (w * e);
+		LightRay out;
+		try {
+			out = (kernels [element] != null) ?
+				kernels [element].reflect (ray) : c.reflect (ray);
+		} catch (IntersectionException x) {
+			ray.setWeight (w);
+			ray.setStatus (LightRay.FAILED, element);
+			return ray;
+		}
+		ray.setWeight (w);
+		out.setOrder (m);
+		out.setWeight (w);
+		if (eff != null && !out.hasMissed ())
+			out.setWeight (w * e);
+		setStatus (element, ray, out, path);
+		return out;
+	}
+
+	/**
+	 * Sets the status of out, which left optic element: absorbed by a
+	 * Detector, failed if its direction is lost anywhere else or its
+	 * position is lost anywhere, and vignetted if it missed an optic
+	 * of its path (unless it was vignetted before)
+	 */
+	private void setStatus (int element, LightRay ray, LightRay out,
+							boolean path) {
+		out.setStatus (ray.getStatus (), ray.getSurface ());
+		Vector3d p = out.peekPosition ();
+		boolean lost = !(Math.abs (p.x) + Math.abs (p.y) + Math.abs (p.z) <
+						 Double.POSITIVE_INFINITY);
+		if (Double.isNaN (out.peekVelocity ().x)) {
+			if (cs.get (element) instanceof Detector && !lost)
+				out.setStatus (LightRay.ABSORBED, element);
+			else
+				out.setStatus (LightRay.FAILED, element);
+		} else if (lost)
+			out.setStatus (LightRay.FAILED, element);
+		else if (path && ray.getStatus () == LightRay.ALIVE &&
+				   out.hasMissed ())
+			out.setStatus (LightRay.VIGNETTED, element);
+	}
+
+	/** Counts a LightRay which ended with status s at optic k */
+	private void count (int s, int k) {
+		if (s == LightRay.VIGNETTED)
+			vignetted [k]++;
+		else if (s == LightRay.FAILED)
+			failed [k]++;
+		else if (s == LightRay.ABSORBED)
+			absorbed++;
+		else
+			escaped++;
+	}
+
+	/**
+	 * Diffracts ray off Grating element into its main order.  When
+	 * splitting, the other orders of the Grating are traced to the end
+	 * of the Bench right away (evanescent orders are dropped).
+	 */
+	private LightRay diffract (int element, LightRay ray, boolean splitting) {
+		if (ray.isStopped ()) return ray;
+		Grating g = (Grating) cs.get (element);
+		int [] m = orders.get (element);
+		Efficiency eff = effs.get (element);
+		int order = ray.getOrder ();
+		double w = ray.getWeight ();
+		LightRay out;
+		try {
+			out = g.reflect (ray, m[0]);
+		} catch (IntersectionException x) {
+			ray.setStatus (LightRay.FAILED, element);
+			return ray;
+		}
+		setStatus (element, ray, out, true);
+		// A LightRay missing the Grating keeps its direction and order
+		out.setWeight (w);
+		if (out.hasMissed ()) {
+			out.setOrder (order);
+			return out;
+		}
+		out.setOrder (m[0]);
+		if (eff != null)
+			out.setWeight (w * eff.getEfficiency (ray.getLambda (), m[0]));
+		if (!splitting) return out;
+
+		for (int k = 1; k < m.length; k++) {
+			LightRay o = g.reflect (ray, m[k]);
+			if (Double.isNaN (o.peekVelocity ().x))
+				continue;
+			o.setStatus (ray.getStatus (), ray.getSurface ());
+			o.setOrder (m[k]);
+			o.setWeight (w);
+			if (eff != null)
+				o.setWeight (w * eff.getEfficiency (ray.getLambda (), m[k]));
+			for (int e = element + 1; e < cs.size (); e++) {
+				if (cs.get (e) instanceof Grating)
+					o = diffract (e, o, true);
+				else
+					o = reflect (e, o);
+			}
+			count (o.getStatus (), o.getSurface ());
+			if (cacheExit) exit.add (new LightRay (o));
+			o.propagate (END_TIME);
+		}
+		return out;
+	}
+
+	/**
+	 * Reads the orders of every Grating once for the propagation.  A
+	 * Grating whose orders changed since the last propagation (by
+	 * Grating.setOrders) is a changed optic for the checkpoints.
+	 */
+	private void readOrders () {
+		for (int i = 0; i < cs.size (); i++) {
+			if (!(cs.get (i) instanceof Grating))
+				continue;
+			int [] m = ((Grating) cs.get (i)).getOrders ();
+			if (Arrays.equals (m, orders.get (i)))
+				continue;
+			if (orders.get (i) != null)
+				touch (i);
+			orders.set (i, m);
+		}
+	}
+
+	/** True if a Grating on the Bench sends light into several orders */
+	private boolean splitting () {
+		for (int i = 0; i < cs.size (); i++)
+			if (orders.get (i) != null && orders.get (i).length > 1)
+				return true;
+		return false;
+	}
+
+	/** Current version of every optic on the Bench */
+	private int [] versionArray () {
+		int [] v = new int [versions.size ()];
+		for (int i = 0; i < v.length; i++)
+			v [i] = versions.get (i);
+		return v;
+	}
+
+	/** Number of optics a checkpoint in front of optic e depends on.
+	 * The Cassegrain/Gregorian ordering looks at optic 2 before the
+	 * main loop starts. */
+	private int numDeps (int e) {
+		if (SECONDARY && cs.size () > 2) return Math.max (e, 3);
+		return e;
+	}
+
+	/** True if one of the first d optics disperses light */
+	private boolean chromatic (int d) {
+		for (int i = 0; i < d && i < cs.size (); i++)
+			if (cs.get (i) instanceof Grating) return true;
+		return false;
+	}
+
+	/** Hashes the starting LightRays: {without, with} wavelengths */
+	private long [] hashLightRays () {
+		long h = 1125899906842597L + lr.size ();
+		long w = 7;
+		for (int q = 0; q < lr.size (); q++) {
+			LightRay l = lr.get (q);
+			Vector3d p = l.getiPos ();
+			Vector3d v = l.getiVel ();
+			h = 31 * h + Double.doubleToLongBits (p.x);
+			h = 31 * h + Double.doubleToLongBits (p.y);
+			h = 31 * h + Double.doubleToLongBits (p.z);
+			h = 31 * h + Double.doubleToLongBits (v.x);
+			h = 31 * h + Double.doubleToLongBits (v.y);
+			h = 31 * h + Double.doubleToLongBits (v.z);
+			w = 31 * w + Double.doubleToLongBits (l.getLambda ());
+			if (l instanceof ImageRay)
+				w = 31 * w + ((ImageRay) l).source;
+		}
+		return new long [] {h, 31 * h + w};
+	}
+
+	/** The valid checkpoint furthest downstream, or null */
+	private RayCheckpoint findCheckpoint (long [] hash, int [] versions) {
+		int lo = (SECONDARY) ? 2 : 1;
+		for (int e = cs.size () - 1; e >= lo; e--) {
+			long h = hash [chromatic (numDeps (e)) ? 1 : 0];
+			RayCheckpoint c = checkpoints.get (RayCheckpoint.key (h, e));
+			if (c != null && c.element == e &&
+				c.matches (h, versions, SECONDARY, lr.size ()))
+				return c;
+		}
+		return null;
+	}
+
+	/** Allocates checkpoints downstream of resume, within the memory cap */
+	private RayCheckpoint [] newCheckpoints (long [] hash, int [] versions,
+											 RayCheckpoint resume) {
+		RayCheckpoint [] record = new RayCheckpoint [cs.size ()];
+		int lo = (resume != null) ? resume.element + 1 : ((SECONDARY) ? 2 : 1);
+		for (int e = lo; e < cs.size (); e++) {
+			int d = numDeps (e);
+			long h = hash [chromatic (d) ? 1 : 0];
+			int [] deps = new int [d];
+			System.arraycopy (versions, 0, deps, 0, d);
+			RayCheckpoint c = new RayCheckpoint (h, e, deps, SECONDARY,
+												 lr.size ());
+			if (!makeRoom (c.bytes (), resume))
+				break;
+			record [e] = c;
+			reserved += c.bytes ();
+		}
+		return record;
+	}
+
+	/** Evicts the least recently used checkpoints to fit b more bytes */
+	private boolean makeRoom (long b, RayCheckpoint keep) {
+		Iterator<RayCheckpoint> it = checkpoints.values ().iterator ();
+		while (usedBytes + reserved + b > maxBytes && it.hasNext ()) {
+			RayCheckpoint c = it.next ();
+			if (c == keep) continue;
+			usedBytes -= c.bytes ();
+			it.remove ();
+		}
+		return (usedBytes + reserved + b <= maxBytes);
+	}
+
+	/** Puts a freshly recorded checkpoint in the cache */
+	private void storeCheckpoint (RayCheckpoint c) {
+		reserved -= c.bytes ();
+		RayCheckpoint old = checkpoints.put (RayCheckpoint.key (c.rays,
+																c.element), c);
+		if (old != null) usedBytes -= old.bytes ();
+		usedBytes += c.bytes ();
+	}
+
 	/** paints the Bench onto the Graphics Object */
 	public void paint (Graphics g) {
 		g.clearRect (0, 0, XSIZE, YSIZE);
@@ -330,6 +886,19 @@ public class OpticBench extends JFrame {
 		return (int) (YSIZE * ((YCENTER-y) / YSCALE + 0.5));
 	}
 
+	/** The mirror image of a traced LightRay, which is not traced itself */
+	private static class ImageRay extends LightRay {
+		int source, flags;
+		ImageRay (LightRay l, int source, int flags) {
+			super (Symmetry.mirror (l.getiPos (), flags),
+				   Symmetry.mirror (l.getiVel (), flags), l.getLambda ());
+			setOrder (l.getOrder ());
+			setWeight (l.getWeight ());
+			this.source = source;
+			this.flags = flags;
+		}
+	}
+
 	/** Private class for ReSizing the frame */
 	private class ReSize implements ComponentListener {
 		JFrame parent;
@@ -62,7 +62,8 @@ public class Parabola implements ConicSection {
 		if (Evaluate (iPoint.x) == ConicSection.NULL ||
 			Evaluate (iPoint.x) == ConicSection.BLANK ||
 			this.time == 0)
-			oVel = new Vector3d (iVel);
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 		else {
 			// The Gradient of the equation of our ConicSection:
 			Vector3d normal = 
@@ -7,7 +7,7 @@ import javax.media.j3d.Transform3D;
 /**
  * Paraboloid, a parabola of revolution
  */
-public class Paraboloid implements ConicSection {
+public class Paraboloid implements RotationalSurface {
 
 	private Point3d vertex; // Location of Vertex
 	private double size;    // the diameter of the mirror
@@ -15,6 +15,7 @@ public class Paraboloid implements ConicSection {
 	private double hole;    // Size of hole in center of parabola
 	private double time;    // time elapsed from LightRay start to intersection
 	private double angle;   // angle of rotation about y-axis
+	private Aperture aperture;	// pre-rejection, if not tilted
 
 	/**
 	 * The equation of a paraboloid is:
@@ -44,6 +45,13 @@ public class Paraboloid implements ConicSection {
 		}
 		this.angle = angle;
 		this.time = -1;
+		// z - z0 = c ((x/a)^2 + (y/b)^2) from the hole to the edge
+		if (angle == 0.0) {
+			double a2 = Math.min (a * a, b * b), b2 = Math.max (a * a, b * b);
+			aperture = new Aperture (vertex.x, vertex.y, hole, size, vertex.z,
+									 vertex.z + this.c * hole * hole / 4.0 / b2,
+									 vertex.z + this.c * size * size / 4.0 / a2);
+		}
 	}
 
 	/** Evaluate at point x the value z for 2D Rendering */
@@ -73,8 +81,11 @@ public class Paraboloid implements ConicSection {
 	/** 
 	 * Returns a LightRay at the surface of the
 	 * ConicSection in the outgoing reflected direction.
+	 * A LightRay the Aperture rejects is moved on and returned itself.
 	 */
 	public LightRay reflect (LightRay input) {
+		if (aperture != null && aperture.misses (input))
+			return aperture.pass (input);
 		// Find intersection of LightRay and ConicSection
 		Point3d iPoint = intersect (input);
 		Vector3d iVel = input.getVelocity ();
@@ -86,7 +97,8 @@ public class Paraboloid implements ConicSection {
 		if ( radius > this.size/2.0 ||
 			 radius < this.hole/2.0 ||
 			 this.time == 0) {
-			oVel = new Vector3d (iVel);
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 		} else {
 			// The Gradient of the equation of our ConicSection:
 			Vector3d normal = 
@@ -104,8 +116,20 @@ public class Paraboloid implements ConicSection {
 		return new LightRay (new Vector3d (iPoint), oVel, input.getLambda ());
 	} // end of reflect ********************************************************
 
-	/** returns the time to intersection */
+	/** The Quadric of this Paraboloid, if it is not tilted (else null) */
+	Quadric toQuadric () {
+		if (angle != 0.0) return null;
+		return new Quadric (vertex, Quadric.matrix (-1.0 / (a * a), -1.0 / (b * b),
+													0, 0, 0, 0, 0.5 / c),
+							Quadric.NEAREST, vertex.x, vertex.y, hole, size,
+							aperture);
+	}
+
+	/** returns the time to intersection (0 if the Aperture shows the
+	 * LightRay cannot be reflected) */
 	public double getTime (LightRay input) {
+		if (aperture != null && aperture.misses (input))
+			return 0;
 		intersect (input);
 		return this.time;
 	}
@@ -135,7 +159,8 @@ public class Paraboloid implements ConicSection {
 			(pos.z - vertex.z) / c - Math.pow ((pos.y - vertex.y) / b, 2.0);
 		double discr = B * B - 4 * A * C;
 		if (discr < 0.0)
-			throw new RuntimeException("Paraboloid.Intersect is infeasible!");
+			throw new IntersectionException ("Paraboloid.Intersect is " +
+											 "infeasible!");
 		double sqdiscr = Math.sqrt (discr);
 
 		if (A == 0 || Math.abs (B) == sqdiscr )
@@ -185,4 +210,17 @@ public class Paraboloid implements ConicSection {
 						   ", abc=(" + a + ", " + b + ", " + c +
 						   "), D=" + size + ", hole=" + hole);
 	}
+
+	/** true if this Paraboloid is circular, on the z-axis and not tilted */
+	public boolean isCoaxial () {
+		return angle == 0.0 && a == b && vertex.x == 0 && vertex.y == 0;
+	}
+	/** z of the vertex */
+	public double getVertexZ () { return vertex.z; }
+	/** curvature at the vertex: z = c (r/a)^2 */
+	public double getVertexCurvature () { return 2.0 * c / (a * a); }
+	/** conic constant of a paraboloid */
+	public double getConicConstant () { return -1.0; }
+	/** returns the diameter of the hole */
+	public double getHoleSize () { return hole; }
 } // end of Class Paraboloid ***************************************************
@@ -0,0 +1,200 @@
+package jray;
+
+import java.util.Vector;
+
+/**
+ * Paraxial (first order) trace of a Telescope.  Every coaxial
+ * RotationalSurface is reduced to the z of its vertex and its vertex
+ * curvature, and a marginal ray (height, slope) is traced through
+ * them in the order of the Telescope:
+ *   y' = y + m (z' - z)     between surfaces
+ *   m' = -m - 2 c y         at a mirror of vertex curvature c
+ * where m = dy/dz.  The light comes in going down (-z), parallel to
+ * the axis, at the edge of the first ConicSection.  As in the ray
+ * trace, the marginal ray goes straight through the hole of a
+ * surface (the aperture stop at a focus, say).
+ * <p>
+ * The trace stops at the first Detector, Grating or ConicSection
+ * which is not a coaxial surface of revolution: the first order
+ * properties are then those of the optics in front of it.  It costs
+ * a few operations per surface, so it can reject layouts before any
+ * LightRay is traced (see jray.evol.ParaxialFilter).
+ */
+public class Paraxial {
+
+	/** Default fraction of a surface size by which the marginal ray
+	 * may overshoot it before it counts as vignetted */
+	public static final double VIGNETTING = 0.05;
+
+	Vector<RotationalSurface> surfaces = new Vector<RotationalSurface> ();
+	double [] y;				// marginal ray height on each surface
+	double [] m;				// and its slope leaving it
+	int nMirrors;
+	double diameter;
+	double efl, bfd, focusZ;	// focal length, back focal distance, image
+	double obscuration;
+	Vector<Double> images = new Vector<Double> ();	// intermediate images
+	boolean complete;			// reached the end of the Telescope
+	double detectorZ = Double.NaN;
+	int dir;					// direction (dz sign) of the exit ray
+
+	/** Traces the Telescope t */
+	public Paraxial (Telescope t) {
+		ConicSection first = t.getConicSection (0);
+		this.diameter = first.getSize ();
+
+		// The leading coaxial mirrors
+		int n = t.numElements ();
+		int k = 0;
+		for (; k < n; k++) {
+			ConicSection c = t.getConicSection (k);
+			if (c instanceof Detector) {
+				if (c instanceof RotationalSurface &&
+					((RotationalSurface) c).isCoaxial ())
+					detectorZ = ((RotationalSurface) c).getVertexZ ();
+				break;
+			}
+			if (c instanceof Grating || !(c instanceof RotationalSurface) ||
+				!((RotationalSurface) c).isCoaxial ())
+				break;
+			surfaces.add ((RotationalSurface) c);
+		}
+		this.complete = (k >= n - 1);
+		if (surfaces.size () == 0)
+			throw new RuntimeException ("Paraxial: the first ConicSection " +
+										"is not a coaxial surface of " +
+										"revolution");
+
+		// Marginal ray
+		int ns = surfaces.size ();
+		y = new double [ns];
+		m = new double [ns];
+		double yy = diameter / 2.0, mm = 0.0;
+		dir = -1;
+		double z = surfaces.get (0).getVertexZ ();
+		double zm = z;			// vertex of the last mirror
+		for (int i = 0; i < ns; i++) {
+			RotationalSurface s = surfaces.get (i);
+			double zs = s.getVertexZ ();
+			double yn = yy + mm * (zs - z);
+			if (i > 0 && (yn == 0 || (yn > 0) != (yy > 0)))
+				images.add (z - yy / mm);
+			yy = yn;
+			z = zs;
+			if (Math.abs (yy) >= s.getHoleSize () / 2.0) {
+				mm = -mm - 2.0 * s.getVertexCurvature () * yy;
+				dir = -dir;
+				zm = zs;
+				nMirrors++;
+			}
+			y[i] = yy;
+			m[i] = mm;
+		}
+		// The image is that of the final beam, dy/dt = m dir.  It is
+		// inverted (negative focal length) after an odd number of
+		// intermediate images, as in a Gregorian
+		this.efl = -(diameter / 2.0) / (mm * dir);
+		this.focusZ = z - yy / mm;
+		this.bfd = (focusZ - zm) * dir;
+
+		// The central obscuration: what is above the first ConicSection
+		double z0 = surfaces.get (0).getVertexZ ();
+		double block = surfaces.get (0).getHoleSize ();
+		for (int i = 1; i < n; i++) {
+			ConicSection c = t.getConicSection (i);
+			if (c == first || !(c instanceof RotationalSurface) ||
+				!((RotationalSurface) c).isCoaxial ())
+				continue;
+			if (((RotationalSurface) c).getVertexZ () > z0)
+				block = Math.max (block, c.getSize ());
+		}
+		this.obscuration = block / diameter;
+	} // end of Paraxial constructor *******************************************
+
+	/** Number of ConicSections traced */
+	public int numSurfaces () { return surfaces.size (); }
+	/** Number of ConicSections which reflect the marginal ray */
+	public int numMirrors () { return nMirrors; }
+	/** true if the trace reached the Detector (or the end of the
+	 * Telescope), false if it stopped at a Grating or an off-axis optic */
+	public boolean isComplete () { return complete; }
+	/** Effective focal length (mm), negative for an inverted image */
+	public double getFocalLength () { return efl; }
+	/** Effective f-ratio */
+	public double getFRatio () { return Math.abs (efl) / diameter; }
+	/** Plate scale at the image (mm per arcsec) */
+	public double getPlateScale () {
+		return Math.abs (efl) * Math.toRadians (1.0 / 3600.);
+	}
+	/** z of the paraxial image */
+	public double getImageZ () { return focusZ; }
+	/** Distance from the vertex of the last mirror to the image,
+	 * along the light (negative for a virtual image) */
+	public double getBackFocalDistance () { return bfd; }
+	/** z of the intermediate images between the mirrors */
+	public Vector<Double> getIntermediateImages () { return images; }
+	/** Linear fraction of the diameter obscured: the largest of the
+	 * hole in the first ConicSection and the optics above it */
+	public double getObscuration () { return obscuration; }
+	/** Height of the marginal ray on surface i */
+	public double getHeight (int i) { return y[i]; }
+
+	/** Distance from the image to the Detector, along the light
+	 * (NaN without a coaxial Detector) */
+	public double getDefocus () { return (detectorZ - focusZ) * dir; }
+	/** Diameter of the geometric blur of the defocus at the Detector */
+	public double getBlur () {
+		int l = y.length - 1;
+		double zl = surfaces.get (l).getVertexZ ();
+		return 2.0 * Math.abs (y[l] + m[l] * (detectorZ - zl));
+	}
+
+	/** true if the marginal ray falls outside a surface by more than
+	 * VIGNETTING of its size */
+	public boolean isVignetted () { return isVignetted (VIGNETTING); }
+	/**
+	 * true if the marginal ray falls outside a surface by more than the
+	 * fraction tol of its size.  The sizes of the mirrors are computed
+	 * by the Telescopes from real rays and the heights here are only
+	 * first order, so a design which is not vignetted can overshoot
+	 * them slightly.
+	 */
+	public boolean isVignetted (double tol) {
+		for (int i = 0; i < y.length; i++)
+			if (Math.abs (y[i]) > surfaces.get (i).getSize () / 2.0 *
+				(1.0 + tol))
+				return true;
+		return false;
+	}
+
+	/** true if the traced optics form a real image with a finite focal
+	 * length, without vignetting the marginal ray and with at most
+	 * maxObscuration of the diameter obscured */
+	public boolean isFeasible (double maxObscuration) {
+		return isFeasible (maxObscuration, VIGNETTING);
+	}
+	/** isFeasible, with a marginal ray vignetted beyond the fraction
+	 * tol of a surface size (see isVignetted) */
+	public boolean isFeasible (double maxObscuration, double tol) {
+		return !Double.isNaN (efl) && !Double.isInfinite (efl) &&
+			bfd > 0 && !isVignetted (tol) && obscuration <= maxObscuration;
+	}
+
+	/** overrides toString() */
+	public String toString () {
+		StringBuffer s = new StringBuffer ("Paraxial (" + numSurfaces () +
+										   " surfaces, " + nMirrors +
+										   " mirrors" +
+										   ((complete) ? "" : ", partial") +
+										   "): EFL=" + efl + "mm, f/" +
+										   getFRatio () + ", BFD=" + bfd +
+										   "mm, image at z=" + focusZ +
+										   "mm, obscuration " + obscuration);
+		for (int i = 0; i < images.size (); i++)
+			s.append (", intermediate image at z=" + images.get (i) + "mm");
+		if (!Double.isNaN (detectorZ))
+			s.append (", detector defocus " + getDefocus () + "mm (blur " +
+					  getBlur () + "mm)");
+		return s.toString ();
+	}
+} // end of Class Paraxial *****************************************************
@@ -0,0 +1,25 @@
+package jray;
+
+import javax.vecmath.Point3d;
+
+/** A displaced Detector: the points on its display are in the frame
+ * of the Detector, so they move with it */
+public class PerturbedDetector extends PerturbedOptic implements Detector {
+
+	/** see PerturbedOptic; c must be a Detector */
+	public PerturbedDetector (ConicSection c, Point3d pivot, double dx,
+							  double dy, double dz, double tx, double ty) {
+		super(c, pivot, dx, dy, dz, tx, ty);
+	}
+
+	/** Returns the display of the nominal Detector */
+	public DetectorDisplay getDisplay () {
+		return ((Detector) optic).getDisplay ();
+	}
+	/** displays the DetectorDisplay */
+	public void display () { ((Detector) optic).display (); }
+	/** repaints the DetectorDisplay */
+	public void repaint () { ((Detector) optic).repaint (); }
+	/** cleans the DetectorDisplay */
+	public void clean () { ((Detector) optic).clean (); }
+} // end of Class PerturbedDetector ********************************************
@@ -0,0 +1,22 @@
+package jray;
+
+import javax.vecmath.Point3d;
+
+/** A displaced Grating */
+public class PerturbedGrating extends PerturbedOptic implements Grating {
+
+	/** see PerturbedOptic; c must be a Grating */
+	public PerturbedGrating (ConicSection c, Point3d pivot, double dx,
+							 double dy, double dz, double tx, double ty) {
+		super(c, pivot, dx, dy, dz, tx, ty);
+	}
+
+	/** returns light reflected into order m */
+	public LightRay reflect (LightRay input, int m) {
+		return toWorld (((Grating) optic).reflect (toLocal (input), m));
+	}
+	/** sets the orders of the nominal Grating */
+	public void setOrders (int [] m) { ((Grating) optic).setOrders (m); }
+	/** returns the orders of the nominal Grating */
+	public int [] getOrders () { return ((Grating) optic).getOrders (); }
+} // end of Class PerturbedGrating *********************************************
@@ -0,0 +1,114 @@
+package jray;
+
+import javax.vecmath.Matrix3d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+/**
+ * A ConicSection displaced from its nominal placement: shifted by
+ * (dx, dy, dz) and tilted about x then y (radians) around a pivot.
+ * The LightRays are taken into the frame of the nominal ConicSection,
+ * which is left untouched, and the result is taken back; so one
+ * ConicSection can be shared by many PerturbedOptics.
+ * <p>
+ * Use wrap () to keep a Detector a Detector and a Grating a Grating.
+ * Evaluate draws the nominal ConicSection.
+ */
+public class PerturbedOptic implements ConicSection {
+
+	/** the nominal ConicSection */
+	protected ConicSection optic;
+	private Vector3d pivot, shift;
+	private Matrix3d rot = new Matrix3d ();	// nominal -> displaced
+	private Matrix3d inv = new Matrix3d ();	// displaced -> nominal
+	private double [] s = new double [8];	// scratch LightRay state
+
+	/** Displaces c by (dx, dy, dz) and tilts it by tx about x then ty
+	 * about y (radians), around pivot */
+	public PerturbedOptic (ConicSection c, Point3d pivot, double dx,
+						   double dy, double dz, double tx, double ty) {
+		this.optic = c;
+		this.pivot = new Vector3d (pivot);
+		this.shift = new Vector3d (dx, dy, dz);
+		Matrix3d rx = new Matrix3d ();
+		rx.rotX (tx);
+		rot.rotY (ty);
+		rot.mul (rx);
+		inv.transpose (rot);
+	}
+
+	/** Returns a PerturbedOptic which is also a Detector or a Grating
+	 * if c is one */
+	public static PerturbedOptic wrap (ConicSection c, Point3d pivot,
+									   double dx, double dy, double dz,
+									   double tx, double ty) {
+		if (c instanceof Detector)
+			return new PerturbedDetector (c, pivot, dx, dy, dz, tx, ty);
+		if (c instanceof Grating)
+			return new PerturbedGrating (c, pivot, dx, dy, dz, tx, ty);
+		return new PerturbedOptic (c, pivot, dx, dy, dz, tx, ty);
+	}
+
+	/** returns the nominal ConicSection */
+	public ConicSection getOptic () { return optic; }
+
+	/** A copy of l in the frame of the nominal ConicSection */
+	protected LightRay toLocal (LightRay l) {
+		LightRay r = new LightRay (l);
+		r.getState (s, 0);
+		Vector3d p = new Vector3d (s[0], s[1], s[2]);
+		Vector3d v = new Vector3d (s[3], s[4], s[5]);
+		p.sub (pivot);
+		p.sub (shift);
+		inv.transform (p);
+		inv.transform (v);
+		p.add (pivot);
+		set (r, p, v);
+		return r;
+	}
+	/** l (in the frame of the nominal ConicSection) taken back */
+	protected LightRay toWorld (LightRay l) {
+		l.getState (s, 0);
+		Vector3d p = new Vector3d (s[0], s[1], s[2]);
+		Vector3d v = new Vector3d (s[3], s[4], s[5]);
+		p.sub (pivot);
+		rot.transform (p);
+		rot.transform (v);
+		p.add (pivot);
+		p.add (shift);
+		set (l, p, v);
+		return l;
+	}
+	private void set (LightRay l, Vector3d p, Vector3d v) {
+		s[0] = p.x; s[1] = p.y; s[2] = p.z;
+		s[3] = v.x; s[4] = v.y; s[5] = v.z;
+		l.setState (s, 0);
+	}
+
+	/** reflects off the displaced ConicSection */
+	public LightRay reflect (LightRay input) {
+		return toWorld (optic.reflect (toLocal (input)));
+	}
+	/** intersection with the displaced ConicSection */
+	public Point3d intersect (LightRay input) {
+		Point3d p = optic.intersect (toLocal (input));
+		p.sub (pivot);
+		rot.transform (p);
+		p.add (pivot);
+		p.add (shift);
+		return p;
+	}
+	/** the time to intersection does not change with the frame */
+	public double getTime (LightRay input) {
+		return optic.getTime (toLocal (input));
+	}
+	/** draws the nominal ConicSection */
+	public double Evaluate (double x) { return optic.Evaluate (x); }
+	/** returns the size of the nominal ConicSection */
+	public double getSize () { return optic.getSize (); }
+
+	/** overrides toString() */
+	public String toString () {
+		return new String ("Perturbed (shift " + shift + ") " + optic);
+	}
+} // end of Class PerturbedOptic ***********************************************
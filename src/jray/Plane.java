@@ -6,7 +6,7 @@ import javax.vecmath.Vector3d;
 /**
  * This is a Relector Plane
  */
-public class Plane implements ConicSection {
+public class Plane implements RotationalSurface {
 
 	/** location of plane */
 	protected Point3d vertex;
@@ -84,7 +84,8 @@ public class Plane implements ConicSection {
 		if (radius >  this.size/2.0 ||
 			radius <= this.hole/2.0 ||
 			this.time == 0)
-			oVel = new Vector3d (iVel);
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 		else {
 			// You gave us the direction of the normal.  Therefore:
 			oVel.scaleAdd (-2.0 * normal.dot (iVel), normal, iVel);
@@ -130,4 +131,17 @@ public class Plane implements ConicSection {
 							   input.getPosition ());
 		return intersection;
 	}
+
+	/** true if this Plane is perpendicular to the z-axis */
+	public boolean isCoaxial () {
+		return !VERTICAL && normal.x == 0 && normal.y == 0;
+	}
+	/** z where the z-axis meets this Plane */
+	public double getVertexZ () { return zero / normal.z; }
+	/** a Plane is flat */
+	public double getVertexCurvature () { return 0.0; }
+	/** conic constant (without effect on a Plane) */
+	public double getConicConstant () { return 0.0; }
+	/** returns the diameter of the hole */
+	public double getHoleSize () { return hole; }
 } // end of Class Plane ********************************************************
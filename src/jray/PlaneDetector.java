@@ -41,14 +41,15 @@ public class PlaneDetector extends Plane implements Detector {
 				 getTime (input) == 0 
 				 /* || this.normal.dot (iVel) > 0 -- absorb on either face? Del S. */   ) 
 			{
-				return new LightRay (new Vector3d (iPoint), iVel, input.getLambda ());
+				return new LightRay (new Vector3d (iPoint), iVel,
+									 input.getLambda ()).miss ();
 			}
 		} 
 		else {
 			if ( Math.abs(iPoint.z - vertex.z) > this.size/2.0 ||
 				getTime (input) == 0) {
 				return new LightRay (new Vector3d (iPoint),
-						 iVel, input.getLambda ());
+						 iVel, input.getLambda ()).miss ();
 				
 			}
 		}
@@ -80,7 +81,7 @@ public class PlaneDetector extends Plane implements Detector {
 			y = (iPoint.y - vertex.y);
 		}
 
-		display.add (new Point2d (x, y), input.getColor () );
+		display.add (new Point2d (x, y), input);
 		return new LightRay ( new Vector3d (iPoint),
 							  new Vector3d (0, 0, 0), input.getLambda ());
 	} // end of reflect ********************************************************
@@ -8,6 +8,7 @@ public class PlaneGrating extends Plane implements Grating {
 
 	private double d;
 	private int order;
+	private int [] orders;
 
 	/**  A PlaneGrating requires the following inputs:
 	 * position vector, normal, linear size of grating (square of course).
@@ -29,6 +30,16 @@ public class PlaneGrating extends Plane implements Grating {
 	public LightRay reflect (LightRay input) {
 		return reflect (input, this.order);
 	}
+	/** orders an OpticBench sends the light into (default: order) */
+	public void setOrders (int [] m) {
+		if (m.length == 0)
+			throw new RuntimeException ("PlaneGrating: needs at least one " +
+										"order");
+		this.orders = m.clone ();
+	}
+	public int [] getOrders () {
+		return (orders != null) ? orders.clone () : new int [] {order};
+	}
 	public LightRay reflect (LightRay input, int m) {
 		Point3d iPoint = intersect (input);
 		Vector3d iVel = input.getVelocity ();
@@ -36,7 +47,7 @@ public class PlaneGrating extends Plane implements Grating {
 		if ( (iPoint.x - vertex.x) > this.size/2.0 ||
 			 (iPoint.y - vertex.y) > this.size/2.0 ||
 			getTime (input) == 0)
-			return new LightRay (new Vector3d (iPoint), iVel, lambda);
+			return new LightRay (new Vector3d (iPoint), iVel, lambda).miss ();
 
 		/** Simple grating equation */
 		double sina = Math.sin (normal.angle (iVel));
@@ -0,0 +1,231 @@
+package jray;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+/**
+ * Quadric is the reflection of a general quadric surface
+ *   F(p) = p^T Q p = 0,   p = (x - x0, y - y0, z - z0, 1)
+ * in the frame of its origin (x0, y0, z0), with Q a symmetric 4x4
+ * matrix, limited to the annulus hole/2 <= r <= size/2 about
+ * (cx, cy).  The untilted Paraboloid, Hyperboloid, Ellipsoid and
+ * Spheroid all compile into one (see of), so that an OpticBench can
+ * trace them through this one final class: the call is monomorphic
+ * and the JIT can inline the whole kernel.
+ * <p>
+ * A line crosses a quadric twice; the root is chosen as the
+ * ConicSection compiled would: NEAREST takes the root of smaller
+ * size (the vertex sheet of a Paraboloid), UP the + root for a LightRay
+ * going up (+z) and the - root going down, DOWN the reverse.  A
+ * LightRay which misses, or would have to go backwards, goes straight
+ * on.  The optics the kernel does not model (tilted, Cylinder, Gratings,
+ * Detectors) return null from of.
+ */
+public final class Quadric {
+
+	/** Root choices */
+	public static final int NEAREST = 0, UP = 1, DOWN = 2;
+
+	private final double x0, y0, z0;
+	private final double qxx, qyy, qzz, qxy, qxz, qyz;	// quadratic part
+	private final double qx, qy, qz, q0;				// linear part, constant
+	private final int root;
+	private final double cx, cy, hole, size;
+	private final Aperture aperture;
+
+	/**
+	 * Quadric of matrix q (4x4, symmetric) about the origin o, choosing
+	 * the root root, reflecting between the diameters hole and size
+	 * about (cx, cy)
+	 */
+	public Quadric (Point3d o, double [][] q, int root,
+					double cx, double cy, double hole, double size) {
+		this (o, q, root, cx, cy, hole, size, null);
+	}
+	Quadric (Point3d o, double [][] q, int root, double cx, double cy,
+			 double hole, double size, Aperture aperture) {
+		for (int i = 0; i < 4; i++)
+			for (int j = 0; j < i; j++)
+				if (q[i][j] != q[j][i])
+					throw new RuntimeException ("Quadric: the matrix is " +
+												"not symmetric");
+		this.x0 = o.x;
+		this.y0 = o.y;
+		this.z0 = o.z;
+		this.qxx = q[0][0]; this.qyy = q[1][1]; this.qzz = q[2][2];
+		this.qxy = q[0][1]; this.qxz = q[0][2]; this.qyz = q[1][2];
+		this.qx  = q[0][3]; this.qy  = q[1][3]; this.qz  = q[2][3];
+		this.q0  = q[3][3];
+		this.root = root;
+		this.cx = cx;
+		this.cy = cy;
+		this.hole = hole;
+		this.size = size;
+		this.aperture = aperture;
+	}
+
+	/** The Quadric the optic o compiles into, or null if it is not one
+	 * of the surfaces modelled */
+	public static Quadric of (Object o) {
+		// Only these exact classes: subclasses reflect their own way
+		if (o.getClass () == Paraboloid.class)
+			return ((Paraboloid) o).toQuadric ();
+		if (o.getClass () == Hyperboloid.class)
+			return ((Hyperboloid) o).toQuadric ();
+		if (o.getClass () == Ellipsoid.class || o.getClass () == Spheroid.class)
+			return ((Ellipsoid) o).toQuadric ();
+		return null;
+	}
+
+	/** Diagonal matrix (a, b, c, d) with the linear terms (lx, ly, lz) */
+	static double [][] matrix (double a, double b, double c, double d,
+							   double lx, double ly, double lz) {
+		return new double [][] {{a, 0, 0, lx},
+								{0, b, 0, ly},
+								{0, 0, c, lz},
+								{lx, ly, lz, d}};
+	}
+
+	/** Time for the LightRay at position p (local) with velocity v to
+	 * reach the surface, 0 if it does not */
+	private double time (double px, double py, double pz,
+						 double vx, double vy, double vz) {
+		// Q p and Q v, for the quadratic part only
+		double qpx = qxx * px + qxy * py + qxz * pz;
+		double qpy = qxy * px + qyy * py + qyz * pz;
+		double qpz = qxz * px + qyz * py + qzz * pz;
+		double A = vx * (qxx * vx + qxy * vy + qxz * vz) +
+			vy * (qxy * vx + qyy * vy + qyz * vz) +
+			vz * (qxz * vx + qyz * vy + qzz * vz);
+		double B = 2.0 * (vx * (qpx + qx) + vy * (qpy + qy) + vz * (qpz + qz));
+		double C = px * (qpx + 2.0 * qx) + py * (qpy + 2.0 * qy) +
+			pz * (qpz + 2.0 * qz) + q0;
+		double sq = Math.sqrt (B * B - 4.0 * A * C);
+
+		double t;
+		if (A == 0 || (root == NEAREST && Math.abs (B) == sq))
+			t = -C / B;
+		else if (B >= 0)
+			t = (-B + sq) / 2.0 / A;
+		else
+			t = (-B - sq) / 2.0 / A;
+		if ((root == UP && vz > 0) || (root == DOWN && vz < 0))
+			t = (-B + sq) / 2.0 / A;
+		else if ((root == UP && vz < 0) || (root == DOWN && vz > 0))
+			t = (-B - sq) / 2.0 / A;
+		if (t < ConicSection.TIME_LIMIT || Double.isNaN (t))
+			t = 0;
+		return t;
+	}
+
+	/** Returns a LightRay at the surface in the outgoing reflected
+	 * direction (straight on if it misses; the input itself, moved on,
+	 * if the Aperture rejects it) */
+	public LightRay reflect (LightRay input) {
+		if (aperture != null && aperture.misses (input))
+			return aperture.pass (input);
+		Vector3d p = input.peekPosition ();
+		Vector3d v = input.peekVelocity ();
+		double px = p.x - x0, py = p.y - y0, pz = p.z - z0;
+		double t = time (px, py, pz, v.x, v.y, v.z);
+		double ix = p.x + t * v.x, iy = p.y + t * v.y, iz = p.z + t * v.z;
+
+		double dx = ix - cx, dy = iy - cy;
+		double radius = Math.sqrt (dx * dx + dy * dy);
+		if (radius > size / 2.0 || radius < hole / 2.0 || t == 0)
+			return new LightRay (ix, iy, iz, v.x, v.y, v.z,
+								 input.getLambda ()).miss ();
+
+		// The gradient of F
+		px += t * v.x;
+		py += t * v.y;
+		pz += t * v.z;
+		double nx = qxx * px + qxy * py + qxz * pz + qx;
+		double ny = qxy * px + qyy * py + qyz * pz + qy;
+		double nz = qxz * px + qyz * py + qzz * pz + qz;
+		double n = Math.sqrt (nx * nx + ny * ny + nz * nz);
+		nx /= n;
+		ny /= n;
+		nz /= n;
+		double d = -2.0 * (nx * v.x + ny * v.y + nz * v.z);
+		return new LightRay (ix, iy, iz, v.x + d * nx, v.y + d * ny,
+							 v.z + d * nz, input.getLambda ());
+	} // end of reflect ********************************************************
+
+	/**
+	 * Reflects the n LightRays at (x, y, z) with velocity (u, v, w),
+	 * in float, in place: the kernel of FastTrace.  The loop makes no
+	 * call and no allocation, so the JIT can unroll it and vectorize
+	 * what it can.  The root and the aperture are those of reflect;
+	 * the velocity is not normalized again.
+	 */
+	void reflect (float [] x, float [] y, float [] z,
+				  float [] u, float [] v, float [] w, int n) {
+		final float ox = (float) x0, oy = (float) y0, oz = (float) z0;
+		final float axx = (float) qxx, ayy = (float) qyy, azz = (float) qzz;
+		final float axy = (float) qxy, axz = (float) qxz, ayz = (float) qyz;
+		final float ax = (float) qx, ay = (float) qy, az = (float) qz;
+		final float a0 = (float) q0;
+		final float acx = (float) cx, acy = (float) cy;
+		final float rmin2 = (float) (hole * hole / 4.0);
+		final float rmax2 = (float) (size * size / 4.0);
+		final float limit = (float) ConicSection.TIME_LIMIT;
+		for (int i = 0; i < n; i++) {
+			float px = x[i] - ox, py = y[i] - oy, pz = z[i] - oz;
+			float vx = u[i], vy = v[i], vz = w[i];
+			float qpx = axx * px + axy * py + axz * pz;
+			float qpy = axy * px + ayy * py + ayz * pz;
+			float qpz = axz * px + ayz * py + azz * pz;
+			float A = vx * (axx * vx + axy * vy + axz * vz) +
+				vy * (axy * vx + ayy * vy + ayz * vz) +
+				vz * (axz * vx + ayz * vy + azz * vz);
+			float B = 2f * (vx * (qpx + ax) + vy * (qpy + ay) + vz * (qpz + az));
+			float C = px * (qpx + 2f * ax) + py * (qpy + 2f * ay) +
+				pz * (qpz + 2f * az) + a0;
+			float sq = (float) Math.sqrt (B * B - 4f * A * C);
+
+			float t;
+			if (A == 0 || (root == NEAREST && Math.abs (B) == sq))
+				t = -C / B;
+			else if (B >= 0)
+				t = (-B + sq) / 2f / A;
+			else
+				t = (-B - sq) / 2f / A;
+			if ((root == UP && vz > 0) || (root == DOWN && vz < 0))
+				t = (-B + sq) / 2f / A;
+			else if ((root == UP && vz < 0) || (root == DOWN && vz > 0))
+				t = (-B - sq) / 2f / A;
+			if (!(t >= limit))
+				t = 0;
+
+			x[i] += t * vx;
+			y[i] += t * vy;
+			z[i] += t * vz;
+			float dx = x[i] - acx, dy = y[i] - acy;
+			float r2 = dx * dx + dy * dy;
+			if (r2 > rmax2 || r2 < rmin2 || t == 0)
+				continue;
+			// v - 2 (g.v) g / (g.g), g the gradient of F
+			px += t * vx;
+			py += t * vy;
+			pz += t * vz;
+			float gx = axx * px + axy * py + axz * pz + ax;
+			float gy = axy * px + ayy * py + ayz * pz + ay;
+			float gz = axz * px + ayz * py + azz * pz + az;
+			float d = -2f * (gx * vx + gy * vy + gz * vz) /
+				(gx * gx + gy * gy + gz * gz);
+			u[i] = vx + d * gx;
+			v[i] = vy + d * gy;
+			w[i] = vz + d * gz;
+		}
+	} // end of reflect (float) ************************************************
+
+	/** overrides toString() */
+	public String toString () {
+		return ("Quadric about (" + x0 + ", " + y0 + ", " + z0 + "): " +
+				qxx + " x^2 + " + qyy + " y^2 + " + qzz + " z^2 + " +
+				2 * qxy + " xy + " + 2 * qxz + " xz + " + 2 * qyz + " yz + " +
+				2 * qx + " x + " + 2 * qy + " y + " + 2 * qz + " z + " + q0 +
+				", D=" + size + ", hole=" + hole);
+	}
+} // end of Class Quadric ******************************************************
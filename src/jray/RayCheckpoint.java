@@ -0,0 +1,73 @@
+package jray;
+
+/**
+ * The state of every LightRay on an OpticBench just before a given
+ * optic, kept in one primitive buffer.  A RayCheckpoint is valid while
+ * the LightRays and every optic upstream of it are unchanged.
+ */
+class RayCheckpoint {
+
+	/** doubles stored per LightRay: position, velocity, order, weight */
+	static final int STRIDE = 8;
+
+	/** hash of the LightRays traced */
+	final long rays;
+	/** index of the optic the LightRays are about to meet */
+	final int element;
+	/** versions of the optics this checkpoint depends on */
+	final int [] deps;
+	/** true if traced with the Cassegrain/Gregorian ordering */
+	final boolean secondary;
+	/** position, velocity, order and weight of each LightRay */
+	final double [] state;
+	/** status of each LightRay, and the optic it was set at */
+	final int [] status, surface;
+
+	RayCheckpoint (long rays, int element, int [] deps,
+				   boolean secondary, int n) {
+		this.rays = rays;
+		this.element = element;
+		this.deps = deps;
+		this.secondary = secondary;
+		this.state = new double [STRIDE * n];
+		this.status = new int [n];
+		this.surface = new int [n];
+	}
+
+	/** number of LightRays in this checkpoint */
+	int size () { return state.length / STRIDE; }
+
+	/** memory used by this checkpoint (bytes) */
+	long bytes () {
+		return 8L * state.length + 8L * status.length + 4L * deps.length + 64;
+	}
+
+	/** store the state of LightRay q */
+	void save (int q, LightRay ray) {
+		ray.getState (state, STRIDE * q);
+		status [q] = ray.getStatus ();
+		surface [q] = ray.getSurface ();
+	}
+
+	/** restore the state of LightRay q */
+	void restore (int q, LightRay ray) {
+		ray.setState (state, STRIDE * q);
+		ray.setStatus (status [q], surface [q]);
+	}
+
+	/** true if the optic versions still match */
+	boolean matches (long rays, int [] versions, boolean secondary, int n) {
+		if (this.rays != rays || this.secondary != secondary ||
+			size () != n || versions.length < deps.length)
+			return false;
+		for (int i = 0; i < deps.length; i++)
+			if (deps[i] != versions[i])
+				return false;
+		return true;
+	}
+
+	/** lookup key of a checkpoint */
+	static Long key (long rays, int element) {
+		return Long.valueOf (rays * 31L + element);
+	}
+} // end of Class RayCheckpoint ************************************************
@@ -0,0 +1,24 @@
+package jray;
+
+
+/**
+ * A ConicSection which may be a surface of revolution about the
+ * z-axis.  Near the axis such a surface is described by the z of its
+ * vertex and its curvature there,
+ *   z = vertexZ + curvature * r^2 / 2 + ...
+ * which is all a paraxial (first order) trace needs; see Paraxial.
+ */
+public interface RotationalSurface extends ConicSection {
+
+	/** true if this surface is a surface of revolution about the z-axis */
+	public boolean isCoaxial ();
+	/** z where the z-axis meets this surface */
+	public double getVertexZ ();
+	/** curvature at the vertex, positive if the surface curves towards +z */
+	public double getVertexCurvature ();
+	/** conic constant K: r^2 = 2 R dz - (1 + K) dz^2 about the vertex */
+	public double getConicConstant ();
+	/** diameter of the hole in the center of this surface */
+	public double getHoleSize ();
+
+}
@@ -0,0 +1,211 @@
+package jray;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+/**
+ * SagSurface is a mirror given by its sag about the vertex,
+ *   z - z0 = c r^2 / (1 + sqrt (1 - (1 + K) c^2 r^2)) + departure (x, y)
+ * a conic of vertex curvature c and conic constant K plus a departure
+ * of the subclass (EvenAsphere, ZernikeSag).  It is not tilted.
+ * <p>
+ * The intersection is found by Newton's method on
+ *   g (t) = z (t) - z0 - sag (x (t), y (t))
+ * seeded by the closed form intersection with the base conic (on its
+ * sheet through the vertex), so a LightRay takes a step or two for a
+ * small departure.  A LightRay for which Newton does not converge in
+ * MAX_NEWTON steps, or leaves the domain of the sag, misses; the
+ * counters show how often that, and how many steps, it takes.
+ */
+public abstract class SagSurface implements RotationalSurface {
+
+	/** Newton steps before giving up */
+	public static final int MAX_NEWTON = 20;
+	/** Relative step size at which Newton has converged */
+	private static final double NEWTON_TOL = 1e-12;
+
+	/** location of the vertex of this ConicSection */
+	protected Point3d vertex;
+	/** vertex curvature and conic constant of the base conic */
+	protected double c, K;
+	/** diameter (times SIZE_FACTOR) and hole of this ConicSection */
+	protected double size, hole;
+	private double time;    // time elapsed from LightRay start to intersection
+	/** counters of the intersections */
+	private long newtons = 0, iterations = 0, failures = 0;
+	private int maxIterations = 0;
+
+	/** SagSurface of vertex v on a conic (c, K), diameter s and hole h */
+	protected SagSurface (Point3d v, double c, double K, double s, double h) {
+		this.vertex = new Point3d (v);
+		this.c = c;
+		this.K = K;
+		this.size = s * SIZE_FACTOR;
+		this.hole = h;
+		this.time = -1;
+	}
+
+	/**
+	 * Departure from the base conic at (x, y) about the vertex; its
+	 * gradient is added to d[0], d[1]
+	 */
+	protected abstract double departure (double x, double y, double [] d);
+
+	/** Sag at (x, y) about the vertex, with its gradient in d[0], d[1]
+	 * (NaN outside the base conic) */
+	public double sag (double x, double y, double [] d) {
+		double r2 = x * x + y * y;
+		double s = Math.sqrt (1.0 - (1.0 + K) * c * c * r2);
+		// dz/dr / r of the conic is c / s
+		d[0] = c * x / s;
+		d[1] = c * y / s;
+		return c * r2 / (1.0 + s) + departure (x, y, d);
+	}
+
+	/** Evaluate at point x the value z for 2D Rendering */
+	public double Evaluate (double x) {
+		double dx = x - vertex.x;
+		if (Math.abs (dx) > this.size / 2.)
+			return ConicSection.NULL;
+		else if (Math.abs (dx) < this.hole / 2.)
+			return ConicSection.BLANK;
+		double z = vertex.z + sag (dx, 0, new double [2]);
+		if (Double.isNaN (z) || Double.isInfinite (z))
+			return ConicSection.NULL;
+		return z;
+	}
+
+	/**
+	 * Returns a LightRay at the surface of the
+	 * ConicSection in the outgoing reflected direction.
+	 */
+	public LightRay reflect (LightRay input) {
+		Point3d iPoint = intersect (input);
+		Vector3d iVel = input.getVelocity ();
+		double dx = iPoint.x - vertex.x;
+		double dy = iPoint.y - vertex.y;
+		double radius = Math.sqrt (dx * dx + dy * dy);
+		if (radius > this.size / 2.0 ||
+			radius < this.hole / 2.0 ||
+			this.time == 0)
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
+
+		// The normal is along the gradient of z - sag (x, y)
+		double [] d = new double [2];
+		sag (dx, dy, d);
+		Vector3d normal = new Vector3d (-d[0], -d[1], 1.0);
+		normal.normalize ();
+		Vector3d oVel = new Vector3d ();
+		oVel.scaleAdd (-2.0 * normal.dot (iVel), normal, iVel);
+		return new LightRay (new Vector3d (iPoint), oVel, input.getLambda ());
+	} // end of reflect ********************************************************
+
+	/** returns the time to intersection */
+	public double getTime (LightRay input) {
+		intersect (input);
+		return this.time;
+	}
+	/** returns the diameter of this ConicSection */
+	public double getSize () { return this.size / SIZE_FACTOR; }
+
+	/** finds the Point3d of intersection between
+	 * the LightRay and this ConicSection.
+	 */
+	public Point3d intersect (LightRay input) {
+		Vector3d pos = input.getPosition ();
+		Vector3d vel = input.getVelocity ();
+		double px = pos.x - vertex.x, py = pos.y - vertex.y, pz = pos.z - vertex.z;
+		this.time = newtonTime (px, py, pz, vel);
+
+		Point3d intersection = new Point3d ();
+		intersection.scaleAdd (this.time, vel, pos);
+		return intersection;
+	} // end of intersect ******************************************************
+
+	/**
+	 * Time to the surface for the LightRay at p (about the vertex) with
+	 * velocity v, 0 if it misses.  The seed is the base conic
+	 *   c (x^2 + y^2 + (1 + K) w^2) - 2 w = 0
+	 * on its sheet through the vertex, (1 + K) c w < 1, or the plane of
+	 * the vertex if the LightRay misses the conic.
+	 */
+	private double newtonTime (double px, double py, double pz, Vector3d v) {
+		newtons++;
+		double k = 1.0 + K;
+		double A = c * (v.x * v.x + v.y * v.y + k * v.z * v.z);
+		double B = 2.0 * (c * (px * v.x + py * v.y + k * pz * v.z) - v.z);
+		double C = c * (px * px + py * py + k * pz * pz) - 2.0 * pz;
+		double t = Double.NaN;
+		if (A == 0)
+			t = -C / B;
+		else {
+			double D = B * B - 4.0 * A * C;
+			if (D >= 0) {
+				double q = -0.5 * (B + ((B < 0) ? -1.0 : 1.0) * Math.sqrt (D));
+				double t1 = Math.min (q / A, C / q), t2 = Math.max (q / A, C / q);
+				if (onSheet (t1, pz, v.z))
+					t = t1;
+				else if (onSheet (t2, pz, v.z))
+					t = t2;
+			}
+		}
+		if (!(t > TIME_LIMIT) || Double.isInfinite (t))
+			t = -pz / v.z;
+		if (!(t > TIME_LIMIT) || Double.isInfinite (t))
+			return 0;
+
+		double [] d = new double [2];
+		for (int i = 1; i <= MAX_NEWTON; i++) {
+			double x = px + t * v.x, y = py + t * v.y, z = pz + t * v.z;
+			double g  = z - sag (x, y, d);
+			double gp = v.z - d[0] * v.x - d[1] * v.y;
+			double dt = g / gp;
+			if (Double.isNaN (dt) || Double.isInfinite (dt))
+				break;
+			t -= dt;
+			iterations++;
+			if (Math.abs (dt) <= NEWTON_TOL * (1.0 + Math.abs (t))) {
+				maxIterations = Math.max (maxIterations, i);
+				return (t > TIME_LIMIT) ? t : 0;
+			}
+		}
+		failures++;
+		return 0;
+	} // end of newtonTime *****************************************************
+
+	/** true if time t is ahead and on the sheet of the conic through
+	 * the vertex */
+	private boolean onSheet (double t, double pz, double vz) {
+		return t > TIME_LIMIT && (1.0 + K) * c * (pz + t * vz) < 1.0;
+	}
+
+	/** Number of intersections found with Newton's method */
+	public long getNewtonCount () { return newtons; }
+	/** Number of Newton steps taken so far */
+	public long getNewtonIterations () { return iterations; }
+	/** Mean number of Newton steps per intersection */
+	public double getMeanIterations () {
+		return (newtons > 0) ? (double) iterations / newtons : 0.0;
+	}
+	/** Most Newton steps any intersection took to converge */
+	public int getMaxIterations () { return maxIterations; }
+	/** Number of intersections for which Newton did not converge */
+	public long getFailureCount () { return failures; }
+	/** Resets the counters above */
+	public void resetCounters () {
+		newtons = iterations = failures = 0;
+		maxIterations = 0;
+	}
+
+	/** true if this surface is on the z-axis (and symmetric about it) */
+	public boolean isCoaxial () { return vertex.x == 0 && vertex.y == 0; }
+	/** z of the vertex */
+	public double getVertexZ () { return vertex.z; }
+	/** curvature at the vertex */
+	public double getVertexCurvature () { return c; }
+	/** conic constant of the base conic */
+	public double getConicConstant () { return K; }
+	/** returns the diameter of the hole */
+	public double getHoleSize () { return hole; }
+} // end of Class SagSurface ***************************************************
@@ -0,0 +1,128 @@
+package jray;
+
+/**
+ * Third order (Seidel) aberrations of the coaxial mirrors of a
+ * Telescope, from the paraxial data of Paraxial and the conic
+ * constants of the mirrors.  The sums follow Welford (Aberrations of
+ * Optical Systems), with the index changing sign at each mirror:
+ *   S_I   spherical aberration
+ *   S_II  coma
+ *   S_III astigmatism
+ *   S_IV  Petzval field curvature
+ *   S_V   distortion
+ * for the full aperture and a field angle given in arcsec.  The
+ * aperture stop is the first ConicSection.  Coordinates are turned
+ * so that the light comes in going up, as in Welford.
+ */
+public class Seidel {
+
+	/** Spherical aberration, coma, astigmatism, field curvature, distortion */
+	public static final int SPHERICAL = 0, COMA = 1, ASTIGMATISM = 2,
+		CURVATURE = 3, DISTORTION = 4;
+
+	Paraxial paraxial;
+	double field;				// arcsec
+	double [] S = new double [5];
+	double [][] surfaceS;		// [surface][term]
+	double nu;					// n'u' of the marginal ray in image space
+
+	/** Seidel sums of the Telescope t at field angle field (arcsec) */
+	public Seidel (Telescope t, double field) {
+		this.paraxial = new Paraxial (t);
+		this.field = field;
+		int ns = paraxial.surfaces.size ();
+		surfaceS = new double [ns][5];
+
+		double y = paraxial.diameter / 2.0, u = 0;			// marginal ray
+		double yb = 0, ub = Math.toRadians (field / 3600.);	// chief ray
+		double n = 1;
+		// z goes up with the light: z -> -z, c -> -c
+		double z = -paraxial.surfaces.get (0).getVertexZ ();
+		double H = n * (ub * y - u * yb);		// Lagrange invariant
+		for (int i = 0; i < ns; i++) {
+			RotationalSurface s = paraxial.surfaces.get (i);
+			double zs = -s.getVertexZ ();
+			y  += u  * (zs - z);
+			yb += ub * (zs - z);
+			z = zs;
+			// the light goes through the hole, as in Paraxial
+			if (Math.abs (y) < s.getHoleSize () / 2.0)
+				continue;
+
+			double c = -s.getVertexCurvature ();
+			double K = s.getConicConstant ();
+			double n2 = -n;
+			double A  = n * (u  + y  * c);
+			double Ab = n * (ub + yb * c);
+			double u2  = (n * u  - y  * c * (n2 - n)) / n2;
+			double ub2 = (n * ub - yb * c * (n2 - n)) / n2;
+			double duN = u2 / n2 - u / n;
+			double d1N = 1.0 / n2 - 1.0 / n;
+			double asph = K * c * c * c * y * y * y * y * (n2 - n);
+			double e = yb / y;					// chief / marginal height
+
+			double [] si = surfaceS[i];
+			si[SPHERICAL]   = -A * A * y * duN + asph;
+			si[COMA]        = -A * Ab * y * duN + asph * e;
+			si[ASTIGMATISM] = -Ab * Ab * y * duN + asph * e * e;
+			si[CURVATURE]   = -H * H * c * d1N;
+			si[DISTORTION]  = (A == 0) ? 0.0 :
+				(Ab / A) * (-Ab * Ab * y * duN - H * H * c * d1N) +
+				asph * e * e * e;
+			for (int k = 0; k < 5; k++)
+				S[k] += si[k];
+
+			u = u2;
+			ub = ub2;
+			n = n2;
+		}
+		this.nu = n * u;
+	} // end of Seidel constructor *********************************************
+
+	/** The paraxial trace these sums are built on */
+	public Paraxial getParaxial () { return paraxial; }
+	/** Field angle (arcsec) of the sums */
+	public double getField () { return field; }
+	/** Seidel sum of term (SPHERICAL ... DISTORTION) */
+	public double getSum (int term) { return S[term]; }
+	/** Contribution of the traced surface i to term */
+	public double getSum (int i, int term) { return surfaceS[i][term]; }
+
+	/** Wavefront coefficients (mm): W040, W131, W222, W220, W311 */
+	public double [] getWavefront () {
+		return new double [] {S[0] / 8., S[1] / 2., S[2] / 2.,
+							  (S[2] + S[3]) / 4., S[4] / 2.};
+	}
+
+	/*
+	 * Transverse aberrations at the paraxial image, in mm along x of
+	 * the image for a field angle along +x (Welford's -S / 2n'u', with
+	 * the sign turned back by z -> -z)
+	 */
+	/** Transverse spherical aberration of the marginal ray (mm) */
+	public double getTransverseSpherical () { return S[0] / (2.0 * nu); }
+	/** Tangential coma at the edge of the field (mm) */
+	public double getTangentialComa () { return 3.0 * S[1] / (2.0 * nu); }
+	/** Tangential astigmatism plus field curvature (mm) */
+	public double getTangentialAstigmatism () {
+		return (3.0 * S[2] + S[3]) / (2.0 * nu);
+	}
+	/** Distortion: displacement of the chief ray (mm) */
+	public double getTransverseDistortion () { return S[4] / (2.0 * nu); }
+
+	/** Estimate of the blur (mm) at the edge of the field: the sum of
+	 * the transverse spherical aberration, tangential coma and
+	 * astigmatism with field curvature */
+	public double getBlur () {
+		return Math.abs (getTransverseSpherical ()) +
+			Math.abs (getTangentialComa ()) +
+			Math.abs (getTangentialAstigmatism ());
+	}
+
+	/** overrides toString() */
+	public String toString () {
+		return ("Seidel at " + field + " arcsec: SI=" + S[0] + ", SII=" +
+				S[1] + ", SIII=" + S[2] + ", SIV=" + S[3] + ", SV=" + S[4] +
+				" (blur " + getBlur () + "mm)");
+	}
+} // end of Class Seidel *******************************************************
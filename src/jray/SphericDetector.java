@@ -43,7 +43,8 @@ public class SphericDetector extends Spheroid implements Detector {
 		if ( Math.abs(iPoint.x - xcenter ) > this.size/2.0 ||
 			 Math.abs(iPoint.y - vertex.y) > this.size/2.0 ||
 			 getTime (input) == 0 )
-			return new LightRay (new Vector3d (iPoint), iVel, input.getLambda ());
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 
 		double xb = iPoint.x - vertex.x;
 		double yb = iPoint.y - vertex.y;
@@ -56,7 +57,7 @@ public class SphericDetector extends Spheroid implements Detector {
 		double x = s * dx / rho;
 		double y = s * dy / rho;
 
-		display.add (new Point2d (x, y), input.getColor () );
+		display.add (new Point2d (x, y), input);
 		return new LightRay ( new Vector3d (iPoint), 
 							  new Vector3d (0, 0, 0), input.getLambda ());
 	} // end of reflect ********************************************************
@@ -13,10 +13,13 @@ public class SphericGrating extends Spheroid implements Grating {
 	private double cd; // in nm
 	private Vector3d cg;
 	private int order;
+	private int [] orders;
 	private double xcenter;
 	private Vector3d crossg;
 
 	private Vector3d ncenter;
+	/** scratch space for the diffracted direction */
+	private double [] out = new double [3];
 
 	/** A Spherical Grating
 	 * @param v position vector of the vertex of the grating
@@ -57,6 +60,16 @@ public class SphericGrating extends Spheroid implements Grating {
 	public LightRay reflect (LightRay input) {
 		return reflect (input, this.order);
 	}
+	/** orders an OpticBench sends the light into (default: order) */
+	public void setOrders (int [] m) {
+		if (m.length == 0)
+			throw new RuntimeException ("SphericGrating: needs at least one " +
+										"order");
+		this.orders = m.clone ();
+	}
+	public int [] getOrders () {
+		return (orders != null) ? orders.clone () : new int [] {order};
+	}
 	public LightRay reflect (LightRay input, int m) {
 		Point3d iPoint = intersect (input);
 		Vector3d iVel = input.getVelocity ();
@@ -64,13 +77,13 @@ public class SphericGrating extends Spheroid implements Grating {
 		if ( (iPoint.x - vertex.x) > this.size/2.0 ||
 			 (iPoint.y - vertex.y) > this.size/2.0 ||
 			getTime (input) == 0)
-			return new LightRay (new Vector3d (iPoint), iVel, lambda);
+			return new LightRay (new Vector3d (iPoint), iVel, lambda).miss ();
 
-		Vector3d normal = 
-			new Vector3d (-2*(iPoint.x - vertex.x) / Math.pow (this.a, 2.0),
-						  -2*(iPoint.y - vertex.y) / Math.pow (this.b, 2.0),
-						  -2*(iPoint.z - vertex.z) / Math.pow (this.c, 2.0));
-		normal.normalize ();
+		double nx = -2*(iPoint.x - vertex.x) / (this.a * this.a);
+		double ny = -2*(iPoint.y - vertex.y) / (this.b * this.b);
+		double nz = -2*(iPoint.z - vertex.z) / (this.c * this.c);
+		double s = 1.0 / Math.sqrt (nx*nx + ny*ny + nz*nz);
+		nx *= s; ny *= s; nz *= s;
 	
 		// local linespacing on sphere
 		double dx = iPoint.x - xcenter;
@@ -80,12 +93,15 @@ public class SphericGrating extends Spheroid implements Grating {
 						 -Math.asin ( (dd - 0.5 * this.cd * 1e-6) / a )
 						  ) * 1e6; // in nm
 
-		// local direction of grooves
-		Vector3d lg = new Vector3d ();
-		lg.cross (normal, crossg);
+		// local direction of grooves: normal x crossg
+		double gx = ny*crossg.z - nz*crossg.y;
+		double gy = nz*crossg.x - nx*crossg.z;
+		double gz = nx*crossg.y - ny*crossg.x;
 
-		Vector3d oVel = GratingEqn.grating (m, lambda, ld, lg, normal, iVel);
-		return new LightRay (new Vector3d (iPoint), oVel, lambda);
+		GratingEqn.grating (m, lambda, ld, gx, gy, gz, nx, ny, nz,
+							iVel.x, iVel.y, iVel.z, out, 0);
+		return new LightRay (new Vector3d (iPoint),
+							 new Vector3d (out[0], out[1], out[2]), lambda);
 	} // end of reflect ********************************************************
 
 } // end of Class SphericGrating
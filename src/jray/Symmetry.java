@@ -0,0 +1,92 @@
+package jray;
+
+import java.util.Vector;
+
+import javax.vecmath.Vector3d;
+
+/**
+ * Mirror symmetries of the optics of an OpticBench.  When every optic
+ * is a coaxial surface of revolution, centred on the z-axis, and the
+ * Detector is a coaxial PlaneDetector or SphericDetector, a LightRay
+ * and its mirror image in the x-z plane (y -> -y) land on mirror
+ * images on the Detector, and the same in the y-z plane for field
+ * angles in y only.  The arithmetic of the trace is symmetric under a
+ * change of sign, so the image of a traced LightRay is the point the
+ * mirrored LightRay would have given, to the last bit.
+ * <p>
+ * A bundle then needs only one half (field angle along x or y) or one
+ * quadrant (on axis) traced, the rest being images added with
+ * OpticBench.addImage.  A swap of x and y would give another factor
+ * of two on axis, but the sums in the trace are not in symmetric
+ * order, so it would not be exact.
+ */
+public class Symmetry {
+
+	/** No symmetry, x -> -x, y -> -y */
+	public static final int NONE = 0, MIRROR_X = 1, MIRROR_Y = 2;
+
+	/** Symmetry is a static class */
+	private Symmetry () {}
+
+	/** The mirror symmetries of optics for a bundle at field angle
+	 * (angx, angy) */
+	public static int of (Vector<?> optics, double angx, double angy) {
+		if (optics.size () == 0 ||
+			!(optics.get (optics.size () - 1) instanceof Detector))
+			return NONE;
+		for (int i = 0; i < optics.size (); i++)
+			if (!isSymmetric (optics.get (i)))
+				return NONE;
+		int s = NONE;
+		if (angx == 0) s |= MIRROR_X;
+		if (angy == 0) s |= MIRROR_Y;
+		return s;
+	}
+
+	/** true if the optic o is symmetric in x and y about the z-axis */
+	public static boolean isSymmetric (Object o) {
+		if (o instanceof Grating || !(o instanceof RotationalSurface) ||
+			!((RotationalSurface) o).isCoaxial ())
+			return false;
+		if (o instanceof Plane) {
+			Plane p = (Plane) o;
+			return p.vertex.x == 0 && p.vertex.y == 0 &&
+				(!(o instanceof Detector) || o instanceof PlaneDetector);
+		}
+		if (o instanceof Ellipsoid) {
+			Ellipsoid e = (Ellipsoid) o;
+			return e.lsize == e.rsize &&
+				(!(o instanceof Detector) || o instanceof SphericDetector);
+		}
+		return !(o instanceof Detector);
+	}
+
+	/**
+	 * Coordinate i (1 to n) of a grid of n points from -1 to 1, exactly
+	 * symmetric: grid (n + 1 - i, n) == -grid (i, n)
+	 */
+	public static double grid (int i, int n) {
+		return (2.0 * (i - 1) - (n - 1)) / (n - 1);
+	}
+
+	/** The mirror image of the vector v */
+	static Vector3d mirror (Vector3d v, int flags) {
+		Vector3d m = new Vector3d (v);
+		if ((flags & MIRROR_X) != 0) m.x = -m.x;
+		if ((flags & MIRROR_Y) != 0) m.y = -m.y;
+		return m;
+	}
+
+	/** The mirror image of the LightRay l */
+	static LightRay mirror (LightRay l, int flags) {
+		double sx = ((flags & MIRROR_X) != 0) ? -1.0 : 1.0;
+		double sy = ((flags & MIRROR_Y) != 0) ? -1.0 : 1.0;
+		LightRay m = new LightRay (l);
+		double [] s = new double [8];
+		l.getState (s, 0);
+		s[0] *= sx; s[3] *= sx;
+		s[1] *= sy; s[4] *= sy;
+		m.setState (s, 0);
+		return m;
+	}
+} // end of Class Symmetry *****************************************************
@@ -0,0 +1,11 @@
+package jray;
+
+/**
+ * A TelescopeFactory makes new, identical Telescopes.  ConicSections
+ * keep state while tracing, so each thread tracing in parallel needs
+ * a Telescope of its own.
+ */
+public interface TelescopeFactory {
+	/** Returns a new Telescope */
+	public Telescope create ();
+}
@@ -9,8 +9,13 @@ public class ToricGrating extends Toroid implements Grating {
 	private double cd; // in nm
 	private Vector3d cg;
 	private int order;
+	private int [] orders;
 	private double xcenter;
 	private Vector3d ncenter, crossg;
+	/** rotation part of toWorld, row by row */
+	private double [] world = new double [9];
+	/** scratch space for the diffracted direction */
+	private double [] out = new double [3];
 
 	/** A Toric Grating, basically a squeezed spherical grating.
 	 * @param v position vector of the vertex of the grating,
@@ -42,12 +47,27 @@ public class ToricGrating extends Toroid implements Grating {
 		crossg = new Vector3d ();
 		crossg.cross (ncenter, this.cg);
 		crossg.normalize ();
+		Matrix3d w = new Matrix3d ();
+		toWorld.getRotationScale (w);
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				world [3*i + j] = w.getElement (i, j);
 	}
 
 	/** returns light reflected into order m */
 	public LightRay reflect (LightRay input) {
 		return reflect (input, this.order);
 	}
+	/** orders an OpticBench sends the light into (default: order) */
+	public void setOrders (int [] m) {
+		if (m.length == 0)
+			throw new RuntimeException ("ToricGrating: needs at least one " +
+										"order");
+		this.orders = m.clone ();
+	}
+	public int [] getOrders () {
+		return (orders != null) ? orders.clone () : new int [] {order};
+	}
 	public LightRay reflect (LightRay input, int m) {
 		Point3d  iPoint = intersect (input);
 		Point3d  rPoint = new Point3d (iPoint);
@@ -57,7 +77,7 @@ public class ToricGrating extends Toroid implements Grating {
 		double radius = Math.sqrt (rPoint.x*rPoint.x+ rPoint.y*rPoint.y);
 		if ( radius > this.size/2.0 ||
 			 getTime (input) == 0)
-			return new LightRay (iPoint, iVel, lambda);
+			return new LightRay (iPoint, iVel, lambda).miss ();
 
 		// local linespacing on sphere
 		// assuming cg = (0, 1, 0), then
@@ -66,13 +86,26 @@ public class ToricGrating extends Toroid implements Grating {
 						 -Math.asin ( (dd - 0.5 * this.cd * 1e-6) / b )
 						  ) * 1e6; // in nm
 
-		// local direction of grooves
-		Vector3d normal = getNormal (iPoint);
-		Vector3d lg = new Vector3d ();
-		lg.cross (normal, crossg);
-		lg.normalize ();
+		// normal (as in getNormal, from the point already in torus frame)
+		double rr = Math.sqrt (rPoint.y*rPoint.y + rPoint.z*rPoint.z);
+		double tx = rPoint.x;
+		double ty = rPoint.y * (1.0 + a / rr);
+		double tz = rPoint.z * (1.0 - a / rr);
+		double s = 1.0 / Math.sqrt (tx*tx + ty*ty + tz*tz);
+		if (tz < 0) s = -s;
+		tx *= s; ty *= s; tz *= s;
+		double nx = world[0]*tx + world[1]*ty + world[2]*tz;
+		double ny = world[3]*tx + world[4]*ty + world[5]*tz;
+		double nz = world[6]*tx + world[7]*ty + world[8]*tz;
+
+		// local direction of grooves: normal x crossg
+		double gx = ny*crossg.z - nz*crossg.y;
+		double gy = nz*crossg.x - nx*crossg.z;
+		double gz = nx*crossg.y - ny*crossg.x;
 
-		Vector3d oVel = GratingEqn.grating (m, lambda, ld, lg, normal, iVel);
-		return new LightRay (new Vector3d (iPoint), oVel, lambda);
+		GratingEqn.grating (m, lambda, ld, gx, gy, gz, nx, ny, nz,
+							iVel.x, iVel.y, iVel.z, out, 0);
+		return new LightRay (new Vector3d (iPoint),
+							 new Vector3d (out[0], out[1], out[2]), lambda);
 	} // end of reflect ********************************************************
 } // end of Class ToricGrating
@@ -11,6 +11,10 @@ import javax.media.j3d.Transform3D;
 public class Toroid implements ConicSection {
 
 	private static double CHK_MAX = 1e9;
+	/** Newton steps of the fast path before falling back */
+	private static final int MAX_NEWTON = 8;
+	/** Relative step size at which Newton has converged */
+	private static final double NEWTON_TOL = 1e-12;
 
 	/** location of the vertex of this ConicSection */
 	protected Point3d vertex;
@@ -29,6 +33,10 @@ public class Toroid implements ConicSection {
 	private Vector<Point2d> points;
 	/** finness of said points in the x-direction */
 	private int scale = 10;
+	/** intersect with the Newton fast path */
+	private boolean newton = true;
+	/** counters of the intersect paths */
+	private long newtons = 0, iterations = 0, fallbacks = 0, quartics = 0;
 
 	/**
 	 * The equation of a torid is
@@ -136,7 +144,8 @@ public class Toroid implements ConicSection {
 		double radius = Math.sqrt ( cx * cx + cy * cy);
 		if ( radius > this.size/2.0 ||
 			 this.time == 0)
-			oVel = new Vector3d (iVel);
+			return new LightRay (new Vector3d (iPoint), iVel,
+								 input.getLambda ()).miss ();
 		else {
 			Vector3d normal = getNormal (iPoint);
 			oVel.scaleAdd (-2.0 * normal.dot (iVel), normal, iVel);
@@ -161,28 +170,27 @@ public class Toroid implements ConicSection {
 		toTorus.transform (pos);
 		toTorus.transform (vel);
 
-		/** Mathematica does wonders.  Here are the 
-		 * coefficients for our 4th order polynomial in t
-		 */
+		double t = (newton) ? newtonTime (pos, vel) : Double.NaN;
+		if (!Double.isNaN (t))
+			this.time = t;
+		else
+			quarticTime (pos, vel);
 
+		// Propagate the LightRay till intersect
+		// this = s*t1 + t2).;
+		Point3d intersection = new Point3d ();
+		intersection.scaleAdd (this.time,
+							   input.getVelocity (),
+							   input.getPosition ());
+		return intersection;
+	} // end of intersect ******************************************************
+
+	/** Finds the time of intersection from all the roots of the quartic */
+	private void quarticTime (Point3d pos, Vector3d vel) {
+		quartics++;
 		double [] c = {0,0,0,0,0};
 		double [] s = {-1,-1,-1,-1};
-
-		double gp = vel.x * pos.x + vel.y * pos.y + vel.z * pos.z;
-		double pp = pos.x * pos.x + pos.y * pos.y + pos.z * pos.z;
-		double g2 = pos.x*vel.x*pos.y*vel.y +
-			pos.x*vel.x*pos.z*vel.z + 
-			pos.y*vel.y*pos.z*vel.z;
-//		double tz = vel.z * pos.z;
-		c[4] = 1.0;
-		c[3] = 4.0 * gp;
-		c[2] = 2.0 * ( -b*b+ a*a*(2*vel.x*vel.x - 1.0) + 4 * g2
-					   + vel.x*vel.x * (2*pos.x*pos.x + pp)
-					   + vel.y*vel.y * (2*pos.y*pos.y + pp)
-					   + vel.z*vel.z * (2*pos.z*pos.z + pp) );
-		c[1] = 4.0 * ( gp * (pp - b*b) + a*a * (2 * vel.x * pos.x - gp) );
-		c[0] = a*a*a*a + Math.pow (b*b - pp, 2.0) - 2 * a * a *
-			(b*b + pp - 2 * pos.x * pos.x);
+		coefficients (pos, vel, c);
 
 		/** use GraphGem's Solve Quartic to find roots */
 		int num = new Roots ().SolveQuartic (c, s);
@@ -204,24 +212,109 @@ public class Toroid implements ConicSection {
 			for (int i = 0; i < num; i++)
 				if (this.time < s[i]) this.time = s[i];
 		}
+	} // end of quarticTime ****************************************************
 
-		// Propagate the LightRay till intersect
-		// this = s*t1 + t2).;
-		Point3d intersection = new Point3d ();
-		intersection.scaleAdd (this.time,
-							   input.getVelocity (),
-							   input.getPosition ());
-		return intersection;
-	} // end of intersect ******************************************************
+	/** 
+	 * Mathematica does wonders.  Here are the coefficients c[0..4]
+	 * of our 4th order polynomial in t, for the LightRay at pos with
+	 * velocity vel (in torus coordinates)
+	 */
+	private void coefficients (Point3d pos, Vector3d vel, double [] c) {
+		double gp = vel.x * pos.x + vel.y * pos.y + vel.z * pos.z;
+		double pp = pos.x * pos.x + pos.y * pos.y + pos.z * pos.z;
+		double g2 = pos.x*vel.x*pos.y*vel.y +
+			pos.x*vel.x*pos.z*vel.z + 
+			pos.y*vel.y*pos.z*vel.z;
+		double bp = b*b - pp;
+		c[4] = 1.0;
+		c[3] = 4.0 * gp;
+		c[2] = 2.0 * ( -b*b+ a*a*(2*vel.x*vel.x - 1.0) + 4 * g2
+					   + vel.x*vel.x * (2*pos.x*pos.x + pp)
+					   + vel.y*vel.y * (2*pos.y*pos.y + pp)
+					   + vel.z*vel.z * (2*pos.z*pos.z + pp) );
+		c[1] = 4.0 * ( gp * (pp - b*b) + a*a * (2 * vel.x * pos.x - gp) );
+		c[0] = a*a*a*a + bp * bp - 2 * a * a *
+			(b*b + pp - 2 * pos.x * pos.x);
+	}
+
+	/**
+	 * Fast path of intersect.  Over the aperture the toroid is nearly
+	 * the sphere osculating it at the vertex (radius the harmonic mean
+	 * of b and a+b).  The far intersection with that sphere seeds a
+	 * few Newton steps on the quartic, taken about the seed so that
+	 * the polynomial is well conditioned.  The root must be the
+	 * largest one, as in quarticTime: all the derivatives of the
+	 * quartic are positive there.  Returns NaN when any of this fails.
+	 */
+	private double newtonTime (Point3d pos, Vector3d vel) {
+		newtons++;
+		double R  = 2.0 / (1.0 / b + 1.0 / (a + b));
+		double dx = pos.x;
+		double dy = pos.y;
+		double dz = pos.z + (a + b) - R;
+		double B  = dx * vel.x + dy * vel.y + dz * vel.z;
+		double C  = dx * dx + dy * dy + dz * dz - R * R;
+		double D  = B * B - C;
+		if (D < 0) return fallback ();
+		double t0 = (B < 0) ? -B + Math.sqrt (D) : C / (-B - Math.sqrt (D));
+		if (Double.isNaN (t0) || Double.isInfinite (t0)) return fallback ();
+
+		Point3d p = new Point3d ();
+		p.scaleAdd (t0, vel, pos);
+		double [] c = {0,0,0,0,0};
+		coefficients (p, vel, c);
+		double u = 0, du = 0;
+		for (int i = 1; i <= MAX_NEWTON; i++) {
+			double f  = (((u + c[3]) * u + c[2]) * u + c[1]) * u + c[0];
+			double fp = ((4 * u + 3 * c[3]) * u + 2 * c[2]) * u + c[1];
+			if (!(fp > 0)) return fallback ();
+			du = f / fp;
+			u -= du;
+			iterations++;
+			if (Math.abs (du) <= NEWTON_TOL * (1.0 + Math.abs (t0 + u)))
+				break;
+		}
+		if (!(Math.abs (du) <= NEWTON_TOL * (1.0 + Math.abs (t0 + u))))
+			return fallback ();
+		// no root beyond u: the first three derivatives are positive
+		double d1 = ((4 * u + 3 * c[3]) * u + 2 * c[2]) * u + c[1];
+		double d2 = (6 * u + 3 * c[3]) * u + c[2];
+		double d3 = 4 * u + c[3];
+		if (!(d1 > 0 && d2 > 0 && d3 > 0)) return fallback ();
+		double t = t0 + u;
+		if (!(t > TIME_LIMIT)) return fallback ();
+		return t;
+	} // end of newtonTime *****************************************************
+
+	private double fallback () {
+		fallbacks++;
+		return Double.NaN;
+	}
+
+	/** Use the Newton fast path of intersect (on by default) */
+	public void setNewton (boolean b) { this.newton = b; }
+	/** Number of intersections tried with the Newton fast path */
+	public long getNewtonCount () { return newtons; }
+	/** Number of Newton steps taken so far */
+	public long getNewtonIterations () { return iterations; }
+	/** Number of times the Newton fast path fell back to the quartic */
+	public long getFallbackCount () { return fallbacks; }
+	/** Number of intersections solved with the full quartic */
+	public long getQuarticCount () { return quartics; }
+	/** Resets the counters above */
+	public void resetCounters () {
+		newtons = iterations = fallbacks = quartics = 0;
+	}
 
 	/** Checks the Solution of Time: returns true for a match */
 	private double checkTime (double [] c, double sol) {
 		if (sol == 0.0 || sol < TIME_LIMIT)
 			return CHK_MAX;
 
-		double sum = 0.0;
-		for (int i = 0; i <= 4; i++)
-			sum += c[i] * Math.pow (sol, i);
+		// Horner
+		double sum = c[4];
+		for (int i = 3; i >= 0; i--)
+			sum = sum * sol + c[i];
 		return sum;
 	}
 
@@ -0,0 +1,171 @@
+package jray;
+
+import javax.vecmath.Point3d;
+
+/**
+ * ZernikeSag: a conic plus Zernike polynomials over a normalization
+ * radius R
+ *   z - z0 = c r^2 / (1 + sqrt (1 - (1 + K) c^2 r^2)) +
+ *            sum_j Z[j-1] Z_j (x / R, y / R)
+ * in Noll's order and normalization (orthonormal over the unit disk):
+ * Z_1 piston, Z_2, Z_3 tilts, Z_4 defocus, Z_5, Z_6 astigmatism,
+ * Z_7, Z_8 coma, Z_11 spherical ...  The terms of even j go with
+ * cos (m theta), those of odd j with sin (m theta).  Each term is
+ * evaluated as r^m P (r^2) times the real or imaginary part of
+ * (x + i y)^m, so there is nothing singular at the vertex.
+ */
+public class ZernikeSag extends SagSurface {
+
+	/** coefficients (mm) of Z_1, Z_2, ... */
+	protected double [] Z;
+	/** normalization radius (mm) */
+	protected double R;
+	// n, m, sin (odd j), normalization and P (r^2) of each term
+	private int [] n, m;
+	private boolean [] sin;
+	private double [][] P;
+
+	/** ZernikeSag of vertex v, vertex curvature c, conic constant K
+	 * and coefficients Z over the radius R, of diameter s */
+	public ZernikeSag (Point3d v, double c, double K, double [] Z,
+					   double R, double s) {
+		this (v, c, K, Z, R, s, 0);
+	}
+	/** with a hole in the center of this ConicSection */
+	public ZernikeSag (Point3d v, double c, double K, double [] Z,
+					   double R, double s, double h) {
+		super (v, c, K, s, h);
+		if (!(R > 0))
+			throw new RuntimeException ("ZernikeSag: the normalization " +
+										"radius should be positive");
+		this.Z = Z.clone ();
+		this.R = R;
+		n = new int [Z.length];
+		m = new int [Z.length];
+		sin = new boolean [Z.length];
+		P = new double [Z.length][];
+		for (int i = 0; i < Z.length; i++) {
+			int j = i + 1;
+			int nn = (int) Math.floor ((Math.sqrt (8.0 * j - 7.0) - 1.0) / 2.0);
+			int p = j - nn * (nn + 1) / 2;
+			int k = nn % 2;
+			n[i] = nn;
+			m[i] = 2 * ((p + k) / 2) - k;
+			sin[i] = (m[i] != 0) && (j % 2 == 1);
+			P[i] = radial (nn, m[i]);
+		}
+	}
+
+	/** n! */
+	private static double factorial (int n) {
+		double f = 1;
+		for (int i = 2; i <= n; i++) f *= i;
+		return f;
+	}
+
+	/**
+	 * Normalized radial polynomial of Z (n, m) over rho^m, as the
+	 * coefficients of (rho^2)^e, e = 0 ... (n - m) / 2
+	 */
+	private static double [] radial (int n, int m) {
+		int h = (n - m) / 2;
+		double norm = (m == 0) ? Math.sqrt (n + 1.0) : Math.sqrt (2.0 * (n + 1.0));
+		double [] p = new double [h + 1];
+		for (int k = 0; k <= h; k++)
+			p[h - k] = norm * (((k % 2 == 0) ? 1 : -1) * factorial (n - k) /
+							   (factorial (k) * factorial ((n + m) / 2 - k) *
+								factorial (h - k)));
+		return p;
+	}
+
+	/** the sum of the Zernike terms */
+	protected double departure (double x, double y, double [] d) {
+		double u = x / R, w = y / R;
+		double s = u * u + w * w;
+		double sum = 0, du = 0, dw = 0;
+		for (int i = 0; i < Z.length; i++) {
+			if (Z[i] == 0) continue;
+			// P (s) and dP/ds by Horner
+			double [] p = P[i];
+			double f = 0, df = 0;
+			for (int e = p.length - 1; e >= 0; e--) {
+				df = df * s + f;
+				f = f * s + p[e];
+			}
+			// (u + i w)^m and (u + i w)^(m-1)
+			double re = 1, im = 0, re1 = 0, im1 = 0;
+			for (int k = 0; k < m[i]; k++) {
+				re1 = re;
+				im1 = im;
+				re = re1 * u - im1 * w;
+				im = re1 * w + im1 * u;
+			}
+			double T, Tu, Tw;
+			if (m[i] == 0) {
+				T = 1; Tu = 0; Tw = 0;
+			} else if (sin[i]) {
+				T = im; Tu = m[i] * im1; Tw = m[i] * re1;
+			} else {
+				T = re; Tu = m[i] * re1; Tw = -m[i] * im1;
+			}
+			sum += Z[i] * f * T;
+			du  += Z[i] * (2.0 * u * df * T + f * Tu);
+			dw  += Z[i] * (2.0 * w * df * T + f * Tw);
+		}
+		d[0] += du / R;
+		d[1] += dw / R;
+		return sum;
+	}
+
+	/** coefficient of Z_j (Noll) */
+	public double getCoefficient (int j) { return Z[j - 1]; }
+	/** number of coefficients */
+	public int numCoefficients () { return Z.length; }
+
+	/** true if on the z-axis with only the terms of m = 0 */
+	public boolean isCoaxial () {
+		if (!super.isCoaxial ()) return false;
+		for (int i = 0; i < Z.length; i++)
+			if (Z[i] != 0 && m[i] != 0) return false;
+		return true;
+	}
+
+	/** coefficients of r^2 and r^4 of the terms of m = 0 */
+	private double [] symmetric () {
+		double a1 = 0, a2 = 0;
+		for (int i = 0; i < Z.length; i++)
+			if (m[i] == 0) {
+				if (P[i].length > 1) a1 += Z[i] * P[i][1] / (R * R);
+				if (P[i].length > 2) a2 += Z[i] * P[i][2] / (R * R * R * R);
+			}
+		return new double [] {a1, a2};
+	}
+	/** z of the vertex, with the constant of the terms of m = 0
+	 * (piston, and Z_4, Z_11 ... at r = 0) */
+	public double getVertexZ () {
+		return vertex.z + departure (0, 0, new double [2]);
+	}
+	/** curvature at the vertex, with the defocus of the terms of m = 0 */
+	public double getVertexCurvature () { return c + 2.0 * symmetric ()[0]; }
+	/**
+	 * Conic constant of the conic with the same sag as the terms of
+	 * m = 0 to the fourth order: the one the third order aberrations
+	 * (Seidel) see.  That of the base conic if the vertex is flat.
+	 */
+	public double getConicConstant () {
+		double [] a = symmetric ();
+		double cv = c + 2.0 * a[0];
+		if (cv == 0) return K;
+		return 8.0 * ((1.0 + K) * c * c * c / 8.0 + a[1]) / (cv * cv * cv) - 1.0;
+	}
+
+	/** overrides toString() */
+	public String toString () {
+		StringBuffer s = new StringBuffer ("ZernikeSag with vertex=" + vertex +
+										   ", c=" + c + ", K=" + K + ", R=" +
+										   R + ", Z=(");
+		for (int i = 0; i < Z.length; i++)
+			s.append (((i > 0) ? ", " : "") + Z[i]);
+		return s.append ("), D=" + size + ", hole=" + hole).toString ();
+	}
+} // end of Class ZernikeSag ***************************************************
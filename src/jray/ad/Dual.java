@@ -0,0 +1,127 @@
+package jray.ad;
+
+/**
+ * A dual number: a value and its derivatives with respect to n
+ * parameters.  The arithmetic carries the derivatives along by the
+ * chain rule (forward-mode automatic differentiation), so one
+ * evaluation gives a result and its whole gradient, without the step
+ * size and the extra evaluations of finite differences.
+ * <p>
+ * Duals are not modified: every operation returns a new one.
+ */
+public final class Dual {
+
+	final double v;
+	final double [] d;
+
+	/** value v with derivatives d (not copied) */
+	Dual (double v, double [] d) {
+		this.v = v;
+		this.d = d;
+	}
+
+	/** A constant v, with n (zero) derivatives */
+	public static Dual constant (double v, int n) {
+		return new Dual (v, new double [n]);
+	}
+	/** Parameter i of n, with value v */
+	public static Dual variable (double v, int i, int n) {
+		double [] d = new double [n];
+		d[i] = 1.0;
+		return new Dual (v, d);
+	}
+
+	/** returns the value */
+	public double value () { return v; }
+	/** returns the derivative with respect to parameter i */
+	public double derivative (int i) { return d[i]; }
+	/** returns the number of parameters */
+	public int size () { return d.length; }
+	/** returns a copy of the derivatives */
+	public double [] gradient () { return d.clone (); }
+
+	private void check (Dual b) {
+		if (b.d.length != d.length)
+			throw new RuntimeException ("Dual: " + d.length + " and " +
+										b.d.length + " parameters");
+	}
+
+	/** this + b */
+	public Dual add (Dual b) {
+		check (b);
+		double [] r = new double [d.length];
+		for (int i = 0; i < r.length; i++) r[i] = d[i] + b.d[i];
+		return new Dual (v + b.v, r);
+	}
+	/** this + b */
+	public Dual add (double b) { return new Dual (v + b, d); }
+	/** this - b */
+	public Dual sub (Dual b) {
+		check (b);
+		double [] r = new double [d.length];
+		for (int i = 0; i < r.length; i++) r[i] = d[i] - b.d[i];
+		return new Dual (v - b.v, r);
+	}
+	/** this - b */
+	public Dual sub (double b) { return new Dual (v - b, d); }
+	/** this * b */
+	public Dual mul (Dual b) {
+		check (b);
+		double [] r = new double [d.length];
+		for (int i = 0; i < r.length; i++) r[i] = d[i] * b.v + v * b.d[i];
+		return new Dual (v * b.v, r);
+	}
+	/** this * b */
+	public Dual mul (double b) {
+		double [] r = new double [d.length];
+		for (int i = 0; i < r.length; i++) r[i] = d[i] * b;
+		return new Dual (v * b, r);
+	}
+	/** this / b */
+	public Dual div (Dual b) {
+		check (b);
+		double q = v / b.v;
+		double [] r = new double [d.length];
+		for (int i = 0; i < r.length; i++) r[i] = (d[i] - q * b.d[i]) / b.v;
+		return new Dual (q, r);
+	}
+	/** this / b */
+	public Dual div (double b) { return mul (1.0 / b); }
+	/** 1 / this */
+	public Dual inv () { return chain (1.0 / v, -1.0 / (v * v)); }
+	/** -this */
+	public Dual neg () { return mul (-1.0); }
+	/** this * this */
+	public Dual square () { return mul (this); }
+
+	/** chain rule: f(this), with f'(this) = df */
+	private Dual chain (double f, double df) {
+		double [] r = new double [d.length];
+		for (int i = 0; i < r.length; i++) r[i] = df * d[i];
+		return new Dual (f, r);
+	}
+	/** square root (infinite derivatives at 0) */
+	public Dual sqrt () {
+		double s = Math.sqrt (v);
+		return chain (s, 0.5 / s);
+	}
+	/** arc sine */
+	public Dual asin () {
+		return chain (Math.asin (v), 1.0 / Math.sqrt (1.0 - v * v));
+	}
+	/** absolute value (the derivatives of the positive side at 0) */
+	public Dual abs () { return (v < 0) ? neg () : this; }
+
+	/** a.b of two 3 vectors */
+	public static Dual dot (Dual [] a, Dual [] b) {
+		return a[0].mul (b[0]).add (a[1].mul (b[1])).add (a[2].mul (b[2]));
+	}
+
+	/** overrides toString() */
+	public String toString () {
+		StringBuffer s = new StringBuffer (v + " [");
+		for (int i = 0; i < d.length; i++)
+			s.append ((i == 0) ? "" : ", ").append (d[i]);
+		return s.append ("]").toString ();
+	}
+} // end of Class Dual *********************************************************
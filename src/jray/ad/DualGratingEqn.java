@@ -0,0 +1,63 @@
+package jray.ad;
+
+/**
+ * The grating equation of GratingEqn on Duals: the diffracted
+ * direction and its derivatives with respect to the groove spacing,
+ * the groove direction, the normal and the incident direction.
+ */
+public class DualGratingEqn {
+	/** DualGratingEqn is a static class */
+	public DualGratingEqn () {}
+
+	/**
+	 * Same as GratingEqn.grating: transform so that n is along y and
+	 * g along z, shift the x-component of the incident vector by the
+	 * grating equation, keep its z-component and normalize.
+	 *
+	 * @param	m	order of diffraction desired
+	 * @param	l	wavelength of light (in some units)
+	 * @param	d   distance between grooves on grating (same units as l)
+	 * @param	g	direction of the grooves (not normalized)
+	 * @param 	n	normal at the point of reflection (not normalized)
+	 * @param	i	incident vector at the grating
+	 * @return	outgoing diffracted vector in order desired.
+	 */
+	public static Dual [] grating (double m, double l, Dual d,
+								   Dual [] g, Dual [] n, Dual [] i) {
+		Dual s = Dual.dot (n, n).sqrt ();
+		Dual nx = n[0].div (s), ny = n[1].div (s), nz = n[2].div (s);
+		s = Dual.dot (g, g).sqrt ();
+		Dual gx = g[0].div (s), gy = g[1].div (s), gz = g[2].div (s);
+
+		// rows of the rotation: (r00 r01 r02) (r10 r11 r12) (gx gy gz)
+		Dual a = gz.square ().neg ().add (1.0).sqrt ();
+		Dual xn1 = nx.mul (gy).sub (ny.mul (gx)).div (a);
+		Dual xn2 = gz.mul (nx.mul (gx).add (ny.mul (gy))).div (a)
+			.sub (a.mul (nz));
+		Dual r00 = xn2.mul (gy).sub (xn1.mul (gz).mul (gx)).div (a);
+		Dual r01 = xn2.mul (gx).neg ().sub (xn1.mul (gy).mul (gz)).div (a);
+		Dual r02 = xn1.mul (a);
+		Dual r10 = xn1.mul (gy).add (xn2.mul (gz).mul (gx)).div (a);
+		Dual r11 = xn1.mul (gx).neg ().add (xn2.mul (gy).mul (gz)).div (a);
+		Dual r12 = a.mul (xn2).neg ();
+
+		Dual xx = r00.mul (i[0]).add (r01.mul (i[1])).add (r02.mul (i[2]));
+		Dual xy = r10.mul (i[0]).add (r11.mul (i[1])).add (r12.mul (i[2]));
+		Dual xz = gx.mul (i[0]).add (gy.mul (i[1])).add (gz.mul (i[2]));
+		s = xx.square ().add (xy.square ()).add (xz.square ()).sqrt ();
+		xx = xx.div (s);
+		xz = xz.div (s);
+
+		// grooves pointing the other way shift x the other way
+		Dual ml = d.inv ().mul (m * l);
+		Dual ox = (xx.v > 0) ? xx.sub (ml) : xx.add (ml);
+		Dual oz = xz;
+		Dual oy = ox.square ().add (oz.square ()).neg ().add (1.0).sqrt ();
+
+		// back with the transpose
+		return new Dual [] {
+			r00.mul (ox).add (r10.mul (oy)).add (gx.mul (oz)),
+			r01.mul (ox).add (r11.mul (oy)).add (gy.mul (oz)),
+			r02.mul (ox).add (r12.mul (oy)).add (gz.mul (oz)) };
+	}
+} // end of Class DualGratingEqn ***********************************************
@@ -0,0 +1,59 @@
+package jray.ad;
+
+import javax.vecmath.Vector3d;
+
+import jray.LightRay;
+
+/**
+ * The position and velocity of a LightRay as Duals, with the same
+ * arithmetic as LightRay: propagation in a straight line and
+ * reflection about a normal.
+ */
+public class DualRay {
+
+	/** position and (unit) velocity */
+	Dual [] p = new Dual [3], v = new Dual [3];
+	double lambda;
+
+	/** A DualRay starting as the LightRay l, independent of the n
+	 * parameters */
+	public DualRay (LightRay l, int n) {
+		Vector3d pos = l.getPosition (), vel = l.getVelocity ();
+		p[0] = Dual.constant (pos.x, n);
+		p[1] = Dual.constant (pos.y, n);
+		p[2] = Dual.constant (pos.z, n);
+		v[0] = Dual.constant (vel.x, n);
+		v[1] = Dual.constant (vel.y, n);
+		v[2] = Dual.constant (vel.z, n);
+		this.lambda = l.getLambda ();
+	}
+
+	/** returns the position */
+	public Dual [] getPosition () { return p.clone (); }
+	/** returns the velocity */
+	public Dual [] getVelocity () { return v.clone (); }
+	/** returns the wavelength (nm) */
+	public double getLambda () { return lambda; }
+
+	/** propagate this DualRay by a time t */
+	public void propagate (Dual t) {
+		for (int i = 0; i < 3; i++)
+			p[i] = p[i].add (t.mul (v[i]));
+	}
+
+	/** reflect the velocity about the normal n (not normalized) */
+	public void reflect (Dual [] n) {
+		Dual k = Dual.dot (v, n).div (Dual.dot (n, n)).mul (2.0);
+		for (int i = 0; i < 3; i++)
+			v[i] = v[i].sub (k.mul (n[i]));
+	}
+
+	/** set the velocity (a unit vector) */
+	public void setVelocity (Dual [] o) { v = o.clone (); }
+
+	/** The values as a LightRay */
+	public LightRay getValue () {
+		return new LightRay (p[0].v, p[1].v, p[2].v,
+							 v[0].v, v[1].v, v[2].v, lambda);
+	}
+} // end of Class DualRay ******************************************************
@@ -0,0 +1,130 @@
+package jray.ad;
+
+import jray.ConicSection;
+import jray.Plane;
+import jray.PlaneDetector;
+import jray.RotationalSurface;
+import jray.SphericDetector;
+
+/**
+ * A coaxial conic of revolution on Duals, as seen by Paraxial and
+ * Seidel: vertex (x0, y0, z0), vertex curvature c and conic constant
+ * K.  With W = z - z0 and r the distance from the vertex, the surface
+ * is
+ *   c (r^2 + (1 + K) W^2) - 2 W = 0
+ * which covers the paraboloids, hyperboloids, ellipsoids, spheres
+ * and planes (c = 0) of jray.
+ */
+class DualSurface {
+
+	ConicSection optic;
+	Dual x0, y0, z0, c, K;
+	double hole, limit;			// radii of the hole and of the edge
+	boolean detector, spheric;
+
+	/** The Duals of the RotationalSurface r, with n parameters */
+	DualSurface (RotationalSurface r, int n) {
+		this.optic = r;
+		x0 = Dual.constant (0.0, n);
+		y0 = Dual.constant (0.0, n);
+		z0 = Dual.constant (r.getVertexZ (), n);
+		c  = Dual.constant (r.getVertexCurvature (), n);
+		K  = Dual.constant (r.getConicConstant (), n);
+		hole = r.getHoleSize () / 2.0;
+		limit = (r instanceof Plane) ? r.getSize () / 2.0 :
+			r.getSize () * ConicSection.SIZE_FACTOR / 2.0;
+		detector = (r instanceof PlaneDetector || r instanceof SphericDetector);
+		spheric = (r instanceof SphericDetector);
+	}
+
+	/**
+	 * Takes the ray to this surface and reflects it, the way the
+	 * ConicSections do: a ray going backwards stays where it is, and
+	 * one through the hole or past the edge goes on unchanged.
+	 * Returns false if the ray misses the surface altogether.
+	 */
+	boolean reflect (DualRay l) {
+		Dual [] t = new Dual [1];
+		Dual [] h = hit (l, t);
+		if (h == null) return false;
+		l.propagate (t[0]);
+		if (t[0].v == 0) return true;
+		double r = Math.hypot (h[0].v, h[1].v);
+		if (r > limit || r < hole) return true;
+		Dual cK = c.mul (K.add (1.0));
+		l.reflect (new Dual [] {c.mul (h[0]), c.mul (h[1]),
+								cK.mul (h[2]).sub (1.0)});
+		return true;
+	}
+
+	/**
+	 * The hit of the ray, relative to the vertex (X, Y, W), with the
+	 * time to it in t[0] (0 if it would go backwards); null if the ray
+	 * misses the surface.  The times are the roots of
+	 *   A t^2 + 2 b t + C = 0:  -q / A and -C / q,  q = b + sign(b) sqrt(b^2 - A C)
+	 * (-C / q alone for a plane) and the hit is the first one on the
+	 * sheet through the vertex, where (1 + K) c W < 1: the other sheet
+	 * of a hyperboloid is not a mirror.
+	 */
+	Dual [] hit (DualRay l, Dual [] t) {
+		Dual X = l.p[0].sub (x0), Y = l.p[1].sub (y0), W = l.p[2].sub (z0);
+		Dual vx = l.v[0], vy = l.v[1], vz = l.v[2];
+		Dual k1 = K.add (1.0);
+		Dual A = c.mul (vx.square ().add (vy.square ())
+						.add (k1.mul (vz.square ())));
+		Dual b = c.mul (X.mul (vx).add (Y.mul (vy))
+						.add (k1.mul (W).mul (vz))).sub (vz);
+		Dual C = c.mul (X.square ().add (Y.square ())
+						.add (k1.mul (W.square ()))).sub (W.mul (2.0));
+		Dual disc = b.square ().sub (A.mul (C));
+		if (disc.v < 0) return null;
+		Dual q = (b.v >= 0) ? b.add (disc.sqrt ()) : b.sub (disc.sqrt ());
+		Dual [] roots = {(q.v == 0) ? null : C.div (q).neg (),
+						 (A.v == 0) ? null : q.div (A).neg ()};
+		Dual best = null;
+		boolean behind = false;
+		for (int i = 0; i < 2; i++) {
+			Dual r = roots[i];
+			if (r == null || Double.isNaN (r.v) ||
+				k1.v * c.v * (W.v + r.v * vz.v) >= 1.0)
+				continue;
+			if (r.v < ConicSection.TIME_LIMIT)
+				behind = true;
+			else if (best == null || r.v < best.v)
+				best = r;
+		}
+		if (best == null) {
+			if (!behind) return null;
+			best = Dual.constant (0.0, c.size ());
+		}
+		t[0] = best;
+		return new Dual [] {X.add (best.mul (vx)), Y.add (best.mul (vy)),
+							W.add (best.mul (vz))};
+	}
+
+	/**
+	 * The position of the ray on this Detector, as on its
+	 * DetectorDisplay: the hit relative to the vertex on a
+	 * PlaneDetector, the arc along the sphere on a SphericDetector.
+	 * Returns null if the ray misses the Detector.
+	 */
+	Dual [] detect (DualRay l) {
+		Dual [] t = new Dual [1];
+		Dual [] h = hit (l, t);
+		if (h == null || t[0].v == 0) return null;
+		l.propagate (t[0]);
+		Dual x = h[0], y = h[1];
+		if (spheric) {
+			Dual rho = x.square ().add (y.square ()).sqrt ();
+			if (rho.v > 0) {
+				Dual ac = c.abs ();
+				Dual s = rho.mul (ac).asin ().div (ac);
+				x = s.mul (x).div (rho);
+				y = s.mul (y).div (rho);
+			}
+		}
+		if (Math.abs (h[0].v) > limit || Math.abs (h[1].v) > limit)
+			return null;
+		return new Dual [] {x, y};
+	}
+} // end of Class DualSurface **************************************************
@@ -0,0 +1,173 @@
+package jray.ad;
+
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+import jray.*;
+
+/**
+ * DualTrace traces LightRays through a Telescope on Duals, so that
+ * each position on the Detector comes with its derivatives with
+ * respect to the design parameters chosen by addParameter: the
+ * vertex positions, vertex curvatures and conic constants of the
+ * optics, and the position and radius of curvature of the Detector.
+ * One trace gives the whole Jacobian, instead of one or two traces
+ * per parameter for finite differences.
+ * <p>
+ * The Telescope must be made of coaxial RotationalSurfaces ending
+ * with a PlaneDetector or a SphericDetector.  The optics are visited
+ * in the order of the Telescope, as in Paraxial, passing straight
+ * through holes: the obstruction by the secondary is not modelled,
+ * so the LightRays should be ones which reach the Detector in an
+ * OpticBench.  An optic used more than once (the primary of a Reflex)
+ * has the same parameters each time.  Gratings are not traced; the
+ * grating equation itself is in DualGratingEqn.
+ */
+public class DualTrace {
+
+	/** Kinds of parameters of an optic */
+	public static final int VERTEX_X = 0, VERTEX_Y = 1, VERTEX_Z = 2,
+		CURVATURE = 3, CONIC = 4, RADIUS = 5;
+	/** Names of the kinds of parameters */
+	public static final String [] NAMES = {"x", "y", "z", "curvature",
+										   "conic", "radius"};
+
+	Telescope t;
+	Vector<int []> parameters = new Vector<int []> ();	// {element, kind}
+	Vector<Double> values = new Vector<Double> ();
+	DualSurface [] surfaces;
+	DualSurface detector;
+
+	/** Traces the Telescope t; the parameters are added later */
+	public DualTrace (Telescope t) {
+		this.t = t;
+		int n = t.numElements ();
+		for (int k = 0; k < n; k++) {
+			ConicSection c = t.getConicSection (k);
+			if (c instanceof Grating)
+				throw new RuntimeException ("DualTrace: Gratings are not " +
+											"traced (element " + k + ")");
+			if (c instanceof SagSurface)
+				throw new RuntimeException ("DualTrace: SagSurfaces are not " +
+											"traced (element " + k + ")");
+			if (!(c instanceof RotationalSurface) ||
+				!((RotationalSurface) c).isCoaxial ())
+				throw new RuntimeException ("DualTrace: element " + k +
+											" is not a coaxial surface of " +
+											"revolution");
+			if ((c instanceof Detector) != (k == n - 1))
+				throw new RuntimeException ("DualTrace: the Detector " +
+											"should be the last element");
+			if (c instanceof Detector && !(c instanceof PlaneDetector) &&
+				!(c instanceof SphericDetector))
+				throw new RuntimeException ("DualTrace: " + c.getClass () +
+											" is not supported");
+		}
+	}
+
+	/**
+	 * Adds the parameter kind (VERTEX_X ... RADIUS) of element and
+	 * returns its index in the derivatives.  RADIUS is the radius of
+	 * curvature 1/CURVATURE, of a SphericDetector say.
+	 */
+	public int addParameter (int element, int kind) {
+		if (element < 0 || element >= t.numElements () ||
+			kind < VERTEX_X || kind > RADIUS)
+			throw new RuntimeException ("DualTrace: no parameter " + kind +
+										" of element " + element);
+		if (kind == RADIUS && ((RotationalSurface) t.getConicSection (element))
+			.getVertexCurvature () == 0)
+			throw new RuntimeException ("DualTrace: element " + element +
+										" is flat");
+		parameters.add (new int [] {element, kind});
+		surfaces = null;
+		DualSurface s = new DualSurface ((RotationalSurface)
+										 t.getConicSection (element), 0);
+		double [] v = {s.x0.v, s.y0.v, s.z0.v, s.c.v, s.K.v, 1.0 / s.c.v};
+		values.add (v[kind]);
+		return parameters.size () - 1;
+	}
+	/** returns the value of parameter i */
+	public double getParameter (int i) { return values.get (i); }
+	/** sets the value of parameter i: the optic is traced with it
+	 * instead of its own */
+	public void setParameter (int i, double v) {
+		values.set (i, v);
+		surfaces = null;
+	}
+	/** returns the number of parameters */
+	public int numParameters () { return parameters.size (); }
+	/** returns the name of parameter i, as "element 1 z" */
+	public String getParameterName (int i) {
+		return "element " + parameters.get (i)[0] + " " +
+			NAMES[parameters.get (i)[1]];
+	}
+
+	/** The DualSurfaces of the optics, with the parameters as variables */
+	private void build () {
+		int n = t.numElements (), np = parameters.size ();
+		IdentityHashMap<ConicSection, DualSurface> made =
+			new IdentityHashMap<ConicSection, DualSurface> ();
+		surfaces = new DualSurface [n];
+		for (int k = 0; k < n; k++) {
+			ConicSection c = t.getConicSection (k);
+			if (!made.containsKey (c))
+				made.put (c, new DualSurface ((RotationalSurface) c, np));
+			surfaces[k] = made.get (c);
+		}
+		detector = surfaces[n - 1];
+		for (int i = 0; i < np; i++) {
+			DualSurface s = surfaces[parameters.get (i)[0]];
+			Dual v = Dual.variable (values.get (i), i, np);
+			switch (parameters.get (i)[1]) {
+			case VERTEX_X:  s.x0 = v; break;
+			case VERTEX_Y:  s.y0 = v; break;
+			case VERTEX_Z:  s.z0 = v; break;
+			case CURVATURE: s.c  = v; break;
+			case CONIC:     s.K  = v; break;
+			case RADIUS:    s.c  = v.inv (); break;
+			}
+		}
+	}
+
+	/**
+	 * Traces the LightRay l and returns its position (x, y) on the
+	 * Detector with the derivatives, or null if it misses an optic or
+	 * the Detector.
+	 */
+	public Dual [] trace (LightRay l) {
+		if (surfaces == null) build ();
+		DualRay r = new DualRay (l, parameters.size ());
+		for (int k = 0; k < surfaces.length - 1; k++)
+			if (!surfaces[k].reflect (r))
+				return null;
+		return detector.detect (r);
+	}
+
+	/**
+	 * The RMS radius of the spot of the LightRays about its centroid,
+	 * as DetectorDisplay.getRMSSpotSize, with its derivatives.  The
+	 * LightRays which miss are left out; null if all of them do.
+	 */
+	public Dual getRMSSpotSize (Vector<LightRay> rays) {
+		Vector<Dual []> hits = new Vector<Dual []> ();
+		for (int i = 0; i < rays.size (); i++) {
+			Dual [] h = trace (rays.get (i));
+			if (h != null) hits.add (h);
+		}
+		int n = hits.size ();
+		if (n == 0) return null;
+		Dual sx = hits.get (0)[0], sy = hits.get (0)[1];
+		for (int i = 1; i < n; i++) {
+			sx = sx.add (hits.get (i)[0]);
+			sy = sy.add (hits.get (i)[1]);
+		}
+		sx = sx.div (n);
+		sy = sy.div (n);
+		Dual rms = Dual.constant (0.0, parameters.size ());
+		for (int i = 0; i < n; i++)
+			rms = rms.add (hits.get (i)[0].sub (sx).square ())
+				.add (hits.get (i)[1].sub (sy).square ());
+		return rms.div (n).sqrt ();
+	}
+} // end of Class DualTrace ****************************************************
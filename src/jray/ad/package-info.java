@@ -0,0 +1,6 @@
+/**
+ * Forward-mode automatic differentiation of the ray trace: dual
+ * numbers carrying the derivatives with respect to design parameters
+ * through the ray arithmetic.
+ */
+package jray.ad;
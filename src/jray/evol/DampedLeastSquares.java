@@ -0,0 +1,227 @@
+package jray.evol;
+
+import java.io.PrintStream;
+import java.util.Vector;
+import java.util.concurrent.*;
+
+/**
+ * DampedLeastSquares refines a nearly good design by minimizing the
+ * sum of the squares of its Residuals (the transverse errors of the
+ * rays, say) with the Levenberg-Marquardt method: each iteration
+ * solves
+ *   (J'J + lambda diag (J'J)) dx = -J'r
+ * for the Jacobian J of the residuals r, and lambda goes down by 10
+ * when the step helps, up by 10 when it does not.  Near the minimum
+ * this converges in a few tens of iterations, where a population
+ * method would trace thousands of designs.
+ * <p>
+ * The Jacobian is exact for JacobianResiduals (DualSpotResiduals),
+ * and central finite differences otherwise, evaluated on a pool of
+ * threads.  A lost ray (NaN residual) counts as lost, a residual of
+ * setLostPenalty, without derivatives.
+ */
+public class DampedLeastSquares {
+
+	Residuals residuals;
+	double [] x, r;
+	double cost;					// sum of squares
+	double [] step;					// finite difference steps
+	int nThreads = Runtime.getRuntime ().availableProcessors ();
+	int maxIterations = 50;
+	double tolerance = 1e-6;
+	double lost = 1.0;
+	double lambda = 1e-3;
+	int iterations = 0, evaluations = 0;
+	PrintStream out = null;
+
+	/** Minimizes the Residuals r, starting from x0 */
+	public DampedLeastSquares (Residuals r, double [] x0) {
+		if (x0.length != r.numParameters ())
+			throw new RuntimeException ("DampedLeastSquares: " + x0.length +
+										" values for " + r.numParameters () +
+										" parameters");
+		this.residuals = r;
+		this.x = x0.clone ();
+	}
+
+	/** Number of threads for the finite differences */
+	public void setThreads (int n) { this.nThreads = n; }
+	/** Steps of the finite differences (default 1e-6 |x|) */
+	public void setSteps (double [] h) { this.step = h.clone (); }
+	/** Most iterations of run () */
+	public void setMaxIterations (int n) { this.maxIterations = n; }
+	/** Stop when an iteration lowers the cost by less than this
+	 * fraction */
+	public void setTolerance (double t) { this.tolerance = t; }
+	/** Residual of a lost ray (NaN) */
+	public void setLostPenalty (double p) { this.lost = p; }
+	/** Initial damping */
+	public void setDamping (double l) { this.lambda = l; }
+	/** Print the progress to out (null for none) */
+	public void setOutput (PrintStream out) { this.out = out; }
+
+	/** Residuals of x, with the lost rays at the penalty */
+	private double [] evaluate (double [] x) {
+		evaluations++;
+		double [] r = residuals.evaluate (x);
+		for (int i = 0; i < r.length; i++)
+			if (Double.isNaN (r[i]))
+				r[i] = lost;
+		return r;
+	}
+	private static double sumSquares (double [] r) {
+		double s = 0;
+		for (int i = 0; i < r.length; i++)
+			s += r[i] * r[i];
+		return s;
+	}
+
+	/** Runs the iterations, returns the best parameters found */
+	public double [] run () throws InterruptedException {
+		r = evaluate (x);
+		cost = sumSquares (r);
+		if (out != null)
+			out.println ("DLS start: rms " + getRMS ());
+		int n = x.length;
+		for (iterations = 0; iterations < maxIterations; ) {
+			iterations++;
+			double [][] J = jacobian ();
+			double [][] A = new double [n][n];
+			double [] g = new double [n];
+			for (int i = 0; i < r.length; i++)
+				for (int j = 0; j < n; j++) {
+					g[j] += J[i][j] * r[i];
+					for (int k = 0; k <= j; k++)
+						A[j][k] += J[i][j] * J[i][k];
+				}
+			for (int j = 0; j < n; j++)
+				for (int k = 0; k < j; k++)
+					A[k][j] = A[j][k];
+
+			// Raise the damping until a step lowers the cost
+			boolean better = false;
+			double old = cost;
+			while (!better && lambda < 1e12) {
+				double [][] M = new double [n][n];
+				double [] b = new double [n];
+				for (int j = 0; j < n; j++) {
+					for (int k = 0; k < n; k++)
+						M[j][k] = A[j][k];
+					M[j][j] += lambda * ((A[j][j] > 0) ? A[j][j] : 1.0);
+					b[j] = -g[j];
+				}
+				double [] dx = solve (M, b);
+				double [] xt = new double [n];
+				for (int j = 0; j < n; j++)
+					xt[j] = x[j] + ((dx == null) ? 0.0 : dx[j]);
+				double [] rt = (dx == null) ? null : evaluate (xt);
+				double ct = (rt == null) ? Double.NaN : sumSquares (rt);
+				if (ct < cost) {
+					x = xt;
+					r = rt;
+					cost = ct;
+					lambda = Math.max (lambda / 10.0, 1e-12);
+					better = true;
+				} else
+					lambda *= 10.0;
+			}
+			if (out != null)
+				out.println ("DLS iteration " + iterations + ": rms " +
+							 getRMS () + ", lambda " + lambda);
+			if (!better || (old - cost) <= tolerance * old)
+				break;
+		}
+		return x.clone ();
+	} // end of run ************************************************************
+
+	/** The Jacobian at x: exact, or central differences in parallel */
+	private double [][] jacobian () throws InterruptedException {
+		if (residuals instanceof JacobianResiduals) {
+			double [][] J = ((JacobianResiduals) residuals).jacobian (x);
+			double [] r0 = residuals.evaluate (x);
+			for (int i = 0; i < J.length; i++)
+				if (Double.isNaN (r0[i]))
+					J[i] = new double [x.length];
+			return J;
+		}
+		final int n = x.length;
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		Vector<Future<double []>> jobs = new Vector<Future<double []>> ();
+		final double [] h = new double [n];
+		for (int j = 0; j < n; j++) {
+			h[j] = (step != null) ? step[j] :
+				1e-6 * ((x[j] != 0) ? Math.abs (x[j]) : 1.0);
+			for (int s = -1; s <= 1; s += 2) {
+				final double [] xs = x.clone ();
+				xs[j] += s * h[j];
+				jobs.add (pool.submit (new Callable<double []> () {
+						public double [] call () {
+							return residuals.evaluate (xs);
+						}
+					}));
+			}
+		}
+		pool.shutdown ();
+		double [][] J = new double [r.length][n];
+		try {
+			for (int j = 0; j < n; j++) {
+				double [] rm = jobs.get (2 * j).get ();
+				double [] rp = jobs.get (2 * j + 1).get ();
+				evaluations += 2;
+				for (int i = 0; i < r.length; i++) {
+					double d = (rp[i] - rm[i]) / (2.0 * h[j]);
+					J[i][j] = (Double.isNaN (d)) ? 0.0 : d;
+				}
+			}
+		} catch (ExecutionException e) {
+			pool.shutdownNow ();
+			throw new RuntimeException ("DampedLeastSquares: " + e.getCause (),
+										e.getCause ());
+		}
+		return J;
+	} // end of jacobian *******************************************************
+
+	/** Solves M x = b by Gaussian elimination with partial pivoting
+	 * (M and b are overwritten); null if M is singular */
+	static double [] solve (double [][] M, double [] b) {
+		int n = b.length;
+		for (int c = 0; c < n; c++) {
+			int p = c;
+			for (int i = c + 1; i < n; i++)
+				if (Math.abs (M[i][c]) > Math.abs (M[p][c]))
+					p = i;
+			if (M[p][c] == 0 || Double.isNaN (M[p][c]))
+				return null;
+			double [] t = M[c]; M[c] = M[p]; M[p] = t;
+			double s = b[c]; b[c] = b[p]; b[p] = s;
+			for (int i = c + 1; i < n; i++) {
+				double f = M[i][c] / M[c][c];
+				for (int k = c; k < n; k++)
+					M[i][k] -= f * M[c][k];
+				b[i] -= f * b[c];
+			}
+		}
+		double [] x = new double [n];
+		for (int i = n - 1; i >= 0; i--) {
+			double s = b[i];
+			for (int k = i + 1; k < n; k++)
+				s -= M[i][k] * x[k];
+			x[i] = s / M[i][i];
+		}
+		return x;
+	}
+
+	/** The best parameters so far */
+	public double [] getParameters () { return x.clone (); }
+	/** The residuals of the best parameters */
+	public double [] getResiduals () { return r.clone (); }
+	/** Sum of the squares of the residuals of the best parameters */
+	public double getCost () { return cost; }
+	/** RMS of the residuals of the best parameters */
+	public double getRMS () { return Math.sqrt (cost / r.length); }
+	/** Number of iterations of the last run */
+	public int getIterations () { return iterations; }
+	/** Number of evaluations of the residuals (not counting those of
+	 * a JacobianResiduals for its derivatives) */
+	public int getEvaluations () { return evaluations; }
+} // end of Class DampedLeastSquares *******************************************
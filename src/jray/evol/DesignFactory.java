@@ -0,0 +1,10 @@
+package jray.evol;
+
+import jray.Telescope;
+
+/** A DesignFactory makes the Telescope of a set of design parameters. */
+public interface DesignFactory
+{
+    /** Returns a new Telescope with the parameters x */
+    public Telescope create(double[] x);
+}
@@ -0,0 +1,247 @@
+package jray.evol;
+
+import java.util.Vector;
+import java.util.concurrent.*;
+
+import javax.vecmath.Point2d;
+
+import jray.Detector;
+import jray.DetectorDisplay;
+import jray.LightRay;
+import jray.OpticBench;
+import jray.Telescope;
+import jray.TelescopeFactory;
+
+/**
+ * Distortion of a Telescope from the centroids of a small fan of
+ * LightRays (or of the chief ray alone) per field point, instead of a
+ * full pupil grid.  The field points are the pattern of Ray -i (nine
+ * concentric squares and a circle at the full field) plus a radial
+ * profile along +x; they are split over a pool of threads, each with
+ * a Telescope of its own.
+ * <p>
+ * The ideal image is the linear map measured at 1% of the field
+ * around the axis, so the distortion is the departure from it:
+ *   100 * (|c - c0| - |ideal - c0|) / |ideal - c0|  (%)
+ * where c0 is the on-axis centroid.
+ */
+public class Distortion {
+
+	/** Number of concentric squares of the map */
+	public static final int NSQUARES = 9;
+
+	TelescopeFactory factory;
+	double fov;
+	int nSide, nProfile, nFan;
+	double obstruction = 0.0;
+	double lambda = 450.0;
+
+	double [] ax, ay;				// field angles (arcsec)
+	double [] cx, cy;				// centroids on the detector (NaN: lost)
+	int nMap;						// field points of the map, then profile
+	double [] c0, ex, ey;			// linear (ideal) map
+
+	/** Construct a Distortion of the Telescopes made by f over the
+	 * field fov (arcsec), with nSide steps per half side of a square,
+	 * nProfile points on the radial profile and nFan LightRays per
+	 * field point (1 for the chief ray only) */
+	public Distortion (TelescopeFactory f, double fov, int nSide,
+					   int nProfile, int nFan) {
+		if (fov <= 0 || nSide < 1 || nProfile < 1 || nFan < 1)
+			throw new RuntimeException ("Distortion: needs a field, steps, " +
+										"profile points and LightRays");
+		this.factory = f;
+		this.fov = fov;
+		this.nSide = nSide;
+		this.nProfile = nProfile;
+		this.nFan = nFan;
+	}
+
+	/** Linear fraction of the diameter obstructed: the fan stays on the
+	 * unobstructed annulus */
+	public void setObstruction (double o) { this.obstruction = o; }
+	/** Wavelength (nm) of the LightRays */
+	public void setWavelength (double l) { this.lambda = l; }
+
+	/** Traces every field point on nThreads threads */
+	public void run (int nThreads) throws InterruptedException {
+		fieldPoints ();
+		cx = new double [ax.length];
+		cy = new double [ax.length];
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		Vector<Future<?>> jobs = new Vector<Future<?>> ();
+		int chunk = (ax.length + nThreads - 1) / nThreads;
+		for (int i = 0; i < ax.length; i += chunk) {
+			final int from = i, to = Math.min (ax.length, i + chunk);
+			jobs.add (pool.submit (new Runnable () {
+					public void run () { trace (from, to); }
+				}));
+		}
+		pool.shutdown ();
+		try {
+			for (int i = 0; i < jobs.size (); i++)
+				jobs.get (i).get ();
+		} catch (ExecutionException e) {
+			pool.shutdownNow ();
+			throw new RuntimeException ("Distortion: " + e.getCause (),
+										e.getCause ());
+		}
+
+		// Linear map from the three points around the axis (last ones)
+		int n = ax.length;
+		double d = fov * 1e-2;
+		c0 = new double [] {cx[n-3], cy[n-3]};
+		ex = new double [] {(cx[n-2] - c0[0]) / d, (cy[n-2] - c0[1]) / d};
+		ey = new double [] {(cx[n-1] - c0[0]) / d, (cy[n-1] - c0[1]) / d};
+		if (Double.isNaN (c0[0]) || Double.isNaN (ex[0]) ||
+			Double.isNaN (ey[0]))
+			throw new RuntimeException ("Distortion: the LightRays near " +
+										"the axis miss the detector");
+	} // end of run ************************************************************
+
+	/** Field angles of the map, the profile and the three points used
+	 * for the linear map, in that order */
+	private void fieldPoints () {
+		Vector<double []> f = new Vector<double []> ();
+		for (int j = 0; j < NSQUARES; j++) {
+			double max = fov * (j + 1.0) / NSQUARES / Math.sqrt (2);
+			for (int i = -nSide; i <= nSide; i++) {
+				double a = max * i / nSide;
+				f.add (new double [] { max,  a});
+				f.add (new double [] {-max,  a});
+				if (i == -nSide || i == nSide) continue;
+				f.add (new double [] { a,  max});
+				f.add (new double [] { a, -max});
+			}
+		}
+		int nCircle = 8 * nSide;
+		for (int i = 0; i < nCircle; i++) {
+			double t = 2.0 * Math.PI * i / nCircle;
+			f.add (new double [] {fov * Math.cos (t), fov * Math.sin (t)});
+		}
+		nMap = f.size ();
+		for (int i = 1; i <= nProfile; i++)
+			f.add (new double [] {fov * i / nProfile, 0.0});
+		double d = fov * 1e-2;
+		f.add (new double [] {0.0, 0.0});
+		f.add (new double [] {d, 0.0});
+		f.add (new double [] {0.0, d});
+
+		ax = new double [f.size ()];
+		ay = new double [f.size ()];
+		for (int i = 0; i < ax.length; i++) {
+			ax[i] = f.get (i)[0];
+			ay[i] = f.get (i)[1];
+		}
+	}
+
+	/** Traces field points from to to - 1 on a Telescope of its own */
+	private void trace (int from, int to) {
+		Telescope t = factory.create ();
+		// The detector should be the last ConicSection of the Telescope
+		Object last = t.getConicSection (t.numElements () - 1);
+		if (!(last instanceof Detector))
+			throw new RuntimeException ("Distortion: You are trying to " +
+										"image with a telescope without " +
+										"a detector!");
+		Detector det = (Detector) last;
+		OpticBench bench = new OpticBench ("Distortion", false);
+		bench.addTelescope (t);
+		DetectorDisplay dd = det.getDisplay ();
+		double diameter = (t.getConicSection (0)).getSize ();
+		// radius halving the area of the unobstructed annulus
+		double r = (nFan == 1) ? 0.0 : diameter / 2.0 *
+			Math.sqrt ((1.0 + obstruction * obstruction) / 2.0);
+		double Z0 = bench.iscaley (0);
+
+		for (int k = from; k < to; k++) {
+			double xvel = Math.tan (Math.toRadians (ax[k]/3600.));
+			double yvel = Math.tan (Math.toRadians (ay[k]/3600.));
+			bench.clean ();
+			det.clean ();
+			for (int i = 0; i < nFan; i++) {
+				double theta = 2.0 * Math.PI * i / nFan;
+				double x = r * Math.cos (theta) - xvel * Z0;
+				double y = r * Math.sin (theta) - yvel * Z0;
+				bench.addLight (new LightRay (x, y, Z0, xvel, yvel, -1.,
+											  lambda));
+			}
+			bench.PropagateLightRays ();
+			Vector<Point2d> p = dd.getPoints ();
+			// a partial fan would bias the centroid
+			if (p.size () < nFan) {
+				cx[k] = cy[k] = Double.NaN;
+				continue;
+			}
+			double sx = 0, sy = 0;
+			for (int i = 0; i < p.size (); i++) {
+				sx += p.get (i).x;
+				sy += p.get (i).y;
+			}
+			cx[k] = sx / p.size ();
+			cy[k] = sy / p.size ();
+		}
+	} // end of trace **********************************************************
+
+	/** Number of field points of the map */
+	public int numMapPoints () { return nMap; }
+	/** Field angle in x (arcsec) of map point i */
+	public double getFieldX (int i) { return ax[i]; }
+	/** Field angle in y (arcsec) of map point i */
+	public double getFieldY (int i) { return ay[i]; }
+	/** Centroid of map point i on the detector (null if lost) */
+	public Point2d getImage (int i) {
+		if (Double.isNaN (cx[i])) return null;
+		return new Point2d (cx[i], cy[i]);
+	}
+	/** Ideal (undistorted) image of map point i on the detector */
+	public Point2d getIdeal (int i) { return ideal (ax[i], ay[i]); }
+
+	private Point2d ideal (double x, double y) {
+		return new Point2d (c0[0] + x * ex[0] + y * ey[0],
+							c0[1] + x * ex[1] + y * ey[1]);
+	}
+
+	/** Distortion (%) of field point i */
+	private double distortion (int i) {
+		if (Double.isNaN (cx[i])) return Double.NaN;
+		Point2d q = ideal (ax[i], ay[i]);
+		double h  = Math.hypot (cx[i] - c0[0], cy[i] - c0[1]);
+		double h0 = Math.hypot (q.x - c0[0], q.y - c0[1]);
+		return 100.0 * (h - h0) / h0;
+	}
+
+	/** Distortion (%) of map point i */
+	public double getDistortion (int i) { return distortion (i); }
+
+	/** Number of points of the radial profile */
+	public int numProfilePoints () { return nProfile; }
+	/** Field angle (arcsec) of profile point i */
+	public double getProfileField (int i) { return ax[nMap + i]; }
+	/** Distortion (%) of profile point i */
+	public double getProfileDistortion (int i) {
+		return distortion (nMap + i);
+	}
+	/** Largest absolute distortion (%) over the map and profile */
+	public double getMaxDistortion () {
+		double m = 0;
+		for (int i = 0; i < nMap + nProfile; i++)
+			if (!Double.isNaN (distortion (i)))
+				m = Math.max (m, Math.abs (distortion (i)));
+		return m;
+	}
+
+	/** overrides toString (): the radial profile */
+	public String toString () {
+		StringBuffer s = new StringBuffer ("Distortion (" + ax.length +
+										   " field points, " + nFan +
+										   " rays each):");
+		s.append ("\n  plate scale " + Math.hypot (ex[0], ex[1]) * 3600 +
+				  " mm/deg");
+		for (int i = 0; i < nProfile; i++)
+			s.append ("\n  " + getProfileField (i) + " arcsec: " +
+					  getProfileDistortion (i) + " %");
+		s.append ("\n  max |distortion| " + getMaxDistortion () + " %");
+		return s.toString ();
+	}
+} // end of Class Distortion ***************************************************
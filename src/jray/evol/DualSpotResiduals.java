@@ -0,0 +1,126 @@
+package jray.evol;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+import jray.LightRay;
+import jray.RotationalSurface;
+import jray.Telescope;
+import jray.ad.Dual;
+import jray.ad.DualTrace;
+
+/**
+ * The residuals of SpotResiduals (the x and y of each LightRay on the
+ * Detector relative to the centroid of its spot) traced on Duals by a
+ * DualTrace, so that they come with their exact derivatives with
+ * respect to the parameters of the DualTrace, in a single trace.
+ * The Telescope must be one DualTrace can trace: coaxial mirrors and
+ * a Detector, without Gratings, so the spots do not depend on the
+ * wavelength and there is one spot per field angle.
+ */
+public class DualSpotResiduals implements JacobianResiduals {
+
+	DualTrace dual;
+	Vector<Vector<LightRay>> spots = new Vector<Vector<LightRay>> ();
+	double diameter, Z0;
+	int nRays;
+	double obstruction = 0.0;
+	double [] lastX, lastR;			// the last design traced
+	double [][] lastJ;
+
+	/** Residuals of the parameters of trace on Telescope t, with nr x nr
+	 * LightRays per spot */
+	public DualSpotResiduals (DualTrace trace, Telescope t, int nr) {
+		if (nr < 2)
+			throw new RuntimeException ("DualSpotResiduals: needs at least " +
+										"two rays");
+		this.dual = trace;
+		this.nRays = nr;
+		this.diameter = (t.getConicSection (0)).getSize ();
+		// start above every optic
+		double top = 0;
+		for (int i = 0; i < t.numElements (); i++)
+			top = Math.max (top, ((RotationalSurface) t.getConicSection (i))
+							.getVertexZ ());
+		this.Z0 = top + diameter;
+	}
+
+	/** Linear fraction of the diameter obstructed (set before addField) */
+	public void setObstruction (double o) { this.obstruction = o; }
+	/** Add a field angle (arcsec) */
+	public void addField (double angx, double angy) {
+		lastX = null;
+		spots.add (SpotResiduals.bundle (diameter, Z0, nRays, obstruction,
+										 angx, angy, 450.0));
+	}
+
+	/** Number of parameters of the design */
+	public int numParameters () { return dual.numParameters (); }
+	/** The parameters of the DualTrace, to start from */
+	public double [] getParameters () {
+		double [] x = new double [dual.numParameters ()];
+		for (int j = 0; j < x.length; j++)
+			x[j] = dual.getParameter (j);
+		return x;
+	}
+	/** Residuals of the design with parameters x */
+	public double [] evaluate (double [] x) {
+		trace (x);
+		return lastR.clone ();
+	}
+	/** Derivatives of the residuals of the design with parameters x */
+	public double [][] jacobian (double [] x) {
+		trace (x);
+		double [][] j = new double [lastJ.length][];
+		for (int i = 0; i < j.length; i++)
+			j[i] = lastJ[i].clone ();
+		return j;
+	}
+
+	/** Traces the design x, unless it was the last one (the DualTrace
+	 * is shared, so one thread at a time) */
+	private synchronized void trace (double [] x) {
+		if (lastX != null && Arrays.equals (x, lastX))
+			return;
+		for (int j = 0; j < x.length; j++)
+			dual.setParameter (j, x[j]);
+		if (spots.size () == 0)
+			addField (0, 0);
+		Vector<Double> r = new Vector<Double> ();
+		Vector<double []> d = new Vector<double []> ();
+		for (int k = 0; k < spots.size (); k++) {
+			Vector<LightRay> rays = spots.get (k);
+			Dual [][] h = new Dual [rays.size ()][];
+			Dual cx = null, cy = null;
+			int n = 0;
+			for (int i = 0; i < rays.size (); i++) {
+				h[i] = dual.trace (rays.get (i));
+				if (h[i] == null) continue;
+				cx = (cx == null) ? h[i][0] : cx.add (h[i][0]);
+				cy = (cy == null) ? h[i][1] : cy.add (h[i][1]);
+				n++;
+			}
+			for (int i = 0; i < rays.size (); i++) {
+				if (h[i] == null) {
+					r.add (Double.NaN);
+					r.add (Double.NaN);
+					d.add (new double [x.length]);
+					d.add (new double [x.length]);
+					continue;
+				}
+				Dual ex = h[i][0].sub (cx.div (n)), ey = h[i][1].sub (cy.div (n));
+				r.add (ex.value ());
+				r.add (ey.value ());
+				d.add (ex.gradient ());
+				d.add (ey.gradient ());
+			}
+		}
+		lastR = new double [r.size ()];
+		lastJ = new double [r.size ()][];
+		for (int i = 0; i < lastR.length; i++) {
+			lastR[i] = r.get (i);
+			lastJ[i] = d.get (i);
+		}
+		lastX = x.clone ();
+	} // end of trace *******************************************************
+} // end of Class DualSpotResiduals ********************************************
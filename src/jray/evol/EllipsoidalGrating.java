@@ -25,16 +25,40 @@ public class EllipsoidalGrating extends Cassegrain implements Telescope {
 	double position;
 	double radius;
 	double rfactor;
+	ConicSection stop;
 
 	/** p is the position, r the radius of curvature of the detecto,
      *  and f the rFactor of the ellipsoidal grating,
-	 *  of this EllipsoidalGrating object */
+	 *  of this EllipsoidalGrating object.  Each has mirrors of its
+	 *  own: the candidates of an optimization are built on one base
+	 *  (see GratingFactory). */
 	public EllipsoidalGrating (TelePar par, double p, double r, double f) {
 		this(par, p, r, f, DEFAULT_SIZE);
 	}
 	public EllipsoidalGrating (TelePar par, double p, double r,
 							   double f, double size) {
 		super(par);
+		build (p, r, f, size);
+	}
+	/**
+	 * Construct an EllipsoidalGrating sharing the primary and secondary
+	 * (and the aperture stop, if base is an EllipsoidalGrating) of base.
+	 * An OpticBench with checkpoints then only retraces the
+	 * grating and the detector of each new candidate.
+	 */
+	public EllipsoidalGrating (Cassegrain base, double p, double r, double f) {
+		this(base, p, r, f, DEFAULT_SIZE);
+	}
+	public EllipsoidalGrating (Cassegrain base, double p, double r,
+							   double f, double size) {
+		super(base);
+		if (base instanceof EllipsoidalGrating)
+			this.stop = ((EllipsoidalGrating) base).stop;
+		build (p, r, f, size);
+	}
+
+	/** Adds the aperture stop, grating and detector */
+	private void build (double p, double r, double f, double size) {
 		this.hasDet = true;
 		this.title = "Cassegrain Telescope: Ellipsoidal Grating";
 		this.position = p;
@@ -42,9 +66,10 @@ public class EllipsoidalGrating extends Cassegrain implements Telescope {
 		this.rfactor  = f;
 
 		// Aperture Stop at Cassegrain focal plane
-		ConicSection stop = new Plane (new Point3d (0, 0, par.focusAt),
-									   new Vector3d (0, 0, 1),
-									   par.holesize * 2.0, par.holesize * 0.5);
+		if (stop == null)
+			stop = new Plane (new Point3d (0, 0, par.focusAt),
+							  new Vector3d (0, 0, 1),
+							  par.holesize * 2.0, par.holesize * 0.5);
 
 		// A SphericeGrating
 		double sina = 1e-6 * central * grooves * order;
@@ -83,7 +108,7 @@ public class EllipsoidalGrating extends Cassegrain implements Telescope {
 		addConicSection (stop);
 		addConicSection (grating);
 		addConicSection (detector);
-	}// end of EllipsoidalGrating Constructor
+	}// end of build
 
 	public double   getPosition  () { return this.position  ; }
 	public double   getCurvature () { return this.radius    ; }
@@ -0,0 +1,8 @@
+package jray.evol;
+
+/** An EvaluatorFactory makes Evaluators of a given fidelity. */
+public interface EvaluatorFactory
+{
+    /** Returns an Evaluator tracing nRays x nRays LightRays */
+    public Evaluator create(int nRays);
+}
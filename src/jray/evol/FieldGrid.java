@@ -0,0 +1,229 @@
+package jray.evol;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Vector;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.vecmath.Point2d;
+
+import jray.Detector;
+import jray.DetectorDisplay;
+import jray.LightRay;
+import jray.OpticBench;
+import jray.Telescope;
+import jray.TelescopeFactory;
+
+/**
+ * Spot diagrams of a Telescope on an nx x ny grid of field angles,
+ * from -fovx to fovx and -fovy to fovy (arcsec), with the pupil
+ * sampling of Ray.addLight.
+ * <p>
+ * The field points are traced concurrently: each thread has its own
+ * Telescope (the ConicSections and the Detector keep state while
+ * tracing) and takes the next field point until none are left.  The
+ * spot of every field point is kept, with its centroid, maximum
+ * (DetectorDisplay.getSpotSize) and RMS sizes.
+ */
+public class FieldGrid {
+
+	TelescopeFactory factory;
+	double fovx, fovy;
+	int nx, ny, nRays;
+	double obstruction = 0.0;
+	double lambda = 450.0;
+	boolean circular = false;
+
+	Vector<Point2d> [][] spots;		// [ix][iy] points on the detector
+	double [][] spot, rms, cx, cy;
+
+	/** Construct a FieldGrid of the Telescopes made by f with nx x ny
+	 * field points over +-fovx, +-fovy (arcsec) and nr x nr LightRays
+	 * per field point */
+	public FieldGrid (TelescopeFactory f, double fovx, double fovy,
+					  int nx, int ny, int nr) {
+		if (nx < 1 || ny < 1 || nr < 2)
+			throw new RuntimeException ("FieldGrid: needs at least one " +
+										"field point and two rays");
+		this.factory = f;
+		this.fovx = fovx;
+		this.fovy = fovy;
+		this.nx = nx;
+		this.ny = ny;
+		this.nRays = nr;
+	}
+
+	/** Linear fraction of the diameter obstructed */
+	public void setObstruction (double o) { this.obstruction = o; }
+	/** Wavelength (nm) of the LightRays */
+	public void setWavelength (double l) { this.lambda = l; }
+	/** Concentric circles instead of a square grid in the pupil */
+	public void setCircular (boolean b) { this.circular = b; }
+
+	/** Field angle in x (arcsec) of column i */
+	public double getFieldX (int i) {
+		return (nx == 1) ? 0.0 : fovx * (-1.0 + 2.0 * i / (nx - 1.0));
+	}
+	/** Field angle in y (arcsec) of row j */
+	public double getFieldY (int j) {
+		return (ny == 1) ? 0.0 : fovy * (-1.0 + 2.0 * j / (ny - 1.0));
+	}
+
+	/** Traces every field point on nThreads threads */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void run (int nThreads) throws InterruptedException {
+		spots = new Vector [nx][ny];
+		spot = new double [nx][ny];
+		rms  = new double [nx][ny];
+		cx   = new double [nx][ny];
+		cy   = new double [nx][ny];
+		final AtomicInteger next = new AtomicInteger ();
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		Vector<Future<?>> jobs = new Vector<Future<?>> ();
+		for (int i = 0; i < Math.min (nThreads, nx * ny); i++)
+			jobs.add (pool.submit (new Runnable () {
+					public void run () { trace (next); }
+				}));
+		pool.shutdown ();
+		try {
+			for (int i = 0; i < jobs.size (); i++)
+				jobs.get (i).get ();
+		} catch (ExecutionException e) {
+			pool.shutdownNow ();
+			throw new RuntimeException ("FieldGrid: " + e.getCause (),
+										e.getCause ());
+		}
+	} // end of run ************************************************************
+
+	/** Traces field points, taken from next, on a Telescope of its own */
+	private void trace (AtomicInteger next) {
+		Telescope t = factory.create ();
+		// The detector should be the last ConicSection of the Telescope
+		Object last = t.getConicSection (t.numElements () - 1);
+		if (!(last instanceof Detector))
+			throw new RuntimeException ("FieldGrid: You are trying to " +
+										"image with a telescope without " +
+										"a detector!");
+		Detector det = (Detector) last;
+		OpticBench bench = new OpticBench ("Field Grid", false);
+		bench.addTelescope (t);
+		DetectorDisplay dd = det.getDisplay ();
+		double diameter = (t.getConicSection (0)).getSize ();
+		double Z0 = bench.iscaley (0);
+
+		int k;
+		while ((k = next.getAndIncrement ()) < nx * ny) {
+			int i = k % nx, j = k / nx;
+			double xvel = Math.tan (Math.toRadians (getFieldX (i)/3600.));
+			double yvel = Math.tan (Math.toRadians (getFieldY (j)/3600.));
+			bench.clean ();
+			det.clean ();
+			for (int u = 1; u <= nRays; u++) {
+				for (int v = 1; v <= nRays; v++) {
+					double x = diameter/2.0 *
+						(-1.0 + 2.0 * (u - 1.0) / (nRays - 1.0)) - xvel * Z0;
+					double y = diameter/2.0 *
+						(-1.0 + 2.0 * (v - 1.0) / (nRays - 1.0)) - yvel * Z0;
+					if (circular) {
+						double r = diameter/2.0 * (u - 1.0) / nRays;
+						double theta = 2 * Math.PI * (((double) v) / nRays);
+						x = r * Math.cos (theta) - xvel * Z0;
+						y = r * Math.sin (theta) - yvel * Z0;
+					}
+					// the aperture is tested where the LightRay starts, as
+					// in Ray.addLight
+					double radial = Math.sqrt (x*x + y*y);
+					if (radial > diameter/2. ||
+						radial < diameter * obstruction / 2.)
+						continue;
+					bench.addLight (new LightRay (x, y, Z0, xvel, yvel, -1.,
+												  lambda));
+				}
+			}
+			bench.PropagateLightRays ();
+			// clean () gives the display new Vectors, so this one is kept
+			Vector<Point2d> p = dd.getPoints ();
+			double sx = 0, sy = 0;
+			for (int m = 0; m < p.size (); m++) {
+				sx += p.get (m).x;
+				sy += p.get (m).y;
+			}
+			spots[i][j] = p;
+			spot[i][j] = dd.getSpotSize ();
+			rms[i][j]  = dd.getRMSSpotSize ();
+			cx[i][j] = (p.size () > 0) ? sx / p.size () : Double.NaN;
+			cy[i][j] = (p.size () > 0) ? sy / p.size () : Double.NaN;
+		}
+	} // end of trace **********************************************************
+
+	/** Points on the detector of field point (i, j) */
+	public Vector<Point2d> getSpot (int i, int j) { return spots[i][j]; }
+	/** Maximum spot size (mm) of field point (i, j) */
+	public double getSpotSize (int i, int j) { return spot[i][j]; }
+	/** RMS spot radius (mm) of field point (i, j) */
+	public double getRMSSpotSize (int i, int j) { return rms[i][j]; }
+	/** Centroid of the spot of field point (i, j) (null if lost) */
+	public Point2d getCentroid (int i, int j) {
+		if (Double.isNaN (cx[i][j])) return null;
+		return new Point2d (cx[i][j], cy[i][j]);
+	}
+
+	/** Writes the metrics as a table: one line per field point */
+	public void writeTable (PrintStream out) {
+		out.println ("# angx(arcsec) angy(arcsec) hits cx(mm) cy(mm) " +
+					 "spot(mm) rms(mm)");
+		for (int j = 0; j < ny; j++)
+			for (int i = 0; i < nx; i++)
+				out.println (getFieldX (i) + " " + getFieldY (j) + " " +
+							 spots[i][j].size () + " " + cx[i][j] + " " +
+							 cy[i][j] + " " + spot[i][j] + " " + rms[i][j]);
+	}
+
+	/**
+	 * Writes a PNG of the spot diagrams, one cell of cell x cell pixels
+	 * per field point (angx to the right, angy upwards), each centred
+	 * on its centroid.  All cells have the scale of the largest spot,
+	 * so their sizes can be compared.
+	 */
+	public void writeImage (File f, int cell) throws IOException {
+		double max = 0;
+		for (int i = 0; i < nx; i++)
+			for (int j = 0; j < ny; j++)
+				if (spot[i][j] < DetectorDisplay.SPOTMAX)
+					max = Math.max (max, spot[i][j]);
+		double scale = (max > 0) ? 0.9 * cell / max : 1.0;	// pixels per mm
+
+		BufferedImage image = new BufferedImage (nx * cell, ny * cell,
+												 BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics ();
+		g.setColor (Color.WHITE);
+		g.fillRect (0, 0, nx * cell, ny * cell);
+		g.setColor (Color.LIGHT_GRAY);
+		for (int i = 1; i < nx; i++)
+			g.drawLine (i * cell, 0, i * cell, ny * cell);
+		for (int j = 1; j < ny; j++)
+			g.drawLine (0, j * cell, nx * cell, j * cell);
+		g.dispose ();
+
+		int black = Color.BLACK.getRGB ();
+		for (int i = 0; i < nx; i++)
+			for (int j = 0; j < ny; j++) {
+				Vector<Point2d> p = spots[i][j];
+				int x0 = i * cell + cell / 2, y0 = (ny - 1 - j) * cell + cell / 2;
+				for (int m = 0; m < p.size (); m++) {
+					int x = x0 + (int) Math.round ((p.get (m).x - cx[i][j]) * scale);
+					int y = y0 - (int) Math.round ((p.get (m).y - cy[i][j]) * scale);
+					if (x >= i * cell && x < (i + 1) * cell &&
+						y >= (ny - 1 - j) * cell && y < (ny - j) * cell)
+						image.setRGB (x, y, black);
+				}
+			}
+		ImageIO.write (image, "png", f);
+	} // end of writeImage *****************************************************
+} // end of Class FieldGrid ****************************************************
@@ -0,0 +1,347 @@
+package jray.evol;
+
+import java.util.Vector;
+
+import javax.vecmath.Vector3d;
+
+import jray.LightRay;
+import jray.OpticBench;
+import jray.TelePar;
+import jray.Telescope;
+
+/**
+ * FocusSolver finds the best detector for a Telescope without a detector.
+ * One bundle of LightRays is propagated through the optics and the rays
+ * leaving the last optic are cached.  From those exit rays:
+ *  the RMS-minimizing plane position along z has a closed form
+ *  least-squares solution, and
+ *  the best-fit spherical detector (radius of curvature and position)
+ *  is found by a small nonlinear fit.
+ * The results feed DetectorPosition and DetectorCurvature directly.
+ */
+public class FocusSolver {
+
+	/** golden section ratio */
+	private static final double GOLD = 0.5 * (Math.sqrt (5.0) - 1.0);
+	/** number of golden section steps (bracket shrinks by GOLD each step) */
+	private static final int NSTEP = 60;
+
+	private Telescope scope;
+	private TelePar par;
+	private int nRays;
+	private double obstruction = 0.0;
+	private Vector<double []> fields;
+
+	// Exit rays: A = position on the plane z = 0, S = slope dx/dz, dy/dz
+	private double [] ax, ay, sx, sy;
+	private double [] px, py, pz, vx, vy, vz;
+	private int [] field;
+	private int n, nf;
+
+	private double plane, position, radius;
+	private double planeRMS, sphereRMS;
+
+	/** scope should be a Telescope without a detector */
+	public FocusSolver (Telescope scope) {
+		this(scope, 16);
+	}
+	/** nr is the number of rays (in 1D) of the bundle */
+	public FocusSolver (Telescope scope, int nr) {
+		this.scope = scope;
+		this.par = scope.getPar ();
+		this.nRays = nr;
+		this.fields = new Vector<double []> ();
+	}
+
+	/** Linear fraction of the diameter obstructed (not traced) */
+	public void setObstruction (double f) { this.obstruction = f; }
+
+	/** Add a field angle (arcsec) to the ray bundle. Default is on-axis. */
+	public void addField (double angx, double angy) {
+		fields.add (new double [] {angx, angy});
+	}
+
+	/** Propagate the bundle, then solve for the best plane and sphere */
+	public void solve () {
+		if (fields.size () == 0)
+			addField (0, 0);
+		trace ();
+		solvePlane ();
+		solveSphere ();
+	} // end of solve **********************************************************
+
+	/** Position of the best plane */
+	public double getPlanePosition () { return this.plane; }
+	/** Position of the vertex of the best sphere */
+	public double getPosition () { return this.position; }
+	/** Radius of curvature of the best sphere (0.0 for flat) */
+	public double getRadius () { return this.radius; }
+	/** RMS spot size (mm) on the best plane */
+	public double getPlaneRMS () { return this.planeRMS; }
+	/** RMS spot size (mm) on the best sphere */
+	public double getSphereRMS () { return this.sphereRMS; }
+	/** number of exit rays used by the fit */
+	public int getNumRays () { return this.n; }
+
+	/** Returns a DetectorPosition telescope with the best plane */
+	public DetectorPosition getDetectorPosition () {
+		return new DetectorPosition (par, plane);
+	}
+	/** Returns a DetectorCurvature telescope with the best sphere */
+	public DetectorCurvature getDetectorCurvature () {
+		return new DetectorCurvature (par, position, radius);
+	}
+
+	/** Propagate the ray bundle and keep the exit rays */
+	private void trace () {
+		OpticBench bench = new OpticBench ("FocusSolver", false, scope);
+		bench.setCacheExitRays (true);
+		double diameter = par.diameter;
+		double Z0 = 4.0 * par.diameter * par.fratio;
+		Vector<Integer> tag = new Vector<Integer> ();
+		for (int f = 0; f < fields.size (); f++) {
+			double xvel = Math.tan (Math.toRadians (fields.get (f)[0]/3600.));
+			double yvel = Math.tan (Math.toRadians (fields.get (f)[1]/3600.));
+			for (int i = 1; i <= nRays; i++) {
+				for (int j = 1; j <= nRays; j++) {
+					double x = diameter/2.0 *
+						(-1.0 + 2.0 * (i - 1.0) / (nRays - 1.0));
+					double y = diameter/2.0 *
+						(-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0));
+					double radial = Math.sqrt (x*x + y*y);
+					if (radial > diameter/2. ||
+						radial < diameter * obstruction / 2.)
+						continue;
+					bench.addLight (new LightRay (x - xvel * Z0, y - yvel * Z0,
+												  Z0, xvel, yvel, -1.));
+					tag.add (f);
+				}
+			}
+		}
+		bench.PropagateLightRays ();
+		Vector<LightRay> out = bench.getExitRays ();
+
+		/* Rays that were blocked or vignetted leave in the wrong
+		 * direction.  Keep the rays going the way most rays go.
+		 */
+		int up = 0, down = 0;
+		for (int q = 0; q < out.size (); q++) {
+			Vector3d v = out.get (q).getVelocity ();
+			if (v.z > 0) up++;
+			if (v.z < 0) down++;
+		}
+		double sign = (up > down) ? 1.0 : -1.0;
+
+		int m = out.size ();
+		ax = new double [m]; ay = new double [m];
+		sx = new double [m]; sy = new double [m];
+		px = new double [m]; py = new double [m]; pz = new double [m];
+		vx = new double [m]; vy = new double [m]; vz = new double [m];
+		field = new int [m];
+		n = 0;
+		nf = fields.size ();
+		for (int q = 0; q < m; q++) {
+			Vector3d p = out.get (q).getPosition ();
+			Vector3d v = out.get (q).getVelocity ();
+			if (Double.isNaN (p.x + p.y + p.z + v.x + v.y + v.z) ||
+				v.z * sign <= 0)
+				continue;
+			px[n] = p.x; py[n] = p.y; pz[n] = p.z;
+			vx[n] = v.x; vy[n] = v.y; vz[n] = v.z;
+			sx[n] = v.x / v.z;
+			sy[n] = v.y / v.z;
+			ax[n] = p.x - sx[n] * p.z;
+			ay[n] = p.y - sy[n] * p.z;
+			field[n] = tag.get (q);
+			n++;
+		}
+		if (n < 2)
+			throw new RuntimeException ("FocusSolver: only " + n +
+										" rays left the telescope!");
+	} // end of trace **********************************************************
+
+	/**
+	 * On the plane z = p a ray lands at A + S p.  About the centroid of
+	 * its field, the sum of squares  sum |dA + dS p|^2  is minimized by
+	 *  p = - sum (dA . dS) / sum |dS|^2
+	 */
+	private double solvePlanePosition () {
+		double [] mean = fieldMeans ();
+		double num = 0, den = 0;
+		for (int q = 0; q < n; q++) {
+			int f = 4 * field[q];
+			double dax = ax[q] - mean[f],     day = ay[q] - mean[f + 1];
+			double dsx = sx[q] - mean[f + 2], dsy = sy[q] - mean[f + 3];
+			num += dax * dsx + day * dsy;
+			den += dsx * dsx + dsy * dsy;
+		}
+		if (den == 0)
+			throw new RuntimeException ("FocusSolver: collimated exit rays" +
+										" have no focus!");
+		return -num / den;
+	}
+
+	private void solvePlane () {
+		this.plane = solvePlanePosition ();
+		this.position = plane;
+		this.planeRMS = Math.sqrt (sphereVariance (0.0, plane));
+	}
+
+	/**
+	 * Best fit sphere: golden section on the curvature k = 1/R,
+	 * with the vertex position re-optimized for every curvature.
+	 * The curvature is bracketed by the aperture of the exit rays.
+	 */
+	private void solveSphere () {
+		double rmax = 0;
+		for (int q = 0; q < n; q++) {
+			double x = ax[q] + sx[q] * position;
+			double y = ay[q] + sy[q] * position;
+			rmax = Math.max (rmax, Math.sqrt (x*x + y*y));
+		}
+		if (rmax == 0) {
+			this.radius = 0.0;
+			this.sphereRMS = planeRMS;
+			return;
+		}
+		// |R| must be at least the semi-aperture of the focal surface
+		double kmax = 1.0 / rmax;
+		double lo = -kmax, hi = kmax;
+		double k1 = hi - GOLD * (hi - lo);
+		double k2 = lo + GOLD * (hi - lo);
+		double f1 = bestVariance (k1), f2 = bestVariance (k2);
+		for (int i = 0; i < NSTEP; i++) {
+			if (f1 < f2) {
+				hi = k2; k2 = k1; f2 = f1;
+				k1 = hi - GOLD * (hi - lo);
+				f1 = bestVariance (k1);
+			} else {
+				lo = k1; k1 = k2; f1 = f2;
+				k2 = lo + GOLD * (hi - lo);
+				f2 = bestVariance (k2);
+			}
+		}
+		double k = 0.5 * (lo + hi);
+		double flat = sphereVariance (0.0, position);
+		if (bestVariance (k) >= flat) {
+			// A flat detector is as good as any sphere
+			this.radius = 0.0;
+			this.sphereRMS = Math.sqrt (flat);
+			return;
+		}
+		this.position = bestVertex (k);
+		this.radius = 1.0 / k;
+		this.sphereRMS = Math.sqrt (sphereVariance (k, position));
+	} // end of solveSphere ****************************************************
+
+	/** variance on the sphere of curvature k at its best vertex */
+	private double bestVariance (double k) {
+		return sphereVariance (k, bestVertex (k));
+	}
+
+	/** golden section on the vertex position for a sphere of curvature k */
+	private double bestVertex (double k) {
+		double span = 2.0 * Math.sqrt (planeRMS * planeRMS + 1e-12) /
+			Math.max (slopeRMS (), 1e-6);
+		double lo = position - span, hi = position + span;
+		double p1 = hi - GOLD * (hi - lo);
+		double p2 = lo + GOLD * (hi - lo);
+		double f1 = sphereVariance (k, p1), f2 = sphereVariance (k, p2);
+		for (int i = 0; i < NSTEP; i++) {
+			if (f1 < f2) {
+				hi = p2; p2 = p1; f2 = f1;
+				p1 = hi - GOLD * (hi - lo);
+				f1 = sphereVariance (k, p1);
+			} else {
+				lo = p1; p1 = p2; f1 = f2;
+				p2 = lo + GOLD * (hi - lo);
+				f2 = sphereVariance (k, p2);
+			}
+		}
+		return 0.5 * (lo + hi);
+	}
+
+	/** RMS of the exit slopes about their field means */
+	private double slopeRMS () {
+		double [] mean = fieldMeans ();
+		double sum = 0;
+		for (int q = 0; q < n; q++) {
+			int f = 4 * field[q];
+			double dsx = sx[q] - mean[f + 2], dsy = sy[q] - mean[f + 3];
+			sum += dsx * dsx + dsy * dsy;
+		}
+		return Math.sqrt (sum / n);
+	}
+
+	/**
+	 * Mean square spot radius on the sphere with vertex at z = p and
+	 * curvature k (center at p + 1/k), in detector coordinates as
+	 * measured by a SphericDetector (arc length from the vertex).
+	 * The sphere is  k (x^2 + y^2 + w^2) - 2 w = 0, w = z - p.
+	 */
+	private double sphereVariance (double k, double p) {
+		double [] sum = new double [3 * nf];
+		double [] hx = new double [n], hy = new double [n];
+		for (int q = 0; q < n; q++) {
+			double w = pz[q] - p;
+			double B = 2.0 * k * (px[q]*vx[q] + py[q]*vy[q] + w*vz[q]) -
+				2.0 * vz[q];
+			double C = k * (px[q]*px[q] + py[q]*py[q] + w*w) - 2.0 * w;
+			double discr = B * B - 4.0 * k * C;
+			if (discr < 0) discr = 0;
+			// root nearest to the vertex, stable as k -> 0
+			double den = B + ((B < 0) ? -1.0 : 1.0) * Math.sqrt (discr);
+			double t = (den == 0) ? 0 : -2.0 * C / den;
+			double x = px[q] + t * vx[q];
+			double y = py[q] + t * vy[q];
+			if (k != 0) {
+				double rho = Math.sqrt (x*x + y*y);
+				double s = Math.asin (Math.min (1.0, rho * Math.abs (k))) /
+					Math.abs (k);
+				if (rho != 0) {
+					x *= s / rho;
+					y *= s / rho;
+				}
+			}
+			hx[q] = x;
+			hy[q] = y;
+			int f = 3 * field[q];
+			sum[f]     += x;
+			sum[f + 1] += y;
+			sum[f + 2] += 1;
+		}
+		double var = 0;
+		for (int q = 0; q < n; q++) {
+			int f = 3 * field[q];
+			double dx = hx[q] - sum[f] / sum[f + 2];
+			double dy = hy[q] - sum[f + 1] / sum[f + 2];
+			var += dx * dx + dy * dy;
+		}
+		return var / n;
+	} // end of sphereVariance *************************************************
+
+	/** per field means of (ax, ay, sx, sy) */
+	private double [] fieldMeans () {
+		double [] mean = new double [4 * nf];
+		int [] count = new int [nf];
+		for (int q = 0; q < n; q++) {
+			int f = 4 * field[q];
+			mean[f]     += ax[q];
+			mean[f + 1] += ay[q];
+			mean[f + 2] += sx[q];
+			mean[f + 3] += sy[q];
+			count[field[q]]++;
+		}
+		for (int f = 0; f < nf; f++)
+			for (int i = 0; i < 4; i++)
+				if (count[f] > 0) mean[4 * f + i] /= count[f];
+		return mean;
+	}
+
+	/** overrides toString() */
+	public String toString () {
+		return ("Best plane: " + plane + "mm (RMS " +
+				planeRMS + "mm), best sphere: " + position + "mm, R=" +
+				radius + "mm (RMS " + sphereRMS + "mm)");
+	}
+} // end of Class FocusSolver **************************************************
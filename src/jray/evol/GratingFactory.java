@@ -0,0 +1,60 @@
+package jray.evol;
+
+import jray.TelePar;
+import jray.Telescope;
+import jray.telescopes.Cassegrain;
+
+/**
+ * GratingFactory makes the grating Cassegrains of an optimization, all
+ * on the primary, secondary and aperture stop of the first one it
+ * makes.  A SpecRes or SpatialRes keeps its OpticBench with checkpoints
+ * between evaluations, so that it then only retraces the grating and
+ * the detector of each candidate: candidates made each from the
+ * TelePar have mirrors of their own, and are retraced whole.
+ * <p>
+ * The parameters are {p, r, a} of a ToroidalGrating or {p, r, f} of an
+ * EllipsoidalGrating:
+ * <pre>
+ *   GratingFactory f = new GratingFactory (par, GratingFactory.ELLIPSOIDAL);
+ *   SpecRes e = new SpecRes ();
+ *   double fit = e.evaluate (f.create (new double [] {p, r, rfactor}));
+ * </pre>
+ */
+public class GratingFactory implements DesignFactory {
+
+	/** Makes ToroidalGratings */
+	public static final int TOROIDAL = 0;
+	/** Makes EllipsoidalGratings */
+	public static final int ELLIPSOIDAL = 1;
+
+	TelePar par;
+	int type;
+	Cassegrain base;
+
+	/** Construct a GratingFactory of the given type on par */
+	public GratingFactory (TelePar par, int type) {
+		if (type != TOROIDAL && type != ELLIPSOIDAL)
+			throw new RuntimeException ("GratingFactory: unknown grating " +
+										type);
+		this.par = par;
+		this.type = type;
+	}
+
+	/** Returns a new grating Cassegrain of the parameters x, on the
+	 * mirrors of the first one made */
+	public Telescope create (double [] x) {
+		if (x.length != 3)
+			throw new RuntimeException ("GratingFactory: needs 3 parameters, " +
+										"not " + x.length);
+		Cassegrain t;
+		if (base == null)
+			t = base = (type == TOROIDAL) ?
+				(Cassegrain) new ToroidalGrating (par, x[0], x[1], x[2]) :
+				new EllipsoidalGrating (par, x[0], x[1], x[2]);
+		else
+			t = (type == TOROIDAL) ?
+				(Cassegrain) new ToroidalGrating (base, x[0], x[1], x[2]) :
+				new EllipsoidalGrating (base, x[0], x[1], x[2]);
+		return t;
+	}
+} // end of Class GratingFactory ***********************************************
@@ -0,0 +1,11 @@
+package jray.evol;
+
+/** Residuals with their derivatives, so that no finite differences
+ * are needed */
+public interface JacobianResiduals extends Residuals
+{
+    /** Derivatives of the residuals of the design with parameters x:
+     * [i][j] is the derivative of residual i with respect to
+     * parameter j */
+    public double[][] jacobian(double[] x);
+}
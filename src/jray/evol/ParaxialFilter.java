@@ -0,0 +1,61 @@
+package jray.evol;
+
+import jray.Paraxial;
+import jray.Telescope;
+
+/**
+ * ParaxialFilter passes a Telescope on to another Evaluator only if
+ * its paraxial layout is feasible (see Paraxial.isFeasible): the
+ * others get the worst fitness at the cost of a few operations per
+ * mirror instead of a ray trace.
+ */
+public class ParaxialFilter implements Evaluator {
+
+	Evaluator e;
+	double maxObscuration, worst;
+	double vignetting = Paraxial.VIGNETTING;
+	int passed = 0, rejected = 0;
+	Paraxial last;
+
+	/** Filters the Telescopes evaluated by e; those rejected get the
+	 * fitness worst */
+	public ParaxialFilter (Evaluator e, double maxObscuration, double worst) {
+		this.e = e;
+		this.maxObscuration = maxObscuration;
+		this.worst = worst;
+	}
+
+	/** Fraction of a surface size by which the paraxial marginal ray
+	 * may overshoot it (see Paraxial.isVignetted); negative to leave
+	 * vignetting to the ray trace */
+	public void setVignetting (double tol) { this.vignetting = tol; }
+
+	/** Evaluate an Object -- redirect to Evaluate (Telescope o) */
+	public double evaluate (Object o) { return evaluate ( ((Telescope) o) ); }
+	/** Evaluate a Telescope */
+	public double evaluate (Telescope t) {
+		boolean ok;
+		try {
+			last = new Paraxial (t);
+			ok = last.isFeasible (maxObscuration, (vignetting < 0) ?
+								  Double.POSITIVE_INFINITY : vignetting);
+		} catch (RuntimeException x) {
+			// not a coaxial front end: leave it to the ray trace
+			last = null;
+			ok = true;
+		}
+		if (!ok) {
+			rejected++;
+			return worst;
+		}
+		passed++;
+		return e.evaluate (t);
+	}
+
+	/** The paraxial trace of the last Telescope (null if none) */
+	public Paraxial getParaxial () { return last; }
+	/** Number of Telescopes passed on */
+	public int getPassed () { return passed; }
+	/** Number of Telescopes rejected */
+	public int getRejected () { return rejected; }
+} // end of Class ParaxialFilter ***********************************************
@@ -0,0 +1,32 @@
+package jray.evol;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Order of the LightRays of an n x n pupil grid, from the edge of the
+ * pupil to its centre.  The marginal rays set the size of the spot,
+ * so a cutoff on the spot size is reached after only a few rays.
+ */
+class PupilOrder {
+
+	/** Returns the (i, j) grid indices, 1 to n, edge first */
+	static int [][] edgeFirst (final int n) {
+		int [][] ij = new int [n * n][];
+		for (int i = 1; i <= n; i++)
+			for (int j = 1; j <= n; j++)
+				ij [(i - 1) * n + (j - 1)] = new int [] {i, j};
+		// stable sort on the distance from the centre, largest first
+		Arrays.sort (ij, new Comparator<int []> () {
+				public int compare (int [] a, int [] b) {
+					return Double.compare (r2 (b, n), r2 (a, n));
+				}
+			});
+		return ij;
+	}
+
+	private static double r2 (int [] ij, int n) {
+		double c = (n + 1) / 2.0;
+		return (ij[0] - c) * (ij[0] - c) + (ij[1] - c) * (ij[1] - c);
+	}
+} // end of Class PupilOrder ***************************************************
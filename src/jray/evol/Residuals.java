@@ -0,0 +1,15 @@
+package jray.evol;
+
+/**
+ * Residuals of a design with numParameters parameters, for least
+ * squares (see DampedLeastSquares).  Every call must give as many
+ * residuals, NaN for the ones which cannot be computed (a lost ray);
+ * evaluate may be called from several threads at once.
+ */
+public interface Residuals
+{
+    /** Number of parameters of the design */
+    public int numParameters();
+    /** Residuals of the design with parameters x */
+    public double[] evaluate(double[] x);
+}
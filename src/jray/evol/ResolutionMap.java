@@ -0,0 +1,157 @@
+package jray.evol;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Vector;
+import java.util.concurrent.*;
+
+import javax.imageio.ImageIO;
+
+import jray.Detector;
+import jray.DetectorDisplay;
+import jray.LightRay;
+import jray.OpticBench;
+import jray.Telescope;
+import jray.TelescopeFactory;
+
+/**
+ * ResolutionMap measures the line width in X (spectral) and Y
+ * (spatial) on the detector of a Telescope+Spectrograph over a grid
+ * of wavelengths and field angles (in y, as SpatialRes.setAngY).
+ * <p>
+ * Each field angle is one job on a pool of threads, with its own
+ * Telescope and an OpticBench keeping checkpoints: the optics in
+ * front of the grating do not depend on the wavelength, so they are
+ * traced once per field angle.
+ */
+public class ResolutionMap {
+
+	TelescopeFactory factory;
+	double [] lambda;
+	double [] angy;
+	int nRays;
+
+	double [][] xw, yw;	// [angle][wavelength] line widths in mm
+
+	/** Construct a ResolutionMap of the Telescopes made by f, over the
+	 * wavelengths lambda (nm) and field angles angy (arcsec) with
+	 * nr x nr LightRays per cell */
+	public ResolutionMap (TelescopeFactory f, double [] lambda,
+						  double [] angy, int nr) {
+		this.factory = f;
+		this.lambda = lambda.clone ();
+		this.angy = angy.clone ();
+		this.nRays = nr;
+	}
+
+	/** Computes the map on nThreads threads */
+	public void run (int nThreads) throws InterruptedException {
+		xw = new double [angy.length][lambda.length];
+		yw = new double [angy.length][lambda.length];
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		Vector<Future<?>> rows = new Vector<Future<?>> ();
+		for (int i = 0; i < angy.length; i++) {
+			final int row = i;
+			rows.add (pool.submit (new Runnable () {
+					public void run () { computeRow (row); }
+				}));
+		}
+		pool.shutdown ();
+		try {
+			for (int i = 0; i < rows.size (); i++)
+				rows.get (i).get ();
+		} catch (ExecutionException e) {
+			pool.shutdownNow ();
+			throw new RuntimeException ("ResolutionMap: " + e.getCause (),
+										e.getCause ());
+		}
+	} // end of run ************************************************************
+
+	/** Traces every wavelength at field angle angy[i] */
+	private void computeRow (int i) {
+		Telescope t = factory.create ();
+		if (!t.hasDetector ())
+			throw new RuntimeException ("ResolutionMap: You are trying " +
+										"to map a telescope without " +
+										"a detector!");
+		OpticBench bench = new OpticBench ("Resolution Map", false);
+		bench.setCheckpointing (true);
+		bench.addTelescope (t);
+		// The detector should be the last ConicSection of the Telescope
+		Detector det = (Detector) t.getConicSection (t.numElements () - 1);
+		double diameter = (t.getConicSection (0)).getSize ();
+
+		double Z0 = 5000;
+		double yvel = Math.tan (Math.toRadians (angy[i]/3600.));
+		for (int j = 0; j < lambda.length; j++) {
+			bench.clean ();
+			det.clean ();
+			for (int k = 1; k <= nRays; k++) {
+				for (int l = 1; l <= nRays; l++) {
+					double x = diameter/2.0 *
+						(-1.0 + 2.0 * (k - 1.0) / (nRays - 1.0));
+					double y = diameter/2.0 *
+						(-1.0 + 2.0 * (l - 1.0) / (nRays - 1.0)) - yvel * Z0;
+					bench.addLight (new LightRay (x, y, Z0, 0, yvel, -1,
+												  lambda[j]));
+				}
+			}
+			bench.PropagateLightRays ();
+			xw[i][j] = det.getDisplay ().getXSpotSize ();
+			yw[i][j] = det.getDisplay ().getYSpotSize ();
+		}
+	} // end of computeRow *****************************************************
+
+	/** Line width in X (mm) at field angle i and wavelength j */
+	public double getXWidth (int i, int j) { return xw[i][j]; }
+	/** Line width in Y (mm) at field angle i and wavelength j */
+	public double getYWidth (int i, int j) { return yw[i][j]; }
+	/** Resolution (lambda / line width in X, as SpecRes) */
+	public double getResolution (int i, int j) { return lambda[j] / xw[i][j]; }
+
+	/** Writes the map as a table: one line per cell */
+	public void writeTable (PrintStream out) {
+		out.println ("# angy(arcsec) lambda(nm) xwidth(mm) ywidth(mm) " +
+					 "resolution");
+		for (int i = 0; i < angy.length; i++)
+			for (int j = 0; j < lambda.length; j++)
+				out.println (angy[i] + " " + lambda[j] + " " + xw[i][j] +
+							 " " + yw[i][j] + " " + getResolution (i, j));
+	}
+
+	/**
+	 * Writes a PNG heat map of the line width in X (x true) or Y:
+	 * wavelength increases to the right, field angle downwards, from
+	 * blue (narrowest) to red (widest).  Cells where the line missed
+	 * the detector are black.
+	 */
+	public void writeHeatMap (File f, boolean x) throws IOException {
+		double [][] w = (x) ? xw : yw;
+		int cell = 16;
+		double min = Double.POSITIVE_INFINITY, max = 0;
+		for (int i = 0; i < angy.length; i++)
+			for (int j = 0; j < lambda.length; j++)
+				if (w[i][j] < DetectorDisplay.SPOTMAX) {
+					min = Math.min (min, w[i][j]);
+					max = Math.max (max, w[i][j]);
+				}
+		BufferedImage image =
+			new BufferedImage (lambda.length * cell, angy.length * cell,
+							   BufferedImage.TYPE_INT_RGB);
+		for (int i = 0; i < angy.length; i++)
+			for (int j = 0; j < lambda.length; j++) {
+				Color c = Color.BLACK;
+				if (w[i][j] < DetectorDisplay.SPOTMAX) {
+					double s = (max > min) ? (w[i][j] - min) / (max - min) : 0;
+					c = Color.getHSBColor ((float) (0.66 * (1 - s)), 1f, 1f);
+				}
+				for (int u = 0; u < cell; u++)
+					for (int v = 0; v < cell; v++)
+						image.setRGB (j * cell + u, i * cell + v, c.getRGB ());
+			}
+		ImageIO.write (image, "png", f);
+	} // end of writeHeatMap ***************************************************
+} // end of Class ResolutionMap ************************************************
@@ -0,0 +1,41 @@
+package jray.evol;
+
+import jray.Seidel;
+import jray.Telescope;
+
+/**
+ * SeidelEvaluator mixes the third order blur of a Telescope (see
+ * Seidel.getBlur) with the fitness of an exact Evaluator:
+ *   fitness = exact.evaluate (t) - weight * blur (mm)
+ * The Seidel sums cost a few operations per mirror, so the exact
+ * Evaluator can trace few LightRays (or be null, for the analytic
+ * term alone).
+ */
+public class SeidelEvaluator implements Evaluator {
+
+	Evaluator exact;
+	double weight, field;
+	Seidel last;
+
+	/** Mixes exact (may be null) with weight times the Seidel blur at
+	 * the edge of the field (arcsec) */
+	public SeidelEvaluator (Evaluator exact, double weight, double field) {
+		this.exact = exact;
+		this.weight = weight;
+		this.field = field;
+	}
+
+	/** Evaluate an Object -- redirect to Evaluate (Telescope o) */
+	public double evaluate (Object o) { return evaluate ( ((Telescope) o) ); }
+	/** Evaluate a Telescope */
+	public double evaluate (Telescope t) {
+		last = new Seidel (t, field);
+		double fit = -weight * last.getBlur ();
+		if (exact != null)
+			fit += exact.evaluate (t);
+		return fit;
+	}
+
+	/** The Seidel sums of the last Telescope */
+	public Seidel getSeidel () { return last; }
+} // end of Class SeidelEvaluator **********************************************
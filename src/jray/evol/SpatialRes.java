@@ -1,6 +1,7 @@
 package jray.evol;
 
 import jray.Detector;
+import jray.DetectorDisplay;
 import jray.LightRay;
 import jray.OpticBench;
 import jray.Telescope;
@@ -44,10 +45,18 @@ public class SpatialRes implements Evaluator {
 
 	public void setAngY (double a) { this.angy = a; }
 
-	/** Initilize this Evaluator with the Given Telescope */
+	/** Initilize this Evaluator with the Given Telescope.
+	 *  The OpticBench is kept between evaluations, so that the optics
+	 *  shared with the previous Telescope are not retraced: build the
+	 *  candidates on one base (GratingFactory, or the Cassegrain base
+	 *  constructors of the gratings), else each is retraced whole. */
 	public void init (Telescope t) {
-		bench = new OpticBench ("Optimization of Simple Telescope", false);
-		bench.addTelescope (t);
+		if (bench == null) {
+			bench = new OpticBench ("Optimization of Simple Telescope", false);
+			bench.setCheckpointing (true);
+			bench.addTelescope (t);
+		} else
+			bench.setTelescope (t);
 		if (!t.hasDetector ())
 			throw new RuntimeException ("Evaluator: You are trying " +
 	 									"to evaluate a telescope without " +
@@ -76,27 +85,62 @@ public class SpatialRes implements Evaluator {
 		return linesize;
 	} // end of evaluate *******************************************************
 
+	/**
+	 * Evaluate a Telescope against the best fitness found so far.
+	 * The summed line size only grows with each color, so the
+	 * evaluation stops once the Telescope cannot beat incumbent, and
+	 * then returns an upper bound of its fitness (below incumbent).
+	 */
+	public double evaluate (Telescope t, double incumbent) {
+		init (t);
+		// the Telescope beats incumbent only if res stays below limit
+		double limit = (FITTNESS - incumbent) * BW * (nColors - 1.0);
+		if (incumbent <= 0) limit = Double.POSITIVE_INFINITY;
+		double res = 0.;
+		for (int k = 0; k < nColors && res <= limit; k++) {
+			double lambda = min + (BW * k) / (nColors - 1.0);
+			res += LineComputer (lambda, false, limit - res);
+		}
+		double meanres = (res / (nColors - 1.0)) / BW;
+		double linesize = FITTNESS - meanres;
+		if (linesize < 0) linesize = 0;
+		return linesize;
+	} // end of evaluate *******************************************************
+
 	/** returns the size of the line on the detector of the telescope */
 	public double LineComputer (double l) {
 		return LineComputer (l, false);
 	}
 	/** bNoisy flag for outputing computing time and line size */
 	public double LineComputer (double lambda, boolean bNoisy) {
+		return LineComputer (lambda, bNoisy, Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * Stops tracing as soon as the line is longer than cutoff, and
+	 * then returns its length so far (a lower bound, above cutoff).
+	 */
+	public double LineComputer (double lambda, boolean bNoisy,
+								double cutoff) {
 		bench.clean ();
 		det.clean ();
+		if (cutoff < Double.POSITIVE_INFINITY)
+			bench.setCutoff (det.getDisplay (), DetectorDisplay.YAXIS, cutoff);
+		else
+			bench.clearCutoff ();
 
-		// For each angle propagate some rays.
+		// For each angle propagate some rays, pupil edge first.
 		double Z0 = 5000;//bench.iscaley (0);
-		for (int i = 1; i <= nRays; i++) {
-			for (int j = 1; j <= nRays; j++) {
-				//double xvel = Math.tan (Math.toRadians (ang/3600.));
-				double yvel = Math.tan (Math.toRadians (angy/3600.));
-				double x = diameter/2.0 * (-1.0 + 2.0 * (i - 1.0) / (nRays - 1.0));
-				//double y = diameter/2.0 * (-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0));
-				double y = diameter/2.0 * 
-					(-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0)) - yvel * Z0;
-				bench.addLight ( new LightRay ( x, y, Z0, 0, yvel, -1, lambda ) );
-			}
+		double yvel = Math.tan (Math.toRadians (angy/3600.));
+		int [][] order = PupilOrder.edgeFirst (nRays);
+		for (int q = 0; q < order.length; q++) {
+			int i = order[q][0];
+			int j = order[q][1];
+			//double xvel = Math.tan (Math.toRadians (ang/3600.));
+			double x = diameter/2.0 * (-1.0 + 2.0 * (i - 1.0) / (nRays - 1.0));
+			//double y = diameter/2.0 * (-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0));
+			double y = diameter/2.0 * 
+				(-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0)) - yvel * Z0;
+			bench.addLight ( new LightRay ( x, y, Z0, 0, yvel, -1, lambda ) );
 		}
 
 		if (bNoisy) {
@@ -109,7 +153,9 @@ public class SpatialRes implements Evaluator {
 		} else
 			bench.PropagateLightRays ();
 
-		double aline = det.getDisplay ().getYSpotSize ();
+		double aline = (bench.isCutOff ()) ?
+			det.getDisplay ().getExtent (DetectorDisplay.YAXIS) :
+			det.getDisplay ().getYSpotSize ();
 		if (bNoisy) System.out.println ("\tLine Size: " + aline + " mm");
 		return aline;
 	} // end of LineComputer ***************************************************
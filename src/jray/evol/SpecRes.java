@@ -1,6 +1,7 @@
 package jray.evol;
 
 import jray.Detector;
+import jray.DetectorDisplay;
 import jray.LightRay;
 import jray.OpticBench;
 import jray.Telescope;
@@ -16,6 +17,7 @@ public class SpecRes implements Evaluator {
 
 	double min, max, BW;
 	int nRays, nColors;
+	double angy = 0;
 
 	OpticBench bench;
 	Detector det;
@@ -39,10 +41,21 @@ public class SpecRes implements Evaluator {
 		this.BW = this.max - this.min;
 	}
 
-	/** Initilize this Evaluator with the Given Telescope */
+	/** Field angle (arcsec, in y) of the light */
+	public void setAngY (double a) { this.angy = a; }
+
+	/** Initilize this Evaluator with the Given Telescope.
+	 *  The OpticBench is kept between evaluations, so that the optics
+	 *  shared with the previous Telescope are not retraced: build the
+	 *  candidates on one base (GratingFactory, or the Cassegrain base
+	 *  constructors of the gratings), else each is retraced whole. */
 	public void init (Telescope t) {
-		bench = new OpticBench ("Optimization of Simple Telescope", false);
-		bench.addTelescope (t);
+		if (bench == null) {
+			bench = new OpticBench ("Optimization of Simple Telescope", false);
+			bench.setCheckpointing (true);
+			bench.addTelescope (t);
+		} else
+			bench.setTelescope (t);
 		if (!t.hasDetector ())
 			throw new RuntimeException ("Evaluator: You are trying " +
 	 									"to evaluate a telescope without " +
@@ -75,18 +88,33 @@ public class SpecRes implements Evaluator {
 	}
 	/** bNoisy flag for outputing computing time and line size */
 	public double LineComputer (double lambda, boolean bNoisy) {
+		return LineComputer (lambda, bNoisy, Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * Stops tracing as soon as the line is longer than cutoff, and
+	 * then returns its length so far (a lower bound, above cutoff).
+	 */
+	public double LineComputer (double lambda, boolean bNoisy,
+								double cutoff) {
 		bench.clean ();
 		det.clean ();
+		if (cutoff < Double.POSITIVE_INFINITY)
+			bench.setCutoff (det.getDisplay (), DetectorDisplay.XAXIS, cutoff);
+		else
+			bench.clearCutoff ();
 
-		// For each angle propagate some rays.
+		// For each angle propagate some rays, pupil edge first.
 		double Z0 = 5000;//bench.iscaley (0);
-		for (int i = 1; i <= nRays; i++) {
-			for (int j = 1; j <= nRays; j++) {
-				//double xvel = Math.tan (Math.toRadians (ang/3600.));
-				double x = diameter/2.0 * (-1.0 + 2.0 * (i - 1.0)/(nRays-1.0));
-				double y = diameter/2.0 * (-1.0 + 2.0 * (j - 1.0)/(nRays-1.0));
-				bench.addLight ( new LightRay ( x, y, Z0, 0, 0., -1, lambda ));
-			}
+		double yvel = Math.tan (Math.toRadians (angy/3600.));
+		int [][] order = PupilOrder.edgeFirst (nRays);
+		for (int q = 0; q < order.length; q++) {
+			int i = order[q][0];
+			int j = order[q][1];
+			//double xvel = Math.tan (Math.toRadians (ang/3600.));
+			double x = diameter/2.0 * (-1.0 + 2.0 * (i - 1.0)/(nRays-1.0));
+			double y = diameter/2.0 * (-1.0 + 2.0 * (j - 1.0)/(nRays-1.0))
+				- yvel * Z0;
+			bench.addLight ( new LightRay ( x, y, Z0, 0, yvel, -1, lambda ));
 		}
 
 		if (bNoisy) {
@@ -99,7 +127,9 @@ public class SpecRes implements Evaluator {
 		} else
 			bench.PropagateLightRays ();
 
-		double aline = det.getDisplay ().getXSpotSize ();
+		double aline = (bench.isCutOff ()) ?
+			det.getDisplay ().getExtent (DetectorDisplay.XAXIS) :
+			det.getDisplay ().getXSpotSize ();
 		if (bNoisy) System.out.println ("\tLine Size: " + aline + " mm");
 		return aline;
 	} // end of LineComputer ***************************************************
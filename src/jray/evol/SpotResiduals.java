@@ -0,0 +1,175 @@
+package jray.evol;
+
+import java.util.Vector;
+
+import javax.vecmath.Point2d;
+import javax.vecmath.Vector3d;
+
+import jray.Detector;
+import jray.DetectorDisplay;
+import jray.LightRay;
+import jray.OpticBench;
+import jray.Telescope;
+
+/**
+ * SpotResiduals are the transverse errors of LightRays on the
+ * Detector of a Telescope made by a DesignFactory: for every field
+ * angle and wavelength, an nRays x nRays grid on the aperture is
+ * traced, and each LightRay gives the x and y of its hit relative to
+ * the centroid of its spot.  The sum of their squares is then the sum
+ * over the spots of (number of rays) x (RMS spot size)^2.  A ray
+ * which misses the Detector gives NaN.
+ * <p>
+ * The Detector should be the last ConicSection of the Telescope.
+ * Each call makes and traces a Telescope of its own, so the residuals
+ * may be evaluated in parallel (for finite differences, say).
+ */
+public class SpotResiduals implements Residuals {
+
+	DesignFactory factory;
+	int nParameters, nRays;
+	double obstruction = 0.0;
+	Vector<double []> fields = new Vector<double []> ();
+	Vector<Double> wavelengths = new Vector<Double> ();
+
+	/** Residuals of the Telescopes made by f from np parameters, with
+	 * nr x nr LightRays per spot */
+	public SpotResiduals (DesignFactory f, int np, int nr) {
+		if (nr < 2)
+			throw new RuntimeException ("SpotResiduals: needs at least " +
+										"two rays");
+		this.factory = f;
+		this.nParameters = np;
+		this.nRays = nr;
+	}
+
+	/** Linear fraction of the diameter obstructed */
+	public void setObstruction (double o) { this.obstruction = o; }
+	/** Add a field angle (arcsec) */
+	public void addField (double angx, double angy) {
+		fields.add (new double [] {angx, angy});
+	}
+	/** Add a wavelength (nm) */
+	public void addWavelength (double l) { wavelengths.add (l); }
+
+	/** Number of parameters of the design */
+	public int numParameters () { return nParameters; }
+
+	/**
+	 * The LightRays of a spot: the nr x nr grid on the aperture of
+	 * the given diameter, minus the obstruction, coming down from Z0
+	 * at field angle (angx, angy) (arcsec) so that they cross z = 0 on
+	 * the grid
+	 */
+	static Vector<LightRay> bundle (double diameter, double Z0, int nr,
+									double obstruction, double angx,
+									double angy, double lambda) {
+		Vector<LightRay> rays = new Vector<LightRay> ();
+		double xvel = Math.tan (Math.toRadians (angx/3600.));
+		double yvel = Math.tan (Math.toRadians (angy/3600.));
+		for (int i = 1; i <= nr; i++) {
+			for (int j = 1; j <= nr; j++) {
+				double x = diameter/2.0 * (-1.0 + 2.0 * (i - 1.0) / (nr - 1.0));
+				double y = diameter/2.0 * (-1.0 + 2.0 * (j - 1.0) / (nr - 1.0));
+				double radial = Math.sqrt (x*x + y*y);
+				if (radial > diameter/2. || radial < diameter * obstruction / 2.)
+					continue;
+				rays.add (new LightRay (x - xvel * Z0, y - yvel * Z0, Z0,
+										xvel, yvel, -1., lambda));
+			}
+		}
+		return rays;
+	}
+
+	/**
+	 * The position on the display dd of each LightRay of the last
+	 * propagation of bench (which caches the exit rays), null for the
+	 * ones which missed.  The Detector stops the rays it absorbs (no
+	 * velocity) and puts them on its display in the order they were
+	 * traced.
+	 */
+	static double [][] detectorHits (OpticBench bench, DetectorDisplay dd) {
+		Vector<LightRay> out = bench.getExitRays ();
+		Vector<Point2d> p = dd.getPoints ();
+		double [][] h = new double [out.size ()][];
+		int n = 0;
+		for (int i = 0; i < out.size (); i++) {
+			Vector3d v = out.get (i).getVelocity ();
+			Vector3d q = out.get (i).getPosition ();
+			if (Double.isNaN (v.x) && !Double.isNaN (q.x)) {
+				if (n < p.size ())
+					h[i] = new double [] {p.get (n).x, p.get (n).y};
+				n++;
+			}
+		}
+		if (n != p.size ())
+			throw new RuntimeException ("SpotResiduals: " + p.size () +
+										" points for " + n + " rays");
+		return h;
+	}
+
+	/** Fields and wavelengths, on axis and 450nm if none were added */
+	Vector<double []> spots () {
+		Vector<double []> s = new Vector<double []> ();
+		int nf = Math.max (1, fields.size ());
+		int nl = Math.max (1, wavelengths.size ());
+		for (int f = 0; f < nf; f++)
+			for (int l = 0; l < nl; l++) {
+				double [] a = (fields.size () > 0) ? fields.get (f) :
+					new double [] {0, 0};
+				double w = (wavelengths.size () > 0) ? wavelengths.get (l) :
+					450.0;
+				s.add (new double [] {a[0], a[1], w});
+			}
+		return s;
+	}
+
+	/** Residuals of the design with parameters x */
+	public double [] evaluate (double [] x) {
+		Telescope t = factory.create (x);
+		Object last = t.getConicSection (t.numElements () - 1);
+		if (!(last instanceof Detector))
+			throw new RuntimeException ("SpotResiduals: You are trying to " +
+										"image with a telescope without " +
+										"a detector!");
+		Detector det = (Detector) last;
+		OpticBench bench = new OpticBench ("Spot Residuals", false);
+		bench.addTelescope (t);
+		bench.setCacheExitRays (true);
+		DetectorDisplay dd = det.getDisplay ();
+		double diameter = (t.getConicSection (0)).getSize ();
+		double Z0 = bench.iscaley (0);
+
+		Vector<double []> s = spots ();
+		Vector<Double> r = new Vector<Double> ();
+		for (int k = 0; k < s.size (); k++) {
+			double [] a = s.get (k);
+			bench.clean ();
+			det.clean ();
+			Vector<LightRay> rays = bundle (diameter, Z0, nRays, obstruction,
+											a[0], a[1], a[2]);
+			for (int i = 0; i < rays.size (); i++)
+				bench.addLight (rays.get (i));
+			bench.PropagateLightRays ();
+			double [][] h = detectorHits (bench, dd);
+			int n = 0;
+			double cx = 0, cy = 0;
+			for (int i = 0; i < h.length; i++)
+				if (h[i] != null) {
+					cx += h[i][0];
+					cy += h[i][1];
+					n++;
+				}
+			cx /= n;
+			cy /= n;
+			for (int i = 0; i < h.length; i++) {
+				r.add ((h[i] == null) ? Double.NaN : h[i][0] - cx);
+				r.add ((h[i] == null) ? Double.NaN : h[i][1] - cy);
+			}
+		}
+		double [] res = new double [r.size ()];
+		for (int i = 0; i < res.length; i++)
+			res[i] = r.get (i);
+		return res;
+	} // end of evaluate *******************************************************
+} // end of Class SpotResiduals ************************************************
@@ -0,0 +1,179 @@
+package jray.evol;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
+/**
+ * Multi-fidelity screening of candidates by successive halving.
+ * Every candidate is scored with the first (smallest) ray count of the
+ * schedule; the best fraction keep is promoted to the next ray count,
+ * and so on until the last one.  Higher fitness is better, as for
+ * SpecRes and SpatialRes.
+ * <p>
+ * For each promotion the scores of the promoted candidates at both
+ * ray counts are compared (mean and maximum absolute difference,
+ * Spearman rank correlation), to help tuning the schedule.
+ */
+public class SuccessiveHalving {
+
+	EvaluatorFactory factory;
+	int [] rays;
+	double keep;
+
+	Vector<Vector<Object>> rungs;	// candidates scored at each ray count
+	Vector<double []> scores;		// and their scores
+	long [] millis;
+
+	/** Construct a SuccessiveHalving with ray counts rays (increasing)
+	 * promoting the best fraction keep (0 to 1) at each step */
+	public SuccessiveHalving (EvaluatorFactory f, int [] rays, double keep) {
+		if (rays.length == 0 || keep <= 0 || keep > 1)
+			throw new RuntimeException ("SuccessiveHalving: needs at least " +
+										"one ray count and 0 < keep <= 1");
+		this.factory = f;
+		this.rays = rays.clone ();
+		this.keep = keep;
+	}
+
+	/** Screens the candidates; returns the survivors of the last ray
+	 * count, best first */
+	public Vector<Object> run (Vector<?> candidates) {
+		rungs = new Vector<Vector<Object>> ();
+		scores = new Vector<double []> ();
+		millis = new long [rays.length];
+		Vector<Object> pool = new Vector<Object> (candidates);
+		for (int r = 0; r < rays.length && pool.size () > 0; r++) {
+			long t1 = System.currentTimeMillis ();
+			Evaluator e = factory.create (rays[r]);
+			double [] s = new double [pool.size ()];
+			for (int i = 0; i < s.length; i++)
+				s[i] = e.evaluate (pool.get (i));
+			millis[r] = System.currentTimeMillis () - t1;
+
+			// Sort this rung best first
+			Integer [] idx = rank (s);
+			Vector<Object> sorted = new Vector<Object> (s.length);
+			double [] ss = new double [s.length];
+			for (int i = 0; i < s.length; i++) {
+				sorted.add (pool.get (idx[i]));
+				ss[i] = s[idx[i]];
+			}
+			rungs.add (sorted);
+			scores.add (ss);
+
+			if (r == rays.length - 1)
+				return sorted;
+			int n = (int) Math.ceil (keep * s.length);
+			pool = new Vector<Object> (sorted.subList (0, Math.max (n, 1)));
+		}
+		return pool;
+	} // end of run ************************************************************
+
+	/** Number of ray counts evaluated by the last run */
+	public int numRungs () { return rungs.size (); }
+	/** Candidates scored at ray count r, best first */
+	public Vector<Object> getCandidates (int r) { return rungs.get (r); }
+	/** Scores at ray count r, best first */
+	public double [] getScores (int r) { return scores.get (r); }
+	/** Time spent at ray count r (ms) */
+	public long getTime (int r) { return millis[r]; }
+
+	/** Scores at ray count r of the candidates promoted to r + 1,
+	 * in the order of getCandidates (r + 1) */
+	private double [][] promoted (int r) {
+		Vector<Object> next = rungs.get (r + 1);
+		double [][] p = new double [2][next.size ()];
+		for (int i = 0; i < next.size (); i++) {
+			p[0][i] = scores.get (r)[rungs.get (r).indexOf (next.get (i))];
+			p[1][i] = scores.get (r + 1)[i];
+		}
+		return p;
+	}
+
+	/** Mean absolute difference of the scores at ray counts r and r+1 */
+	public double getMeanDiscrepancy (int r) {
+		double [][] p = promoted (r);
+		double d = 0;
+		for (int i = 0; i < p[0].length; i++)
+			d += Math.abs (p[0][i] - p[1][i]);
+		return d / p[0].length;
+	}
+	/** Maximum absolute difference of the scores at ray counts r and r+1 */
+	public double getMaxDiscrepancy (int r) {
+		double [][] p = promoted (r);
+		double d = 0;
+		for (int i = 0; i < p[0].length; i++)
+			d = Math.max (d, Math.abs (p[0][i] - p[1][i]));
+		return d;
+	}
+	/** Spearman rank correlation of the scores at ray counts r and r+1
+	 * (NaN for less than two candidates) */
+	public double getRankCorrelation (int r) {
+		double [][] p = promoted (r);
+		int n = p[0].length;
+		if (n < 2) return Double.NaN;
+		double [] a = ranks (p[0]);
+		double [] b = ranks (p[1]);
+		double ma = 0, mb = 0;
+		for (int i = 0; i < n; i++) {
+			ma += a[i] / n;
+			mb += b[i] / n;
+		}
+		double sab = 0, saa = 0, sbb = 0;
+		for (int i = 0; i < n; i++) {
+			sab += (a[i] - ma) * (b[i] - mb);
+			saa += (a[i] - ma) * (a[i] - ma);
+			sbb += (b[i] - mb) * (b[i] - mb);
+		}
+		if (saa == 0 || sbb == 0) return Double.NaN;
+		return sab / Math.sqrt (saa * sbb);
+	}
+
+	/** Indices of s sorted by decreasing score (NaN last) */
+	private static Integer [] rank (final double [] s) {
+		Integer [] idx = new Integer [s.length];
+		for (int i = 0; i < s.length; i++) idx[i] = i;
+		Arrays.sort (idx, new Comparator<Integer> () {
+				public int compare (Integer a, Integer b) {
+					return Double.compare (score (s[b]), score (s[a]));
+				}
+			});
+		return idx;
+	}
+	private static double score (double x) {
+		return (Double.isNaN (x)) ? Double.NEGATIVE_INFINITY : x;
+	}
+
+	/** Ranks of s (1 = best), ties get their average rank */
+	private static double [] ranks (double [] s) {
+		Integer [] idx = rank (s);
+		double [] r = new double [s.length];
+		for (int i = 0; i < s.length; ) {
+			int j = i;
+			while (j + 1 < s.length &&
+				   Double.compare (s[idx[j + 1]], s[idx[i]]) == 0)
+				j++;
+			for (int k = i; k <= j; k++)
+				r[idx[k]] = (i + j) / 2.0 + 1;
+			i = j + 1;
+		}
+		return r;
+	}
+
+	/** overrides toString (): one line per ray count */
+	public String toString () {
+		StringBuffer s = new StringBuffer ("Successive Halving:");
+		for (int r = 0; r < numRungs (); r++) {
+			s.append ("\n  " + rays[r] + "x" + rays[r] + " rays: " +
+					  rungs.get (r).size () + " candidates, best " +
+					  scores.get (r)[0] + ", " + millis[r] + " ms");
+			if (r + 1 < numRungs ())
+				s.append ("\n    vs " + rays[r + 1] + "x" + rays[r + 1] +
+						  ": mean |diff| " + getMeanDiscrepancy (r) +
+						  ", max |diff| " + getMaxDiscrepancy (r) +
+						  ", Spearman " + getRankCorrelation (r));
+		}
+		return s.toString ();
+	}
+} // end of Class SuccessiveHalving ********************************************
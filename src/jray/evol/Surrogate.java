@@ -0,0 +1,400 @@
+package jray.evol;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.*;
+
+import jray.Detector;
+import jray.LightRay;
+import jray.OpticBench;
+import jray.Telescope;
+import jray.TelescopeFactory;
+
+/**
+ * A Surrogate of the ray trace of a fixed Telescope: the position on
+ * the Detector as a polynomial of the position in the pupil, the
+ * field angle and the wavelength.  Each variable is scaled to [-1, 1]
+ * and the polynomial is a sum of products of Chebyshev polynomials
+ * T_i (u) T_j (v) ... of total degree at most degree, fitted by least
+ * squares to LightRays traced at random.
+ * <p>
+ * Part of the traced rays are held out of the fit: the errors of the
+ * polynomial on them (getHoldoutRMS, getHoldoutMax) tell whether the
+ * Surrogate can stand in for the ray trace.  It is only good inside
+ * the pupil, field and wavelengths it was fitted on, and not across a
+ * vignetting edge.  Once fitted, evaluating the polynomial costs a
+ * few hundred operations per ray, on arrays of rays.
+ */
+public class Surrogate {
+
+	/** Variables: pupil x and y, field angle x and y, wavelength */
+	public static final int PX = 0, PY = 1, FX = 2, FY = 3, LAMBDA = 4;
+	private static final int NVAR = 5;
+
+	TelescopeFactory factory;
+	int degree;
+	double obstruction = 0.0;
+	double [] lo = {-1, -1, 0, 0, 450}, hi = {1, 1, 0, 0, 450};
+	double diameter;
+
+	int [] vars;					// the variables with a range
+	int [][] terms;					// degrees of the variables in vars
+	double [] cx, cy;				// coefficients of x and y
+	double fitRMS, holdRMS, holdMax;
+	int nFit, nHold, nLost, nOutliers;
+
+	/** A Surrogate of the Telescopes made by f, of total degree degree */
+	public Surrogate (TelescopeFactory f, int degree) {
+		if (degree < 1)
+			throw new RuntimeException ("Surrogate: needs a degree of 1 " +
+										"or more");
+		this.factory = f;
+		this.degree = degree;
+	}
+
+	/** Linear fraction of the diameter obstructed */
+	public void setObstruction (double o) { this.obstruction = o; }
+	/** Field angles (arcsec) from (xmin, ymin) to (xmax, ymax) */
+	public void setField (double xmin, double xmax, double ymin, double ymax) {
+		lo[FX] = xmin; hi[FX] = xmax;
+		lo[FY] = ymin; hi[FY] = ymax;
+	}
+	/** Wavelengths (nm) from min to max */
+	public void setWavelength (double min, double max) {
+		lo[LAMBDA] = min; hi[LAMBDA] = max;
+	}
+
+	/**
+	 * Traces nSamples LightRays drawn from seed on nThreads threads,
+	 * fits the polynomial to all but the fraction holdout of them and
+	 * measures its errors on those.
+	 */
+	public void build (int nSamples, double holdout, long seed, int nThreads)
+		throws InterruptedException {
+		// The variables which vary, and the terms of the polynomial
+		int nv = 0;
+		for (int k = 0; k < NVAR; k++)
+			if (hi[k] != lo[k]) nv++;
+		vars = new int [nv];
+		for (int k = 0, i = 0; k < NVAR; k++)
+			if (hi[k] != lo[k]) vars[i++] = k;
+		Vector<int []> t = new Vector<int []> ();
+		addTerms (t, new int [nv], 0, degree);
+		terms = t.toArray (new int [0][]);
+
+		// Samples: uniform on the unobstructed pupil and in the ranges
+		Random r = new Random (seed);
+		final double [][] s = new double [nSamples][NVAR];
+		for (int i = 0; i < nSamples; i++) {
+			double rho = Math.sqrt (obstruction * obstruction +
+									(1 - obstruction * obstruction) *
+									r.nextDouble ());
+			double theta = 2 * Math.PI * r.nextDouble ();
+			s[i][PX] = rho * Math.cos (theta);
+			s[i][PY] = rho * Math.sin (theta);
+			for (int k = FX; k < NVAR; k++)
+				s[i][k] = lo[k] + (hi[k] - lo[k]) * r.nextDouble ();
+		}
+		double [][] h = trace (s, nThreads);
+
+		// Fit and holdout sets, without the lost rays
+		int nh = (int) Math.round (holdout * nSamples);
+		Vector<Integer> fit = new Vector<Integer> (), hold = new Vector<Integer> ();
+		nLost = 0;
+		for (int i = 0; i < nSamples; i++) {
+			if (h[i] == null) { nLost++; continue; }
+			if (i < nh) hold.add (i); else fit.add (i);
+		}
+		nFit = fit.size ();
+		nHold = hold.size ();
+		if (nFit < 2 * terms.length)
+			throw new RuntimeException ("Surrogate: " + nFit + " rays for " +
+										terms.length + " terms");
+		fitCoefficients (s, h, fit);
+
+		/* Rays far off the fit (a hundred times the 90th percentile
+		 * of the errors) are ones the trace got wrong or which took
+		 * another path: fit again without them */
+		double [] e = new double [nFit];
+		for (int i = 0; i < nFit; i++)
+			e[i] = error (s[fit.get (i)], h[fit.get (i)]);
+		double [] sorted = e.clone ();
+		Arrays.sort (sorted);
+		double cut = 100.0 * sorted[(int) (0.9 * (nFit - 1))];
+		Vector<Integer> kept = new Vector<Integer> ();
+		for (int i = 0; i < nFit; i++)
+			if (e[i] <= cut) kept.add (fit.get (i));
+		nOutliers = nFit - kept.size ();
+		if (nOutliers > 0 && kept.size () >= 2 * terms.length) {
+			fit = kept;
+			nFit = fit.size ();
+			fitCoefficients (s, h, fit);
+		}
+
+		double e2 = 0;
+		for (int i = 0; i < nFit; i++)
+			e2 += sq (error (s[fit.get (i)], h[fit.get (i)]));
+		fitRMS = Math.sqrt (e2 / nFit);
+		e2 = 0;
+		holdMax = 0;
+		for (int i = 0; i < nHold; i++) {
+			double d = error (s[hold.get (i)], h[hold.get (i)]);
+			e2 += d * d;
+			holdMax = Math.max (holdMax, d);
+		}
+		holdRMS = (nHold > 0) ? Math.sqrt (e2 / nHold) : Double.NaN;
+		if (nHold == 0) holdMax = Double.NaN;
+	} // end of build **********************************************************
+
+	private static double sq (double x) { return x * x; }
+
+	/** Fits the coefficients to the samples fit */
+	private void fitCoefficients (double [][] s, double [][] h,
+								  Vector<Integer> fit) {
+		int n = fit.size ();
+		double [][] A = new double [n][];
+		double [] bx = new double [n], by = new double [n];
+		for (int i = 0; i < n; i++) {
+			A[i] = basis (s[fit.get (i)]);
+			bx[i] = h[fit.get (i)][0];
+			by[i] = h[fit.get (i)][1];
+		}
+		double [][] c = leastSquares (A, new double [][] {bx, by});
+		cx = c[0];
+		cy = c[1];
+	}
+	/** Distance (mm) between the fit and the traced hit h of sample s */
+	private double error (double [] s, double [] h) {
+		double [] p = evaluate (s);
+		return Math.hypot (p[0] - h[0], p[1] - h[1]);
+	}
+
+	/** All the degrees of the variables from k on, of total at most d */
+	private static void addTerms (Vector<int []> t, int [] e, int k, int d) {
+		if (k == e.length) {
+			t.add (e.clone ());
+			return;
+		}
+		for (int i = 0; i <= d; i++) {
+			e[k] = i;
+			addTerms (t, e, k + 1, d - i);
+		}
+		e[k] = 0;
+	}
+
+	/** The positions on the Detector of the samples s, traced in
+	 * parallel: null for the rays which miss */
+	private double [][] trace (final double [][] s, int nThreads)
+		throws InterruptedException {
+		final double [][] h = new double [s.length][];
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		Vector<Future<?>> jobs = new Vector<Future<?>> ();
+		int chunk = (s.length + nThreads - 1) / nThreads;
+		for (int i = 0; i < s.length; i += chunk) {
+			final int from = i, to = Math.min (s.length, i + chunk);
+			jobs.add (pool.submit (new Runnable () {
+					public void run () { trace (s, h, from, to); }
+				}));
+		}
+		pool.shutdown ();
+		try {
+			for (int i = 0; i < jobs.size (); i++)
+				jobs.get (i).get ();
+		} catch (ExecutionException e) {
+			pool.shutdownNow ();
+			throw new RuntimeException ("Surrogate: " + e.getCause (),
+										e.getCause ());
+		}
+		return h;
+	}
+
+	/** Traces samples from to to - 1 on a Telescope of its own */
+	private void trace (double [][] s, double [][] h, int from, int to) {
+		Telescope t = factory.create ();
+		// The detector should be the last ConicSection of the Telescope
+		Object last = t.getConicSection (t.numElements () - 1);
+		if (!(last instanceof Detector))
+			throw new RuntimeException ("Surrogate: You are trying to " +
+										"image with a telescope without " +
+										"a detector!");
+		Detector det = (Detector) last;
+		OpticBench bench = new OpticBench ("Surrogate", false);
+		bench.addTelescope (t);
+		bench.setCacheExitRays (true);
+		double D = (t.getConicSection (0)).getSize ();
+		double Z0 = bench.iscaley (0);
+		det.clean ();
+		for (int i = from; i < to; i++) {
+			double xvel = Math.tan (Math.toRadians (s[i][FX]/3600.));
+			double yvel = Math.tan (Math.toRadians (s[i][FY]/3600.));
+			bench.addLight (new LightRay (s[i][PX] * D/2. - xvel * Z0,
+										  s[i][PY] * D/2. - yvel * Z0, Z0,
+										  xvel, yvel, -1., s[i][LAMBDA]));
+		}
+		bench.PropagateLightRays ();
+		double [][] p = SpotResiduals.detectorHits (bench, det.getDisplay ());
+		for (int i = from; i < to; i++)
+			h[i] = p[i - from];
+	}
+
+	/** The terms of the polynomial at the point s (unscaled variables) */
+	private double [] basis (double [] s) {
+		double [][] T = chebyshev (s);
+		double [] b = new double [terms.length];
+		for (int j = 0; j < terms.length; j++) {
+			double p = 1;
+			for (int k = 0; k < vars.length; k++)
+				p *= T[k][terms[j][k]];
+			b[j] = p;
+		}
+		return b;
+	}
+
+	/** T_0 ... T_degree of the scaled variables of s */
+	private double [][] chebyshev (double [] s) {
+		double [][] T = new double [vars.length][degree + 1];
+		for (int k = 0; k < vars.length; k++) {
+			int v = vars[k];
+			double u = (2 * s[v] - lo[v] - hi[v]) / (hi[v] - lo[v]);
+			T[k][0] = 1;
+			if (degree > 0) T[k][1] = u;
+			for (int i = 2; i <= degree; i++)
+				T[k][i] = 2 * u * T[k][i - 1] - T[k][i - 2];
+		}
+		return T;
+	}
+
+	/**
+	 * Least squares solutions of A c = b for each right hand side b,
+	 * by Householder QR (A and b are overwritten)
+	 */
+	static double [][] leastSquares (double [][] A, double [][] b) {
+		int m = A.length, n = A[0].length;
+		for (int k = 0; k < n; k++) {
+			double norm = 0;
+			for (int i = k; i < m; i++)
+				norm += A[i][k] * A[i][k];
+			norm = Math.sqrt (norm);
+			if (norm == 0)
+				throw new RuntimeException ("Surrogate: the rays do not " +
+											"determine term " + k);
+			double alpha = (A[k][k] > 0) ? -norm : norm;
+			double [] v = new double [m];
+			for (int i = k; i < m; i++)
+				v[i] = A[i][k];
+			v[k] -= alpha;
+			double vv = 0;
+			for (int i = k; i < m; i++)
+				vv += v[i] * v[i];
+			for (int j = k; j < n; j++) {
+				double d = 0;
+				for (int i = k; i < m; i++)
+					d += v[i] * A[i][j];
+				d *= 2 / vv;
+				for (int i = k; i < m; i++)
+					A[i][j] -= d * v[i];
+			}
+			for (int r = 0; r < b.length; r++) {
+				double d = 0;
+				for (int i = k; i < m; i++)
+					d += v[i] * b[r][i];
+				d *= 2 / vv;
+				for (int i = k; i < m; i++)
+					b[r][i] -= d * v[i];
+			}
+		}
+		double [][] c = new double [b.length][n];
+		for (int r = 0; r < b.length; r++)
+			for (int i = n - 1; i >= 0; i--) {
+				double s = b[r][i];
+				for (int j = i + 1; j < n; j++)
+					s -= A[i][j] * c[r][j];
+				c[r][i] = s / A[i][i];
+			}
+		return c;
+	}
+
+	/** The position (x, y) on the Detector of the sample s = {pupil x,
+	 * pupil y (-1 to 1), field x, field y (arcsec), wavelength (nm)} */
+	public double [] evaluate (double [] s) {
+		double [] b = basis (s);
+		double x = 0, y = 0;
+		for (int j = 0; j < b.length; j++) {
+			x += cx[j] * b[j];
+			y += cy[j] * b[j];
+		}
+		return new double [] {x, y};
+	}
+
+	/**
+	 * The positions on the Detector of n rays: pupil (px, py), from -1
+	 * to 1, field angle (fx, fy) (arcsec) and wavelength l (nm), into x
+	 * and y.  The arrays of the variables without a range may be null.
+	 */
+	public void evaluate (double [] px, double [] py, double [] fx,
+						  double [] fy, double [] l, double [] x, double [] y,
+						  int n) {
+		double [][] in = {px, py, fx, fy, l};
+		double [][] T = new double [vars.length][(degree + 1) * n];
+		for (int k = 0; k < vars.length; k++) {
+			int v = vars[k];
+			double a = 2 / (hi[v] - lo[v]), c = (lo[v] + hi[v]) / (hi[v] - lo[v]);
+			double [] s = in[v], t = T[k];
+			for (int i = 0; i < n; i++) {
+				double u = a * s[i] - c;
+				t[i] = 1;
+				t[n + i] = u;
+			}
+			for (int d = 2; d <= degree; d++)
+				for (int i = 0; i < n; i++)
+					t[d * n + i] = 2 * t[n + i] * t[(d - 1) * n + i] -
+						t[(d - 2) * n + i];
+		}
+		double [] p = new double [n];
+		for (int i = 0; i < n; i++)
+			x[i] = y[i] = 0;
+		for (int j = 0; j < terms.length; j++) {
+			for (int i = 0; i < n; i++)
+				p[i] = 1;
+			for (int k = 0; k < vars.length; k++) {
+				double [] t = T[k];
+				int o = terms[j][k] * n;
+				if (o == 0) continue;
+				for (int i = 0; i < n; i++)
+					p[i] *= t[o + i];
+			}
+			double ax = cx[j], ay = cy[j];
+			for (int i = 0; i < n; i++) {
+				x[i] += ax * p[i];
+				y[i] += ay * p[i];
+			}
+		}
+	} // end of evaluate *******************************************************
+
+	/** Number of terms of the polynomial */
+	public int numTerms () { return terms.length; }
+	/** RMS error (mm) of the fit on the rays it was fitted to */
+	public double getFitRMS () { return fitRMS; }
+	/** RMS error (mm) on the rays held out of the fit */
+	public double getHoldoutRMS () { return holdRMS; }
+	/** Largest error (mm) on the rays held out of the fit */
+	public double getHoldoutMax () { return holdMax; }
+	/** Number of traced rays left out of the fit as outliers */
+	public int getOutliers () { return nOutliers; }
+	/** Number of rays which missed the Detector (not fitted) */
+	public int getLost () { return nLost; }
+	/** true if the largest error on the rays held out is within
+	 * tolerance (mm): the Surrogate can replace the ray trace */
+	public boolean isTrustworthy (double tolerance) {
+		return nHold > 0 && holdMax <= tolerance;
+	}
+
+	/** overrides toString () */
+	public String toString () {
+		return ("Surrogate of degree " + degree + " (" + terms.length +
+				" terms, " + nFit + " rays fitted, " + nHold + " held out, " +
+				nLost + " lost, " + nOutliers + " outliers): fit rms " + fitRMS + " mm, holdout rms " +
+				holdRMS + " mm, max " + holdMax + " mm");
+	}
+} // end of Class Surrogate ****************************************************
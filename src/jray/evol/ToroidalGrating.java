@@ -26,11 +26,14 @@ public class ToroidalGrating extends Cassegrain implements Telescope {
 	double position;
 	double radius;
 	double a;
+	ConicSection stop;
 
 	/** 
 	 * Construct a ToroidalGrating Cassegrain telescope.  
 	 * Set r = ToroidalGrating.FLAT to use a flat detector
-	 * rather than a curved detector.
+	 * rather than a curved detector.  Each has mirrors of its own:
+	 * the candidates of an optimization are built on one base (see
+	 * GratingFactory).
 	 * @param par Telescope Parameter object
 	 * @param p position of the detector from from
 	 * @param r radius of curvature of the detector from match
@@ -45,6 +48,27 @@ public class ToroidalGrating extends Cassegrain implements Telescope {
 	public ToroidalGrating (TelePar par, double p, double r, double a,
 							   double size) {
 		super(par);
+		build (p, r, a, size);
+	}
+	/**
+	 * Construct a ToroidalGrating sharing the primary and secondary
+	 * (and the aperture stop, if base is a ToroidalGrating) of base.
+	 * An OpticBench with checkpoints then only retraces the
+	 * grating and the detector of each new candidate.
+	 */
+	public ToroidalGrating (Cassegrain base, double p, double r, double a) {
+		this(base, p, r, a, DEFAULT_SIZE);
+	}
+	public ToroidalGrating (Cassegrain base, double p, double r, double a,
+							double size) {
+		super(base);
+		if (base instanceof ToroidalGrating)
+			this.stop = ((ToroidalGrating) base).stop;
+		build (p, r, a, size);
+	}
+
+	/** Adds the aperture stop, grating and detector */
+	private void build (double p, double r, double a, double size) {
 		this.hasDet = true;
 		this.title = "Cassegrain Telescope: Toroidal Grating";
 		this.position = p;
@@ -52,9 +76,10 @@ public class ToroidalGrating extends Cassegrain implements Telescope {
 		this.a = a;
 
 		// Aperture Stop at Cassegrain focal plane
-		ConicSection stop = new Plane (new Point3d (0, 0, par.focusAt),
-									   new Vector3d (0, 0, 1),
-									   par.holesize * 2.0, par.holesize * 0.5);
+		if (stop == null)
+			stop = new Plane (new Point3d (0, 0, par.focusAt),
+							  new Vector3d (0, 0, 1),
+							  par.holesize * 2.0, par.holesize * 0.5);
 
 		// A SphericeGrating
 		double correct = 155.0;
@@ -98,7 +123,7 @@ public class ToroidalGrating extends Cassegrain implements Telescope {
 		addConicSection (stop);
 		addConicSection (grating);
 		addConicSection (detector);
-	}// end of ToroidalGrating Constructor
+	}// end of build
 
 	public double   getPosition  () { return this.position  ; }
 	public double   getCurvature () { return this.radius    ; }
@@ -0,0 +1,207 @@
+package jray.sweep;
+
+import java.io.*;
+import java.util.Vector;
+import java.util.concurrent.*;
+
+import jray.TelePar;
+
+/**
+ * Batch parameter sweep: traces every point of a grid (or list) of
+ * telescope parameters on a pool of threads, in a single JVM, and
+ * streams the results to a CSV or JSON file as they complete.
+ * Restarting a sweep with the same output file skips the points
+ * which are already in it.
+ * <p>
+ * The spec file has one "name = value" per line ('#' comments):
+ * <pre>
+ *   telescope = cassegrain       (gregorian, reflex)
+ *   mode      = grid             (list: the i-th values go together)
+ *   diameter  = 1000
+ *   fratio    = 2.5:3.5:0.25     (start:stop:step, stop included)
+ *   detector  = -110, -100, -90  (comma separated values)
+ *   rays      = 50
+ *   threads   = 4
+ *   output    = sweep.csv        (.json for JSON)
+ * </pre>
+ * Swept parameters are those of SweepPoint.NAMES; the missing ones
+ * keep their TelePar default, and the detector defaults to focusAt.
+ */
+public class Sweep {
+
+	String type = "cassegrain";
+	boolean grid = true;
+	int nRays = 50;
+	int nThreads = Runtime.getRuntime ().availableProcessors ();
+	String output = "sweep.csv";
+	double [][] values = new double [SweepPoint.NAMES.length][];
+
+	public static void main (String [] args) throws Exception {
+		if (args.length < 1 || args[0].equals ("-h")) {
+			System.out.println ("Usage: java jray.sweep.Sweep spec [option] [value]");
+			System.out.println ("       -o output file (.csv or .json)");
+			System.out.println ("       -j number of threads");
+			System.out.println ("       -n number of rays (in 1D)");
+			System.exit (1);
+		}
+		Sweep s = new Sweep (new File (args[0]));
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			if (args[i].equals ("-o"))
+				s.output = args[i+1];
+			if (args[i].equals ("-j"))
+				s.nThreads = Integer.parseInt (args[i+1]);
+			if (args[i].equals ("-n"))
+				s.nRays = Integer.parseInt (args[i+1]);
+		}
+		s.run ();
+	}
+
+	/** Reads the sweep spec file */
+	public Sweep (File spec) throws IOException {
+		BufferedReader in = new BufferedReader (new FileReader (spec));
+		String line;
+		while ((line = in.readLine ()) != null) {
+			int c = line.indexOf ('#');
+			if (c >= 0) line = line.substring (0, c);
+			line = line.trim ();
+			if (line.length () == 0) continue;
+			int eq = line.indexOf ('=');
+			if (eq < 0)
+				throw new RuntimeException ("Sweep: expected name = value: " +
+											line);
+			set (line.substring (0, eq).trim (), line.substring (eq + 1).trim ());
+		}
+		in.close ();
+	}
+
+	/** Sets one entry of the spec */
+	public void set (String name, String value) {
+		if (name.equals ("telescope"))
+			type = value.toLowerCase ();
+		else if (name.equals ("mode"))
+			grid = !value.equalsIgnoreCase ("list");
+		else if (name.equals ("rays"))
+			nRays = Integer.parseInt (value);
+		else if (name.equals ("threads"))
+			nThreads = Integer.parseInt (value);
+		else if (name.equals ("output"))
+			output = value;
+		else {
+			for (int i = 0; i < SweepPoint.NAMES.length; i++)
+				if (SweepPoint.NAMES[i].equalsIgnoreCase (name)) {
+					values[i] = parseValues (value);
+					return;
+				}
+			throw new RuntimeException ("Sweep: unknown parameter " + name);
+		}
+	}
+
+	/** Parses "a, b, c" or "start:stop:step" */
+	static double [] parseValues (String s) {
+		String [] r = s.split (":");
+		if (r.length == 3) {
+			double start = Double.parseDouble (r[0].trim ());
+			double stop  = Double.parseDouble (r[1].trim ());
+			double step  = Double.parseDouble (r[2].trim ());
+			if (step == 0 || (stop - start) / step < 0)
+				throw new RuntimeException ("Sweep: bad range " + s);
+			int n = (int) Math.floor ((stop - start) / step + 1e-9) + 1;
+			double [] v = new double [n];
+			for (int i = 0; i < n; i++)
+				v[i] = start + i * step;
+			return v;
+		}
+		String [] l = s.split (",");
+		double [] v = new double [l.length];
+		for (int i = 0; i < l.length; i++)
+			v[i] = Double.parseDouble (l[i].trim ());
+		return v;
+	}
+
+	/** Expands the spec into SweepPoints */
+	public Vector<SweepPoint> getPoints () {
+		TelePar def = new TelePar ();
+		double [] d = {def.diameter, def.fratio, def.fdesired, def.holesize,
+					   def.focusAt, def.FOV, Double.NaN, 0.0};
+		int np = SweepPoint.NAMES.length;
+		double [][] v = new double [np][];
+		for (int i = 0; i < np; i++)
+			v[i] = (values[i] != null) ? values[i] : new double [] {d[i]};
+
+		Vector<SweepPoint> points = new Vector<SweepPoint> ();
+		if (grid) {
+			int [] idx = new int [np];
+			while (true) {
+				points.add (point (v, idx));
+				int i = np - 1;
+				while (i >= 0 && ++idx[i] == v[i].length)
+					idx[i--] = 0;
+				if (i < 0) break;
+			}
+		} else {
+			int n = 1;
+			for (int i = 0; i < np; i++) {
+				if (v[i].length == 1) continue;
+				if (n != 1 && v[i].length != n)
+					throw new RuntimeException ("Sweep: list mode needs the " +
+												"same number of values for " +
+												"every parameter");
+				n = v[i].length;
+			}
+			int [] idx = new int [np];
+			for (int k = 0; k < n; k++) {
+				for (int i = 0; i < np; i++)
+					idx[i] = (v[i].length == 1) ? 0 : k;
+				points.add (point (v, idx));
+			}
+		}
+		return points;
+	}
+
+	/** The SweepPoint at index idx of the values v */
+	private SweepPoint point (double [][] v, int [] idx) {
+		double [] p = new double [v.length];
+		for (int i = 0; i < v.length; i++)
+			p[i] = v[i][idx[i]];
+		// detector defaults to the desired focus
+		if (Double.isNaN (p[6])) p[6] = p[4];
+		return new SweepPoint (type, p);
+	}
+
+	/** Runs the sweep, writing results as they complete */
+	public void run () throws IOException, InterruptedException {
+		Vector<SweepPoint> points = getPoints ();
+		SweepOutput out = new SweepOutput (new File (output),
+										   output.toLowerCase ().endsWith (".json"));
+		System.out.println ("Sweep: " + points.size () + " points, " +
+							out.numDone () + " already in " + output);
+
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		CompletionService<SweepJob.Result> jobs =
+			new ExecutorCompletionService<SweepJob.Result> (pool);
+		int submitted = 0;
+		for (int i = 0; i < points.size (); i++) {
+			SweepPoint p = points.get (i);
+			if (out.isDone (p.getKey ())) continue;
+			jobs.submit (new SweepJob (p, nRays));
+			submitted++;
+		}
+
+		double t1 = System.currentTimeMillis ();
+		int failed = 0;
+		for (int i = 0; i < submitted; i++) {
+			try {
+				out.write (jobs.take ().get ());
+			} catch (ExecutionException e) {
+				// Not written: a restarted sweep tries the point again
+				System.err.println ("Sweep: " + e.getCause ());
+				failed++;
+			}
+		}
+		pool.shutdown ();
+		out.close ();
+		double t2 = System.currentTimeMillis ();
+		System.out.println ("Sweep: " + (submitted - failed) + " points in " +
+							(t2 - t1) + " milliseconds, " + failed + " failed");
+	} // end of run ************************************************************
+} // end of Class Sweep ********************************************************
@@ -0,0 +1,115 @@
+package jray.sweep;
+
+import java.util.concurrent.Callable;
+
+import jray.ConicSection;
+import jray.Detector;
+import jray.DetectorDisplay;
+import jray.LightRay;
+import jray.OpticBench;
+import jray.TelePar;
+import jray.Telescope;
+import jray.evol.DetectorCurvature;
+import jray.evol.DetectorPosition;
+import jray.telescopes.Gregorian;
+import jray.telescopes.Reflex;
+
+/**
+ * Traces one SweepPoint.  The telescope, detector and OpticBench are
+ * built by the job itself (ConicSections are not thread safe), the
+ * same way Ray builds them, and nothing is displayed.
+ */
+public class SweepJob implements Callable<SweepJob.Result> {
+
+	/** Wavelength of the traced light (nm) */
+	public static final double LAMBDA = 450.0;
+
+	SweepPoint point;
+	int nRays;
+
+	/** Construct a SweepJob tracing nr x nr LightRays through point */
+	public SweepJob (SweepPoint point, int nr) {
+		this.point = point;
+		this.nRays = nr;
+	}
+
+	/** Builds the telescope, propagates the light, measures the spot */
+	public Result call () {
+		long t1 = System.currentTimeMillis ();
+		TelePar par = point.par;
+		double obstruction = 0.0;
+
+		// Create Telescope with a Detector, grab the Detector
+		Telescope scope;
+		if (point.curvature != 0.0)
+			scope = new DetectorCurvature (par, point.detector,
+										   point.curvature,
+										   par.holesize * 1.2);
+		else
+			scope = new DetectorPosition (par, point.detector,
+										  par.holesize * 2.);
+		Detector d = (Detector) scope.getConicSection (2);
+		if (point.type.equals ("gregorian")) {
+			scope = new Gregorian (par);
+			scope.addConicSection ((ConicSection) d);
+		} else if (point.type.equals ("reflex")) {
+			scope = new Reflex (par);
+			scope.addConicSection ((ConicSection) d);
+			obstruction = par.fratio / par.fdesired;
+		} else if (!point.type.equals ("cassegrain"))
+			throw new RuntimeException ("SweepJob: unknown telescope " +
+										point.type);
+
+		OpticBench bench = new OpticBench (scope.getName (), false, scope);
+		int launched = addLight (bench, par, obstruction);
+		bench.PropagateLightRays ();
+
+		DetectorDisplay dd = d.getDisplay ();
+		Result r = new Result ();
+		r.point   = point;
+		r.rays    = launched;
+		r.hits    = dd.getPoints ().size ();
+		r.spot    = dd.getSpotSize ();
+		r.rms     = dd.getRMSSpotSize ();
+		r.optHole = scope.getOptimumHoleSize ();
+		r.millis  = System.currentTimeMillis () - t1;
+		return r;
+	} // end of call ***********************************************************
+
+	/** Fills the aperture with light at the field angle par.FOV, like
+	 * Ray.addLight.  Returns the number of LightRays added */
+	private int addLight (OpticBench bench, TelePar par, double obstruction) {
+		double Z0 = bench.iscaley (0);
+		double xvel = Math.tan (Math.toRadians (par.FOV/3600.));
+		int n = 0;
+		for (int i = 1; i <= nRays; i++) {
+			for (int j = 1; j <= nRays; j++) {
+				double x = par.diameter/2.0 *
+					(-1.0 + 2.0 * (i - 1.0) / (nRays - 1.0)) - xvel * Z0;
+				double y = par.diameter/2.0 *
+					(-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0));
+				double radial = Math.sqrt (x*x + y*y);
+				if (radial <= par.diameter/2. &&
+					radial >= par.diameter * obstruction / 2.) {
+					bench.addLight (new LightRay (x, y, Z0, xvel, 0., -1.,
+												  LAMBDA));
+					n++;
+				}
+			}
+		}
+		return n;
+	}
+
+	/** The measurements of one SweepPoint */
+	public static class Result {
+		public SweepPoint point;
+		/** LightRays launched and absorbed by the detector */
+		public int rays, hits;
+		/** Maximal and RMS spot size (mm) */
+		public double spot, rms;
+		/** Optimum hole size of the primary (mm) */
+		public double optHole;
+		/** Wall-clock time of the job (ms) */
+		public long millis;
+	}
+} // end of Class SweepJob *****************************************************
@@ -0,0 +1,141 @@
+package jray.sweep;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Vector;
+
+/**
+ * Streams SweepJob results to a CSV file or a JSON file (one object
+ * per line), flushing every line.  An existing output file is read
+ * back first: its complete lines (with their newline) are kept, and
+ * their keys are reported as done so that a restarted sweep skips
+ * them.  The file is only ever replaced whole, then appended to.
+ */
+public class SweepOutput {
+
+	private static final String [] COLUMNS = {"rays", "hits", "spot", "rms",
+											  "optHole", "millis"};
+
+	boolean json;
+	PrintWriter out;
+	HashSet<String> done = new HashSet<String> ();
+
+	/** Opens (or resumes) file, as JSON if json is true, CSV otherwise */
+	public SweepOutput (File file, boolean json) throws IOException {
+		this.json = json;
+		Vector<String> keep = new Vector<String> ();
+		if (file.exists ()) {
+			// A line counts only with its newline: a crash may have cut
+			// the last one anywhere, even in the middle of a number
+			BufferedReader in = new BufferedReader (new FileReader (file));
+			StringBuffer line = new StringBuffer ();
+			int c;
+			while ((c = in.read ()) >= 0) {
+				if (c != '\n') {
+					line.append ((char) c);
+					continue;
+				}
+				if (line.length () > 0 && line.charAt (line.length () - 1) == '\r')
+					line.setLength (line.length () - 1);
+				String key = parseKey (line.toString ());
+				if (key != null && done.add (key))
+					keep.add (line.toString ());
+				line.setLength (0);
+			}
+			in.close ();
+		}
+		// The complete lines go to a new file which then replaces the
+		// old one, so that the finished points survive a crash here too
+		File tmp = new File (file.getPath () + ".tmp");
+		PrintWriter w = new PrintWriter (new BufferedWriter (new FileWriter (tmp)));
+		if (!json)
+			w.println (header ());
+		for (int i = 0; i < keep.size (); i++)
+			w.println (keep.get (i));
+		w.close ();
+		if (w.checkError ())
+			throw new IOException ("SweepOutput: cannot write " + tmp);
+		Files.move (tmp.toPath (), file.toPath (),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		out = new PrintWriter (new BufferedWriter (new FileWriter (file, true)));
+	}
+
+	/** Returns true if the point with this key is already in the output */
+	public boolean isDone (String key) { return done.contains (key); }
+	/** Number of points already in the output */
+	public int numDone () { return done.size (); }
+
+	/** Writes one result */
+	public synchronized void write (SweepJob.Result r) {
+		double [] v = r.point.getValues ();
+		double [] m = {r.rays, r.hits, r.spot, r.rms, r.optHole, r.millis};
+		StringBuffer s = new StringBuffer ();
+		if (json) {
+			s.append ("{\"key\":\"").append (r.point.getKey ()).append ('"');
+			s.append (",\"type\":\"").append (r.point.type).append ('"');
+			for (int i = 0; i < v.length; i++)
+				s.append (",\"").append (SweepPoint.NAMES[i]).append ("\":")
+					.append (number (v[i]));
+			for (int i = 0; i < m.length; i++)
+				s.append (",\"").append (COLUMNS[i]).append ("\":")
+					.append (number (m[i]));
+			s.append ('}');
+		} else {
+			s.append (r.point.getKey ()).append (',').append (r.point.type);
+			for (int i = 0; i < v.length; i++)
+				s.append (',').append (v[i]);
+			for (int i = 0; i < m.length; i++)
+				s.append (',').append ((Double.isNaN (m[i])) ? "NaN" :
+									   number (m[i]));
+		}
+		out.println (s);
+		out.flush ();
+		done.add (r.point.getKey ());
+	}
+
+	/** Closes the output */
+	public void close () { out.close (); }
+
+	/** CSV header line */
+	private static String header () {
+		StringBuffer s = new StringBuffer ("key,type");
+		for (int i = 0; i < SweepPoint.NAMES.length; i++)
+			s.append (',').append (SweepPoint.NAMES[i]);
+		for (int i = 0; i < COLUMNS.length; i++)
+			s.append (',').append (COLUMNS[i]);
+		return s.toString ();
+	}
+
+	/** Key of a complete output line, or null */
+	private String parseKey (String line) {
+		if (json) {
+			if (!line.startsWith ("{\"key\":\"") || !line.endsWith ("}"))
+				return null;
+			return line.substring (8, line.indexOf ('"', 8));
+		}
+		String [] f = line.split (",", -1);
+		if (f.length != 2 + SweepPoint.NAMES.length + COLUMNS.length ||
+			f[0].equals ("key"))
+			return null;
+		try {
+			for (int i = 2; i < f.length; i++)
+				Double.parseDouble (f[i]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return f[0];
+	}
+
+	/** Writes whole numbers without a fraction; JSON has no NaN or
+	 * Infinity */
+	private static String number (double x) {
+		if (Double.isNaN (x) || Double.isInfinite (x))
+			return "null";
+		if (x == Math.rint (x) && Math.abs (x) < 1e15)
+			return Long.toString ((long) x);
+		return Double.toString (x);
+	}
+} // end of Class SweepOutput **************************************************
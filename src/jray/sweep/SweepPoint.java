@@ -0,0 +1,54 @@
+package jray.sweep;
+
+import jray.TelePar;
+
+/**
+ * One point of a parameter sweep: the TelePar of the telescope plus
+ * the detector position and curvature (0.0 for a flat detector).
+ */
+public class SweepPoint {
+
+	/** Names of the swept parameters, in output order */
+	public static final String [] NAMES = {"diameter", "fratio", "fdesired",
+										   "holesize", "focusAt", "FOV",
+										   "detector", "curvature"};
+
+	/** Telescope type: "cassegrain", "gregorian" or "reflex" */
+	public String type;
+	public TelePar par;
+	public double detector;
+	public double curvature;
+
+	/** Construct a SweepPoint from the values of NAMES, in order */
+	public SweepPoint (String type, double [] v) {
+		this.type = type;
+		this.par = new TelePar ();
+		par.diameter = v[0];
+		par.fratio   = v[1];
+		par.fdesired = v[2];
+		par.holesize = v[3];
+		par.focusAt  = v[4];
+		par.FOV      = v[5];
+		this.detector  = v[6];
+		this.curvature = v[7];
+	}
+
+	/** Values of the swept parameters, in the order of NAMES */
+	public double [] getValues () {
+		return new double [] {par.diameter, par.fratio, par.fdesired,
+							  par.holesize, par.focusAt, par.FOV,
+							  detector, curvature};
+	}
+
+	/** Returns a key identifying this point in the sweep output */
+	public String getKey () {
+		StringBuffer s = new StringBuffer (type);
+		double [] v = getValues ();
+		for (int i = 0; i < v.length; i++)
+			s.append ('|').append (v[i]);
+		return s.toString ();
+	}
+
+	/** overrides toString () */
+	public String toString () { return getKey (); }
+} // end of Class SweepPoint ***************************************************
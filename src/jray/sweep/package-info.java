@@ -0,0 +1,4 @@
+/**
+ * Batch parameter sweeps of telescope designs, traced in parallel.
+ */
+package jray.sweep;
@@ -64,6 +64,25 @@ public class Cassegrain implements Telescope {
 		ConicSections.add (secondary);
 	} // end of Cassegrain Constructor *****************************************
 
+	/** Construct a Cassegrain Telescope sharing the primary and the
+	 * secondary of another (and its TelePar object) */
+	protected Cassegrain (Cassegrain base) {
+		this.par      = base.par;
+		this.diameter = base.diameter;
+		this.fratio   = base.fratio;
+		this.holesize = base.holesize;
+		this.focusAt  = base.focusAt;
+		this.fdesired = base.fdesired;
+		this.FOV      = base.FOV;
+		this.optHole  = base.optHole;
+		focii = new Vector<Point3d> ();
+		focii.add (base.getFocus (0));
+		focii.add (base.getFocus (1));
+		ConicSections = new Vector<ConicSection> ();
+		ConicSections.add (base.getConicSection (0));
+		ConicSections.add (base.getConicSection (1));
+	} // end of Cassegrain Constructor *****************************************
+
 	/** returns the TelePar Object associated with this Telescope */
 	public TelePar getPar () { return par; }
 	/** number of ConicSections (including Detectors and Gratings) */
@@ -0,0 +1,48 @@
+package jray.tolerance;
+
+import java.util.Random;
+
+/** A random distribution of a placement error */
+public abstract class Distribution {
+
+	/** No error */
+	public static final Distribution NONE = constant (0.0);
+
+	/** Returns a sample of this Distribution */
+	public abstract double sample (Random r);
+
+	/** Always v */
+	public static Distribution constant (final double v) {
+		return new Distribution () {
+			public double sample (Random r) { return v; }
+			public String toString () { return "" + v; }
+		};
+	}
+	/** Uniform between -half and half */
+	public static Distribution uniform (final double half) {
+		return new Distribution () {
+			public double sample (Random r) {
+				return half * (2.0 * r.nextDouble () - 1.0);
+			}
+			public String toString () { return "U(+-" + half + ")"; }
+		};
+	}
+	/** Gaussian of standard deviation sigma, cut at +-cut sigma
+	 * (no cut if cut <= 0) */
+	public static Distribution gaussian (final double sigma,
+										 final double cut) {
+		return new Distribution () {
+			public double sample (Random r) {
+				double g = r.nextGaussian ();
+				while (cut > 0 && Math.abs (g) > cut)
+					g = r.nextGaussian ();
+				return sigma * g;
+			}
+			public String toString () { return "N(" + sigma + ")"; }
+		};
+	}
+	/** Gaussian of standard deviation sigma */
+	public static Distribution gaussian (double sigma) {
+		return gaussian (sigma, 0.0);
+	}
+} // end of Class Distribution *************************************************
@@ -0,0 +1,176 @@
+package jray.tolerance;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.*;
+
+import jray.*;
+
+/**
+ * Monte Carlo tolerancing of a Telescope.  Each trial displaces the
+ * ConicSections with Tolerances by errors drawn from their
+ * Distributions, traces an nRays x nRays grid on the aperture at a
+ * field angle and measures the spot (DetectorDisplay.getSpotSize)
+ * and its RMS radius.
+ * <p>
+ * The trials run on a pool of threads.  ConicSections keep state
+ * while tracing, so each thread has its own base Telescope (from a
+ * TelescopeFactory) and OpticBench, with checkpoints: a trial is a
+ * PerturbedTelescope sharing the optics of the base Telescope which
+ * are not displaced, and the optics in front of the first displaced
+ * one are not retraced.  Trial k draws its errors from a Random of
+ * its own, so the results do not depend on the number of threads.
+ */
+public class MonteCarlo {
+
+	TelescopeFactory factory;
+	Vector<Tolerance> tolerances = new Vector<Tolerance> ();
+	int nRays;
+	double field;
+	double obstruction = 0.0;
+	double lambda = 450.0;
+
+	Trial nominal;
+	Vector<Trial> trials;
+	Percentiles spots, rmss;
+
+	/** Result of one trial */
+	public static class Trial {
+		/** index of the trial (-1 for the nominal Telescope) */
+		public int index;
+		/** errors of each Tolerance (see Tolerance.sample) */
+		public double [][] errors;
+		/** number of LightRays on the detector */
+		public int hits;
+		/** spot size and RMS radius (mm) */
+		public double spot, rms;
+	}
+
+	/** Tolerancing of the Telescopes made by f, nr x nr LightRays at
+	 * field angle field (arcsec, in x) */
+	public MonteCarlo (TelescopeFactory f, int nr, double field) {
+		this.factory = f;
+		this.nRays = nr;
+		this.field = field;
+	}
+
+	/** Adds a Tolerance */
+	public void add (Tolerance t) { tolerances.add (t); }
+	/** Linear fraction of the diameter obstructed */
+	public void setObstruction (double o) { this.obstruction = o; }
+	/** Wavelength (nm) of the LightRays */
+	public void setWavelength (double l) { this.lambda = l; }
+
+	/** The base Telescope and OpticBench of a thread */
+	private class Worker {
+		Telescope base = factory.create ();
+		OpticBench bench = new OpticBench ("Tolerancing", false);
+		Worker () {
+			bench.setCheckpointing (true);
+			bench.addTelescope (base);
+		}
+	}
+
+	/**
+	 * Runs trials on nThreads threads, with errors drawn from seed.
+	 * If out is not null, the statistics so far are printed to it
+	 * every report trials as they complete.
+	 */
+	public void run (int ntrials, int nThreads, final long seed,
+					 PrintStream out, int report) throws InterruptedException {
+		final Tolerance [] tol = tolerances.toArray (new Tolerance [0]);
+		final ThreadLocal<Worker> workers = new ThreadLocal<Worker> () {
+			protected Worker initialValue () { return new Worker (); }
+		};
+		trials = new Vector<Trial> ();
+		spots = new Percentiles ();
+		rmss = new Percentiles ();
+		nominal = trace (new Worker (), tol, -1, null);
+		if (out != null)
+			out.println ("Nominal: spot " + nominal.spot + " mm, rms " +
+						 nominal.rms + " mm");
+
+		ExecutorService pool = Executors.newFixedThreadPool (nThreads);
+		CompletionService<Trial> done =
+			new ExecutorCompletionService<Trial> (pool);
+		for (int k = 0; k < ntrials; k++) {
+			final int index = k;
+			done.submit (new Callable<Trial> () {
+					public Trial call () {
+						Random r = new Random (seed + 0x9E3779B97F4A7C15L * index);
+						double [][] e = new double [tol.length][];
+						for (int i = 0; i < tol.length; i++)
+							e[i] = tol[i].sample (r);
+						return trace (workers.get (), tol, index, e);
+					}
+				});
+		}
+		pool.shutdown ();
+		try {
+			for (int k = 0; k < ntrials; k++) {
+				Trial t = done.take ().get ();
+				trials.add (t);
+				spots.add (t.spot);
+				rmss.add (t.rms);
+				if (out != null && report > 0 &&
+					(trials.size () % report == 0 || trials.size () == ntrials))
+					out.println (trials.size () + " trials: spot " + spots +
+								 "; rms " + rmss);
+			}
+		} catch (ExecutionException e) {
+			pool.shutdownNow ();
+			throw new RuntimeException ("MonteCarlo: " + e.getCause (),
+										e.getCause ());
+		}
+	} // end of run ************************************************************
+
+	/** Traces one trial on the base Telescope of w (nominal if e is null) */
+	private Trial trace (Worker w, Tolerance [] tol, int index, double [][] e) {
+		Telescope t = (e == null) ? w.base :
+			new PerturbedTelescope (w.base, tol, e);
+		Object last = t.getConicSection (t.numElements () - 1);
+		if (!(last instanceof Detector))
+			throw new RuntimeException ("MonteCarlo: You are trying to " +
+										"image with a telescope without " +
+										"a detector!");
+		Detector det = (Detector) last;
+		OpticBench bench = w.bench;
+		bench.setTelescope (t);
+		bench.clean ();
+		det.clean ();
+		double diameter = (t.getConicSection (0)).getSize ();
+		double Z0 = bench.iscaley (0);
+		double xvel = Math.tan (Math.toRadians (field/3600.));
+		for (int i = 1; i <= nRays; i++) {
+			for (int j = 1; j <= nRays; j++) {
+				double x = diameter/2.0 * (-1.0 + 2.0 * (i - 1.0) / (nRays - 1.0));
+				double y = diameter/2.0 * (-1.0 + 2.0 * (j - 1.0) / (nRays - 1.0));
+				double radial = Math.sqrt (x*x + y*y);
+				if (radial > diameter/2. || radial < diameter * obstruction / 2.)
+					continue;
+				bench.addLight (new LightRay (x - xvel * Z0, y, Z0, xvel, 0,
+											  -1., lambda));
+			}
+		}
+		bench.PropagateLightRays ();
+
+		Trial r = new Trial ();
+		r.index = index;
+		r.errors = e;
+		DetectorDisplay dd = det.getDisplay ();
+		r.hits = dd.getPoints ().size ();
+		r.spot = dd.getSpotSize ();
+		r.rms = dd.getRMSSpotSize ();
+		return r;
+	} // end of trace **********************************************************
+
+	/** The nominal Telescope */
+	public Trial getNominal () { return nominal; }
+	/** The trials, in the order they completed */
+	public Vector<Trial> getTrials () { return trials; }
+	/** Statistics of the spot sizes */
+	public Percentiles getSpotStatistics () { return spots; }
+	/** Statistics of the RMS radii */
+	public Percentiles getRMSStatistics () { return rmss; }
+} // end of Class MonteCarlo ***************************************************
@@ -0,0 +1,40 @@
+package jray.tolerance;
+
+import java.util.Collections;
+import java.util.Vector;
+
+/** Running percentiles of a sample: the values are kept sorted */
+public class Percentiles {
+
+	Vector<Double> sorted = new Vector<Double> ();
+	double sum = 0;
+
+	/** Adds a value (NaN are ignored) */
+	public void add (double x) {
+		if (Double.isNaN (x)) return;
+		int i = Collections.binarySearch (sorted, x);
+		sorted.add ((i < 0) ? -i - 1 : i, x);
+		sum += x;
+	}
+	/** Number of values */
+	public int size () { return sorted.size (); }
+	/** Mean of the values */
+	public double getMean () { return sum / sorted.size (); }
+	/** Percentile p (0 to 100), interpolated between the values */
+	public double getPercentile (double p) {
+		int n = sorted.size ();
+		if (n == 0) return Double.NaN;
+		double x = p / 100.0 * (n - 1);
+		int i = (int) Math.floor (x);
+		if (i >= n - 1) return sorted.get (n - 1);
+		if (i < 0) return sorted.get (0);
+		return sorted.get (i) + (x - i) * (sorted.get (i + 1) - sorted.get (i));
+	}
+
+	/** overrides toString(): mean and the 50, 90, 95, 99th percentiles */
+	public String toString () {
+		return ("mean " + getMean () + ", p50 " + getPercentile (50) +
+				", p90 " + getPercentile (90) + ", p95 " +
+				getPercentile (95) + ", p99 " + getPercentile (99));
+	}
+} // end of Class Percentiles **************************************************
@@ -0,0 +1,76 @@
+package jray.tolerance;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+import javax.vecmath.Point3d;
+
+import jray.*;
+
+/**
+ * A Telescope sharing the ConicSections of a base Telescope, some of
+ * them displaced by PerturbedOptics.  An optic used more than once
+ * (the primary of a Reflex) is displaced the same way every time.
+ */
+public class PerturbedTelescope implements Telescope {
+
+	Telescope base;
+	Vector<ConicSection> ConicSections;
+
+	/** Displaces the ConicSections of base by the errors s[k] (see
+	 * Tolerance.sample) of the Tolerances t[k] */
+	public PerturbedTelescope (Telescope base, Tolerance [] t, double [][] s) {
+		this.base = base;
+		HashMap<ConicSection, ConicSection> moved =
+			new HashMap<ConicSection, ConicSection> ();
+		for (int k = 0; k < t.length; k++) {
+			ConicSection c = base.getConicSection (t[k].element);
+			Point3d pivot = t[k].pivot;
+			if (pivot == null)
+				pivot = (c instanceof RotationalSurface) ?
+					new Point3d (0, 0, ((RotationalSurface) c).getVertexZ ()) :
+					new Point3d ();
+			moved.put (c, PerturbedOptic.wrap (c, pivot, s[k][0], s[k][1],
+											   s[k][2], arcsec (s[k][3]),
+											   arcsec (s[k][4])));
+		}
+		ConicSections = new Vector<ConicSection> ();
+		for (int i = 0; i < base.numElements (); i++) {
+			ConicSection c = base.getConicSection (i);
+			ConicSections.add (moved.containsKey (c) ? moved.get (c) : c);
+		}
+	}
+	private static double arcsec (double a) {
+		return Math.toRadians (a / 3600.);
+	}
+
+	/** returns the TelePar Object of the base Telescope */
+	public TelePar getPar () { return base.getPar (); }
+	/** number of ConicSections (including Detectors and Gratings) */
+	public int numElements () { return ConicSections.size (); }
+	/** Return the ConicSection at position i */
+	public ConicSection getConicSection (int i) {
+		return ConicSections.get (i);
+	}
+	/** Return the Vector containing all of the ConicSections */
+	public Vector<ConicSection> getConicSections () { return ConicSections; }
+	/** add a ConicSection to the end of list of ConicSections */
+	public void addConicSection (ConicSection c) { ConicSections.add (c); }
+	/** Optimum Hole Size in Primary Mirror of the base Telescope */
+	public double getOptimumHoleSize () { return base.getOptimumHoleSize (); }
+	/** Returns true is the base Telescope has a Detector */
+	public boolean hasDetector () { return base.hasDetector (); }
+	/** The focii of the base Telescope */
+	public int numFocii () { return base.numFocii (); }
+	/** Adds a Focus to the base Telescope */
+	public void addFocus (Point3d f) { base.addFocus (f); }
+	/** Return the focus at position i of the base Telescope */
+	public Point3d getFocus (int i) { return base.getFocus (i); }
+	/** Return the field of view this Telescope is designed for */
+	public double getFOV () { return base.getFOV (); }
+	/** The name of the base Telescope, so that an OpticBench traces
+	 * it the same way */
+	public String getName () { return base.getName (); }
+	/** overrides toString () */
+	public String toString () { return "Perturbed " + base; }
+} // end of Class PerturbedTelescope *******************************************
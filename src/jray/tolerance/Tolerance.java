@@ -0,0 +1,69 @@
+package jray.tolerance;
+
+import java.util.Random;
+
+import javax.vecmath.Point3d;
+
+/**
+ * Placement tolerance of one ConicSection of a Telescope: decenter
+ * (dx, dy) and spacing (dz) errors in mm, tilts about x and y in
+ * arcsec, around a pivot (by default the vertex on the z-axis of a
+ * RotationalSurface, the origin otherwise).
+ */
+public class Tolerance {
+
+	int element;
+	Distribution [] d = {Distribution.NONE, Distribution.NONE,
+						 Distribution.NONE, Distribution.NONE,
+						 Distribution.NONE};
+	Point3d pivot;
+
+	/** Names of the errors, in the order of sample */
+	public static final String [] NAMES = {"dx", "dy", "dz", "tiltx", "tilty"};
+
+	/** A Tolerance on ConicSection element of the Telescope */
+	public Tolerance (int element) { this.element = element; }
+
+	/** Decenter errors (mm) */
+	public Tolerance setDecenter (Distribution dx, Distribution dy) {
+		d[0] = dx;
+		d[1] = dy;
+		return this;
+	}
+	/** Spacing error along z (mm) */
+	public Tolerance setDespace (Distribution dz) {
+		d[2] = dz;
+		return this;
+	}
+	/** Tilt errors about x and y (arcsec) */
+	public Tolerance setTilt (Distribution tx, Distribution ty) {
+		d[3] = tx;
+		d[4] = ty;
+		return this;
+	}
+	/** Point the tilts are about */
+	public Tolerance setPivot (Point3d p) {
+		this.pivot = new Point3d (p);
+		return this;
+	}
+
+	/** Index of the ConicSection in the Telescope */
+	public int getElement () { return element; }
+
+	/** Returns dx, dy, dz (mm), tiltx, tilty (arcsec) drawn from r */
+	public double [] sample (Random r) {
+		double [] s = new double [d.length];
+		for (int i = 0; i < d.length; i++)
+			s[i] = d[i].sample (r);
+		return s;
+	}
+
+	/** overrides toString() */
+	public String toString () {
+		StringBuffer s = new StringBuffer ("element " + element + ":");
+		for (int i = 0; i < d.length; i++)
+			if (d[i] != Distribution.NONE)
+				s.append (" " + NAMES[i] + " " + d[i]);
+		return s.toString ();
+	}
+} // end of Class Tolerance ****************************************************
@@ -0,0 +1,5 @@
+/**
+ * Monte Carlo tolerancing: telescopes with randomly displaced optics,
+ * traced in parallel.
+ */
+package jray.tolerance;